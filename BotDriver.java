@@ -0,0 +1,63 @@
+import engine.BotPlayer;
+import engine.GameSimulation;
+import javafx.animation.AnimationTimer;
+import javafx.scene.input.KeyCode;
+
+import java.util.function.Consumer;
+
+/**
+ * Lets a BotPlayer play the game in real time. Once per frame the bot
+ * presses the keys that are due and they go to the same handler as the
+ * keys of a real player, so the keyboard flashes and Words takes them
+ * as typed letters.
+ */
+public class BotDriver {
+    // KeyCode of every letter, indexed by letter - 'A', so pressing a key allocates nothing
+    private static final KeyCode[] letterKeys = new KeyCode[26];
+
+    static {
+        for (int i = 0; i < letterKeys.length; i++) {
+            letterKeys[i] = KeyCode.getKeyCode(String.valueOf((char) ('A' + i)));
+        }
+    }
+
+    private final BotPlayer bot;
+    private final GameSimulation simulation;
+    // Handles a key press, the same way the scene handles real ones
+    private final Consumer<KeyCode> input;
+    private final BotPlayer.Keys keys = this::press;
+    private final AnimationTimer timer;
+
+    /**
+     * @param bot the bot that plays
+     * @param simulation the game it plays, to see the words
+     * @param input handles the keys the bot presses
+     */
+    public BotDriver(BotPlayer bot, GameSimulation simulation, Consumer<KeyCode> input) {
+        this.bot = bot;
+        this.simulation = simulation;
+        this.input = input;
+        timer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                bot.play(simulation, now, keys);
+            }
+        };
+    }
+
+    public BotPlayer getBot() {
+        return bot;
+    }
+
+    public void start() {
+        timer.start();
+    }
+
+    public void stop() {
+        timer.stop();
+    }
+
+    private void press(char key) {
+        input.accept(key == BotPlayer.BACKSPACE ? KeyCode.BACK_SPACE : letterKeys[key - 'A']);
+    }
+}
@@ -0,0 +1,91 @@
+import engine.WordEntity;
+import javafx.geometry.VPos;
+import javafx.scene.Node;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.TextAlignment;
+
+import java.util.List;
+
+/**
+ * Renders all the words onto a single Canvas
+ * (https://openjfx.io/javadoc/18/javafx.graphics/javafx/scene/canvas/Canvas.html)
+ * instead of one node per word, so spawning and removing words never
+ * touches the scene graph. The whole field is redrawn every frame, the
+ * floating words in one batch and the fading hit words in another, with
+ * the shared Font of a FontCache. Words are placed by the width the
+ * simulation measured them at, so nothing is kept per word.
+ */
+public class CanvasWordRenderer implements WordRenderer {
+    // Same box size WordBox uses for the floating words
+    private static final double SIZE = 30;
+    private static final Color TEXT_COLOR = Color.BLACK;
+    private static final Color HIT_COLOR = Color.GREEN;
+
+    private final Canvas canvas;
+    private final GraphicsContext gc;
+
+    public CanvasWordRenderer(double width, double height) {
+        canvas = new Canvas(width, height);
+        gc = canvas.getGraphicsContext2D();
+        gc.setFont(FontCache.get(SIZE - 2).getFont());
+        gc.setTextBaseline(VPos.TOP);
+        gc.setTextAlign(TextAlignment.CENTER);
+    }
+
+    @Override
+    public Node getNode() {
+        return canvas;
+    }
+
+    @Override
+    public int getNodeCount() {
+        return 1;
+    }
+
+    @Override
+    public void onSpawn(WordEntity word) {
+    }
+
+    @Override
+    public void onHit(WordEntity word) {
+    }
+
+    @Override
+    public void onRemove(WordEntity word) {
+    }
+
+    /**
+     * Clears the canvas and draws the floating words, then the hit words.
+     * Like in a WordBox, words narrower than the box are centered in it:
+     * the simulation widens those words to the box, and every word is
+     * drawn centered on its width.
+     */
+    @Override
+    public void render(List<WordEntity> words, long time, long hitLingerNanos) {
+        gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+
+        gc.setFill(TEXT_COLOR);
+        for (int i = 0; i < words.size(); i++) {
+            WordEntity word = words.get(i);
+            if (word.getState() == WordEntity.State.ACTIVE) {
+                draw(word, time);
+            }
+        }
+
+        gc.setFill(HIT_COLOR);
+        for (int i = 0; i < words.size(); i++) {
+            WordEntity word = words.get(i);
+            if (word.getState() == WordEntity.State.HIT) {
+                gc.setGlobalAlpha(WordRenderer.fade(word, time, hitLingerNanos));
+                draw(word, time);
+            }
+        }
+        gc.setGlobalAlpha(1);
+    }
+
+    private void draw(WordEntity word, long time) {
+        gc.fillText(word.getWord(), word.x(time) + word.getWidth() / 2, word.y(time));
+    }
+}
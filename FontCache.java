@@ -0,0 +1,125 @@
+import engine.TextMeasure;
+import engine.WordDictionary;
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One shared Font per family and size, together with the measured sizes
+ * of the words shown in it. The words of a dictionary are measured ahead
+ * of time by warm and kept as plain doubles by their index, so neither
+ * the spawning nor the drawing of words has to lay out text. Words
+ * outside the warmed dictionary are measured when they are asked for.
+ */
+public class FontCache implements TextMeasure {
+    // Every cache built so far, by family and size
+    private static final Map<String, FontCache> caches = new HashMap<>();
+
+    private final Font font;
+    // Text node only used to measure words, never shown, guarded by itself
+    private final Text measure;
+    // Widths of the words of the dictionary warmed last
+    private volatile Widths widths = new Widths(WordDictionary.EMPTY);
+    // Height of a line of text, the same for every word
+    private final double height;
+
+    private FontCache(String family, double size) {
+        font = new Font(family, size);
+        measure = new Text();
+        measure.setFont(font);
+        height = measure.getLayoutBounds().getHeight();
+    }
+
+    /**
+     * @param family font family
+     * @param size font size in points
+     * @return the shared cache of the font
+     */
+    public static synchronized FontCache get(String family, double size) {
+        return caches.computeIfAbsent(family + "/" + size, key -> new FontCache(family, size));
+    }
+
+    /**
+     * @param size font size in points
+     * @return the shared cache of the default font in the given size
+     */
+    public static FontCache get(double size) {
+        return get(Font.getDefault().getFamily(), size);
+    }
+
+    public Font getFont() {
+        return font;
+    }
+
+    /**
+     * Measures the word.
+     * @param word word as it is shown
+     * @return width of the word in pixels
+     */
+    @Override
+    public double width(String word) {
+        synchronized (measure) {
+            measure.setText(word);
+            return measure.getLayoutBounds().getWidth();
+        }
+    }
+
+    /**
+     * Looks up the width of a word of the warmed dictionary, measuring it
+     * if it belongs to another dictionary or warm has not got to it yet.
+     * @param words dictionary of the word
+     * @param index index of the word in the dictionary
+     * @return width of the word in pixels
+     */
+    @Override
+    public double width(WordDictionary words, int index) {
+        Widths widths = this.widths;
+        if (widths.words == words && index < widths.measured) {
+            return widths.widths[index];
+        }
+        return width(words.word(index));
+    }
+
+    @Override
+    public double height() {
+        return height;
+    }
+
+    /**
+     * Measures every word of the dictionary on a background thread, so
+     * the words are known before they first spawn.
+     * @param words upper case words to measure
+     */
+    public void warm(WordDictionary words) {
+        Widths warmed = new Widths(words);
+        widths = warmed;
+        Thread thread = new Thread(() -> {
+            // Stops once another dictionary is warmed instead
+            for (int i = 0; i < words.size() && widths == warmed; i++) {
+                warmed.widths[i] = width(words.word(i));
+                warmed.measured = i + 1;
+            }
+        }, "font-cache-warm");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Widths of the words of a dictionary by their index. Only the warm
+     * thread writes them, and a width is read only below measured.
+     */
+    private static final class Widths {
+        private final WordDictionary words;
+        private final double[] widths;
+        // Number of words measured so far, from the first
+        private volatile int measured;
+
+        Widths(WordDictionary words) {
+            this.words = words;
+            this.widths = new double[words.size()];
+        }
+    }
+}
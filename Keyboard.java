@@ -1,3 +1,6 @@
+import engine.KeyLayout;
+import engine.TypingStats;
+import javafx.animation.Animation;
 import javafx.animation.FillTransition;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
@@ -17,16 +20,36 @@ public class Keyboard {
     private final List<List<KeyCode>> keyCodes;
     // Map that is used to access the keys JavaFX representation
     private final Map<KeyCode, WordBox> keyCodeToWordBox;
+    // The flash animation of every key, reused for every press of the key
+    private final Map<KeyCode, FillTransition> flashes;
     // JavaFX control that represents the keyboard on the screen
     private final VBox keyboard;
     // Color that the keys are by default
     private static final Color from = Color.color(0.9, 0.9, 0.9);
     // Color that the keys become when pressed
     private static final Color to = Color.color(0.3, 0.3, 0.8);
+    // Color of the keys that give the most trouble in the heatmap
+    private static final Color hot = Color.color(0.95, 0.45, 0.35);
+    // Heatmap colors from no trouble to the most trouble
+    private static final Color[] heatColors = new Color[11];
+    // Color each key rests at, changed by the heatmap
+    private final Map<KeyCode, Color> restColors;
+    // How long a key takes to turn to the to color, and the same again to turn back
+    private static final Duration flashDuration = Duration.seconds(0.1);
+    // Number of key flashes that have not finished yet
+    private int runningTransitions = 0;
+
+    static {
+        for (int i = 0; i < heatColors.length; i++) {
+            heatColors[i] = from.interpolate(hot, (double) i / (heatColors.length - 1));
+        }
+    }
 
     public Keyboard(double width, double height, double spacing) {
         keyCodes = initializeKeys();
-        keyCodeToWordBox = new HashMap<>();
+        keyCodeToWordBox = new EnumMap<>(KeyCode.class);
+        flashes = new EnumMap<>(KeyCode.class);
+        restColors = new EnumMap<>(KeyCode.class);
 
         keyboard = initializeKeyboard(width, height, keyCodes, spacing);
     }
@@ -35,20 +58,78 @@ public class Keyboard {
         return keyboard;
     }
 
+    /**
+     * @return number of key flashes that have not finished yet
+     */
+    public int getRunningTransitions() {
+        return runningTransitions;
+    }
+
     /**
      * First checks if the given keyCode exists in the keyCodeToWordBox.
-     * If it does then it starts a FillTransition (https://openjfx.io/javadoc/18/javafx.graphics/javafx/animation/FillTransition.html)
-     * to go from the from color to the to color.
+     * If it does then it plays the FillTransition (https://openjfx.io/javadoc/18/javafx.graphics/javafx/animation/FillTransition.html)
+     * of the key, which goes from the color the key rests at to the to
+     * color and back. Every key owns one transition that is created up
+     * front, so pressing a key allocates nothing. Pressing a key that is
+     * still flashing restarts its flash from the color it shows right now
+     * instead of stacking a second animation on top of it.
      * If the keyCode does not exist then it does nothing.
      * @param keyCode KeyCode to lookup in the map and flash
      */
     public void startFillTransition(KeyCode keyCode) {
-        if (keyCodeToWordBox.containsKey(keyCode)) {
-            WordBox wordBox = keyCodeToWordBox.get(keyCode);
-            FillTransition fillTransition = new FillTransition(Duration.seconds(0.2), wordBox.getRect(), from, to);
-            fillTransition.setAutoReverse(true);
-            fillTransition.setOnFinished(event -> wordBox.getRect().setFill(from));
-            fillTransition.play();
+        FillTransition flash = flashes.get(keyCode);
+        if (flash == null) {
+            return;
+        }
+        boolean running = flash.getStatus() == Animation.Status.RUNNING;
+        // While turning back the color matches the same time on the way there
+        Duration at = running ? flash.getCurrentTime() : Duration.ZERO;
+        flash.stop();
+        flash.setFromValue(restColors.get(keyCode));
+        if (!running) {
+            runningTransitions++;
+        }
+        flash.playFrom(at);
+    }
+
+    /**
+     * Creates the flash animation of a key. It runs twice, the second
+     * time backwards, and leaves the key at its rest color.
+     * @param keyCode key to flash
+     * @param wordBox JavaFX representation of the key
+     * @return the animation, ready to be played
+     */
+    private FillTransition createFlash(KeyCode keyCode, WordBox wordBox) {
+        FillTransition flash = new FillTransition(flashDuration, wordBox.getRect(), from, to);
+        flash.setAutoReverse(true);
+        flash.setCycleCount(2);
+        flash.setOnFinished(event -> {
+            wordBox.getRect().setFill(restColors.get(keyCode));
+            runningTransitions--;
+        });
+        return flash;
+    }
+
+    /**
+     * Tints every key by how much trouble it gives, from the default key
+     * color to red. A key that is flashing keeps flashing from the color
+     * it started at, and its flash leaves it at the new color when it
+     * ends.
+     * @param stats typing statistics to take the heat of each key from
+     */
+    public void showHeatmap(TypingStats stats) {
+        for (List<KeyCode> row : keyCodes) {
+            for (KeyCode keyCode : row) {
+                double heat = stats.getHeat(keyCode.getName().charAt(0));
+                Color color = heatColors[(int) Math.round(heat * (heatColors.length - 1))];
+                if (color != restColors.get(keyCode)) {
+                    restColors.put(keyCode, color);
+                    // A running flash would paint over the color, it sets it once it ends instead
+                    if (flashes.get(keyCode).getStatus() != Animation.Status.RUNNING) {
+                        keyCodeToWordBox.get(keyCode).getRect().setFill(color);
+                    }
+                }
+            }
         }
     }
 
@@ -56,14 +137,18 @@ public class Keyboard {
      * Simply creates the 2D list that represents the keyboard.
      * Each row is an element of the outer list and each inner list
      * contains all the letter keys in that row. Only contains
-     * 3 rows. All letters are uppercase.
+     * 3 rows, taken from KeyLayout. All letters are uppercase.
      * @return 2D list representing the letters on the keyboard
      */
     private List<List<KeyCode>> initializeKeys() {
         List<List<KeyCode>> keyCodes = new ArrayList<>();
-        keyCodes.add(Arrays.asList(KeyCode.Q, KeyCode.W, KeyCode.E, KeyCode.R, KeyCode.T, KeyCode.Y, KeyCode.U, KeyCode.I, KeyCode.O, KeyCode.P));
-        keyCodes.add(Arrays.asList(KeyCode.A, KeyCode.S, KeyCode.D, KeyCode.F, KeyCode.G, KeyCode.H, KeyCode.J, KeyCode.K, KeyCode.L));
-        keyCodes.add(Arrays.asList(KeyCode.Z, KeyCode.X, KeyCode.C, KeyCode.V, KeyCode.B, KeyCode.N, KeyCode.M));
+        for (String row : KeyLayout.ROWS) {
+            List<KeyCode> rowKeys = new ArrayList<>();
+            for (char letter : row.toCharArray()) {
+                rowKeys.add(KeyCode.getKeyCode(String.valueOf(letter)));
+            }
+            keyCodes.add(rowKeys);
+        }
         return keyCodes;
     }
 
@@ -97,6 +182,8 @@ public class Keyboard {
                 // create a new WordBox for each key and add it to the map
                 WordBox wordBox = new WordBox(keyHeight, keyCode.getName(), from);
                 keyCodeToWordBox.put(keyCode, wordBox);
+                restColors.put(keyCode, from);
+                flashes.put(keyCode, createFlash(keyCode, wordBox));
 
                 // add a mouse pressed event to each WordBox to trigger a color change animation
                 wordBox.getWordBox().setOnMousePressed(event -> startFillTransition(keyCode));
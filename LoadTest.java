@@ -0,0 +1,127 @@
+import engine.GameSimulation;
+import engine.SpawnScheduler;
+import javafx.animation.AnimationTimer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds out how much the game can take. Starts a bot player and raises
+ * the spawn rate and the speed of the bot step by step, while it watches
+ * the frame times. Once the slowest frames of a step break the frame
+ * budget the test stops and reports the last step that held up: how many
+ * words were on the screen and how many keys per second came in.
+ */
+public class LoadTest {
+    // How long every step lasts
+    private static final long STEP_NANOS = 5 * GameSimulation.NANOS_PER_SECOND;
+    // Factor the spawn rate and the bot speed grow by from one step to the next
+    private static final double GROWTH = 1.5;
+    // Shortest time between two spawns that is tried, the shortest the simulation allows
+    private static final double MIN_SPAWN_SECONDS =
+            (double) SpawnScheduler.MIN_INTERVAL_NANOS / GameSimulation.NANOS_PER_SECOND;
+    // Most frames kept per step, enough for 5 seconds at 200 frames per second
+    private static final int MAX_FRAMES = 1024;
+
+    private final Words words;
+    private final BotDriver driver;
+    // 99th percentile frame time a step has to stay under
+    private final long frameBudgetNanos;
+    private final AnimationTimer timer;
+    // Frame times of the current step
+    private final long[] frames = new long[MAX_FRAMES];
+    private int frameCount;
+    private long lastFrameNanos = -1;
+
+    private int step;
+    private double spawnSeconds;
+    private long stepStartNanos = -1;
+    private long stepStartKeys;
+    private int peakWords;
+    // One line per finished step
+    private final List<String> report = new ArrayList<>();
+    // Result of the last step that stayed within the budget, null if none did
+    private String sustained;
+
+    /**
+     * @param words the game to load
+     * @param driver runs the bot player, its speed is the speed of the first step
+     * @param spawnSeconds time between two spawns in the first step
+     * @param frameBudgetNanos 99th percentile frame time a step has to stay under
+     */
+    public LoadTest(Words words, BotDriver driver, double spawnSeconds, long frameBudgetNanos) {
+        this.words = words;
+        this.driver = driver;
+        this.spawnSeconds = spawnSeconds;
+        this.frameBudgetNanos = frameBudgetNanos;
+        timer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                update(now);
+            }
+        };
+    }
+
+    public void start() {
+        words.setSpawnRate(spawnSeconds);
+        driver.start();
+        timer.start();
+    }
+
+    private void update(long now) {
+        if (lastFrameNanos >= 0 && frameCount < MAX_FRAMES) {
+            frames[frameCount++] = now - lastFrameNanos;
+        }
+        lastFrameNanos = now;
+        peakWords = Math.max(peakWords, words.getSimulation().getActiveWords().size());
+        if (stepStartNanos < 0) {
+            stepStartNanos = now;
+            stepStartKeys = driver.getBot().getKeyCount();
+        } else if (now - stepStartNanos >= STEP_NANOS) {
+            finishStep(now);
+        }
+    }
+
+    private void finishStep(long now) {
+        Arrays.sort(frames, 0, frameCount);
+        long p99 = frameCount == 0 ? 0 : frames[(int) Math.ceil(frameCount * 0.99) - 1];
+        double seconds = (double) (now - stepStartNanos) / GameSimulation.NANOS_PER_SECOND;
+        double keysPerSecond = (driver.getBot().getKeyCount() - stepStartKeys) / seconds;
+        String result = String.format("step %2d: spawn every %8.4f s, bot %6.0f WPM, %6.0f keys/s, "
+                        + "%5d words, frame p99 %6.1f ms", step, spawnSeconds, driver.getBot().getWordsPerMinute(),
+                keysPerSecond, peakWords, p99 / 1e6);
+        report.add(result);
+        System.out.println(result);
+
+        if (p99 > frameBudgetNanos || spawnSeconds / GROWTH < MIN_SPAWN_SECONDS) {
+            finish();
+            return;
+        }
+        sustained = result;
+        step++;
+        spawnSeconds /= GROWTH;
+        words.setSpawnRate(spawnSeconds);
+        driver.getBot().setWordsPerMinute(driver.getBot().getWordsPerMinute() * GROWTH);
+        frameCount = 0;
+        peakWords = 0;
+        stepStartNanos = now;
+        stepStartKeys = driver.getBot().getKeyCount();
+    }
+
+    private void finish() {
+        timer.stop();
+        driver.stop();
+        words.stop();
+        System.out.println(sustained == null
+                ? "Not even the first step stayed within the frame budget of " + frameBudgetNanos / 1e6 + " ms"
+                : "Highest load within the frame budget of " + frameBudgetNanos / 1e6 + " ms: " + sustained);
+    }
+
+    /**
+     * @return one line per finished step
+     */
+    public List<String> getReport() {
+        return report;
+    }
+}
@@ -1,8 +1,23 @@
+import engine.BotPlayer;
+import engine.EngineCheck;
+import engine.GameSettings;
+import engine.GameSimulation;
+import engine.JournalReplay;
+import engine.RaceMirror;
+import engine.RaceLoadTest;
+import engine.RaceRoom;
+import engine.RaceServer;
+import engine.SessionRecord;
+import engine.SessionStore;
+import engine.SpawnScheduler;
+import engine.SpeedMeter;
+import engine.WordDictionary;
 import javafx.animation.Animation;
 import javafx.animation.AnimationTimer;
 import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.collections.ListChangeListener;
 import javafx.geometry.Insets;
 import javafx.geometry.Orientation;
@@ -16,23 +31,173 @@ import javafx.scene.control.TextField;
 import javafx.scene.input.KeyCode;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
-import javafx.scene.text.Font;
 import javafx.stage.Stage;
 import javafx.util.Duration;
 
-import java.util.concurrent.atomic.AtomicReference;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Consumer;
 
 public class Main extends Application {
 
     boolean isRunning = true;
-    int spawnRate = 3;
+    // Only the first press of STOP stores the game
+    boolean isRecordable = true;
+    double spawnRate = 3;
+    // Keeps the results of every game, null while replaying or if it cannot be opened
+    SessionStore sessions;
+    // Settings of the game, replaced when the profile file changes
+    GameSettings settings;
+    // Watches the profile file, null if the profile is a preset or none was given
+    Closeable settingsWatch;
     int secondsCount = 0;
 
 
-    public static void main(String[] args) {
+    // Height of the on-screen keyboard
+    private static final double KEYBOARD_HEIGHT = 138;
+    // Height of the window besides the field and the keyboard
+    private static final double CONTROLS_HEIGHT = 352;
+
+    /**
+     * Starts the game. With --replay=journal and --replay-speed=max the
+     * journal is replayed as fast as possible without a window and its
+     * score is compared with the recorded one. --race-server=[host:]port
+     * hosts a race without a window, which --race=[host:]port joins in the
+     * window, and --race-load=100,200 measures how a race server copes
+     * with that many simulated players. --profile=name or
+     * --profile=file picks the settings, see GameSettings. --check runs
+     * the engine checks and exits with 1 if one fails.
+     * @param args command line arguments
+     * @throws IOException if the journal cannot be replayed or the race cannot be hosted
+     * @throws InterruptedException if interrupted while hosting or measuring a race
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        // Same --name=value pairs JavaFX hands to start
+        Map<String, String> named = new HashMap<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (arg.startsWith("--") && equals > 2) {
+                named.put(arg.substring(2, equals), arg.substring(equals + 1));
+            }
+        }
+        String replayPath = named.get("replay");
+        boolean maxSpeed = "max".equals(named.get("replay-speed"));
+        String racePort = named.get("race-server");
+        String raceLoad = named.get("race-load");
+        if (racePort != null) {
+            GameSettings settings = loadSettings(named);
+            GameSimulation simulation = new GameSimulation(WordDictionary.load(Paths.get(settings.getDictionary())),
+                    settings.getFieldWidth(), settings.getFieldHeight(), System.nanoTime());
+            simulation.setSpawnIntervalNanos(settings.getSpawnIntervalNanos());
+            simulation.setLifetimeNanos(settings.getLifetimeNanos());
+            RaceServer server = new RaceServer(new RaceRoom(simulation), raceAddress(racePort));
+            server.start();
+            System.out.println("Race server listening on port " + server.getPort());
+            Thread.sleep(Long.MAX_VALUE);
+            return;
+        }
+        if (raceLoad != null) {
+            // Players type at 60 WPM, racing for four words per second, for 10 seconds per run
+            String wordsPath = loadSettings(named).getDictionary();
+            RaceLoadTest loadTest = new RaceLoadTest(WordDictionary.load(Paths.get(wordsPath)), 60,
+                    GameSimulation.NANOS_PER_SECOND / 4, 10 * GameSimulation.NANOS_PER_SECOND);
+            for (String players : raceLoad.split(",")) {
+                System.out.println(loadTest.run(Integer.parseInt(players.trim())));
+            }
+            return;
+        }
+        if (Arrays.asList(args).contains("--check")) {
+            List<String> failures = EngineCheck.run();
+            for (String failure : failures) {
+                System.out.println("Failed: " + failure);
+            }
+            System.out.println(failures.isEmpty() ? "All engine checks passed" : failures.size() + " checks failed");
+            System.exit(failures.isEmpty() ? 0 : 1);
+        }
+        if (replayPath != null && maxSpeed) {
+            JournalReplay replay = new JournalReplay(Paths.get(replayPath));
+            GameSimulation simulation = replay.runToEnd();
+            System.out.println("Replayed " + simulation.getTickCount() + " steps, score " + simulation.getScore()
+                    + ", recorded score " + replay.getRecordedScore());
+            return;
+        }
         launch(args);
     }
 
+    /**
+     * Reads the settings of --profile, with the ones given on the command
+     * line on top. If that fails the profile alone is tried, then the defaults.
+     * @param named --name=value pairs of the command line
+     * @return the settings to play with
+     */
+    static GameSettings loadSettings(Map<String, String> named) {
+        String profile = named.get("profile");
+        Properties overrides = settingsOverrides(named);
+        try {
+            return GameSettings.load(profile, overrides);
+        } catch (IOException e) {
+            System.out.println("Could not load the settings: " + e.getMessage());
+        }
+        if (!overrides.isEmpty()) {
+            try {
+                return GameSettings.load(profile, new Properties());
+            } catch (IOException e) {
+                System.out.println("Could not load the profile " + profile + ": " + e.getMessage());
+            }
+        }
+        return GameSettings.DEFAULT;
+    }
+
+    /**
+     * @param named --name=value pairs of the command line
+     * @return the settings given on the command line, under their keys in a profile
+     */
+    static Properties settingsOverrides(Map<String, String> named) {
+        Properties overrides = new Properties();
+        String[][] keys = {
+                {"words", "dictionary"},
+                {"renderer", "renderer"},
+                {"difficulty", "difficulty"},
+                {"spawn-jitter", "spawn.jitter"},
+                {"adaptive", "spawn.adaptive"}};
+        for (String[] key : keys) {
+            if (named.containsKey(key[0])) {
+                overrides.setProperty(key[1], named.get(key[0]));
+            }
+        }
+        return overrides;
+    }
+
+    /**
+     * @param address port, or host and port separated by a colon
+     * @return the address, on the loopback address if there is no host
+     */
+    static InetSocketAddress raceAddress(String address) {
+        int colon = address.lastIndexOf(':');
+        if (colon < 0) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address.trim()));
+        }
+        return new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1).trim()));
+    }
+
+    /**
+     * @return seconds as they are typed into the input fields, without a fraction if there is none
+     */
+    private static String seconds(long nanos) {
+        double seconds = (double) nanos / GameSimulation.NANOS_PER_SECOND;
+        return seconds == Math.rint(seconds) ? String.valueOf((long) seconds) : String.valueOf(seconds);
+    }
+
     /**
      * Setups up all the JavaFX GUI controls and creates instances of
      * all the helper classes.
@@ -46,9 +211,31 @@ public class Main extends Application {
     public void start(Stage primaryStage) throws Exception {
         // Always make sure to set the title of the window
         primaryStage.setTitle("Key Shooter");
-        // Width/height variables so that we can mess with the size of the window
-        double width = 600;
-        double height = 630;
+        // Pass --profile=stress, training or benchmark, or --profile=<file> for settings of your own
+        settings = loadSettings(getParameters().getNamed());
+        this.spawnRate = (double) settings.getSpawnIntervalNanos() / GameSimulation.NANOS_PER_SECOND;
+        // Results are stored under --player=<name>, the user name by default, or as the bot's
+        String player = getParameters().getNamed().get("bot") != null
+                || getParameters().getUnnamed().contains("--load-test") ? "bot"
+                : getParameters().getNamed().getOrDefault("player", System.getProperty("user.name"));
+        // Pass --replay=journal to watch a recorded game instead of playing
+        String replayPath = getParameters().getNamed().get("replay");
+        // Pass --race=host:port to race the players of a --race-server under the player's name
+        String raceAddress = getParameters().getNamed().get("race");
+        RaceMirror race = null;
+        if (raceAddress != null && replayPath == null) {
+            try {
+                race = RaceMirror.join(raceAddress(raceAddress), player);
+            } catch (IOException | IllegalArgumentException e) {
+                System.out.println("Could not join the race at " + raceAddress + ": " + e.getMessage());
+                Platform.exit();
+                return;
+            }
+        }
+        // Width/height variables so that we can mess with the size of the window, a race has the server's
+        double width = race != null ? race.getSimulation().getWidth() : settings.getFieldWidth();
+        double fieldHeight = race != null ? race.getSimulation().getHeight() : settings.getFieldHeight();
+        double height = fieldHeight + KEYBOARD_HEIGHT + CONTROLS_HEIGHT;
         // BorderPane (https://openjfx.io/javadoc/18/javafx.graphics/javafx/scene/layout/BorderPane.html)
         // Provides the basis which we basis the rest of the GUI on
         VBox window = new VBox();
@@ -57,17 +244,55 @@ public class Main extends Application {
         topVBox.setAlignment(Pos.CENTER);
         // Label which displays the score
         Label scoreLabel = new Label("0");
-        scoreLabel.setFont(new Font(40));
+        scoreLabel.setFont(FontCache.get(40).getFont());
         // Label which displays the currently typed letters
         Label typedLabel = new Label();
-        typedLabel.setFont(new Font(40));
+        typedLabel.setFont(FontCache.get(40).getFont());
+        // Label which displays the typing speed and accuracy
+        Label speedLabel = new Label();
+        speedLabel.setFont(FontCache.get(14).getFont());
         // Add them all to the VBox
-        topVBox.getChildren().addAll(scoreLabel, typedLabel);
+        topVBox.getChildren().addAll(scoreLabel, typedLabel, speedLabel);
         // Put them in the top of the BorderPane
         window.getChildren().add(topVBox);
         // Create an instance of our helper Words class
-        Words words = new Words("./docs/words.txt", width, 200,
-                                scoreLabel, typedLabel);
+        // Pass --renderer=canvas to draw the words onto a single Canvas
+        Words.RenderMode renderMode = settings.isCanvasRenderer() ? Words.RenderMode.CANVAS : Words.RenderMode.NODES;
+        Words words;
+        if (replayPath != null) {
+            words = new Words(new JournalReplay(Paths.get(replayPath)), width, fieldHeight,
+                              scoreLabel, typedLabel, renderMode, settings.getPoolCapacity());
+        } else if (race != null) {
+            words = new Words(race, width, fieldHeight, scoreLabel, typedLabel, renderMode,
+                              settings.getPoolCapacity());
+        } else {
+            words = new Words(settings.getDictionary(), width, fieldHeight,
+                              scoreLabel, typedLabel, renderMode, settings.getPoolCapacity());
+        }
+        // The word list, spawning, lifetimes and difficulty come from the settings. Pass
+        // --difficulty=curve to start with short, easy words and get harder over time
+        words.apply(settings);
+        // A race is neither journaled, as the server decides it, nor stored in the session history
+        if (replayPath == null && race == null) {
+            // Every game is recorded to journals/ unless --journal=off is passed
+            if (!"off".equalsIgnoreCase(getParameters().getNamed().get("journal"))) {
+                Path journal = Paths.get("journals", "session-" + System.currentTimeMillis() + ".ksj");
+                try {
+                    Files.createDirectories(journal.getParent());
+                    words.startJournal(journal);
+                } catch (IOException e) {
+                    System.out.println("Could not start the journal: " + e.getMessage());
+                }
+            }
+            try {
+                Path sessionLog = Paths.get("sessions", "sessions.kss");
+                Files.createDirectories(sessionLog.getParent());
+                sessions = SessionStore.open(sessionLog);
+            } catch (IOException e) {
+                System.out.println("Could not open the session history: " + e.getMessage());
+            }
+        }
+        words.setSpeedLabel(speedLabel);
         // Put it in the middle of the BorderPane
         window.getChildren().add(words.getWordsPane());
 
@@ -78,7 +303,7 @@ public class Main extends Application {
         Label spawnLbl = new Label("Spawn Rate: ");
         spawnLbl.setPrefWidth(90);
         spawnLbl.setStyle("-fx-font-weight: bold");
-        TextField spawnText = new TextField("3");
+        TextField spawnText = new TextField(seconds(settings.getSpawnIntervalNanos()));
         Button btnSpawnRate = new Button("CHANGE");
         spawnHB.getChildren().addAll(spawnLbl, spawnText, btnSpawnRate);
 
@@ -86,28 +311,48 @@ public class Main extends Application {
         Label durationLbl = new Label("Text Duration: ");
         durationLbl.setPrefWidth(90);
         durationLbl.setStyle("-fx-font-weight: bold");
-        TextField durationText = new TextField("10");
+        TextField durationText = new TextField(seconds(settings.getLifetimeNanos()));
         Button btnDuration = new Button("CHANGE");
         wordDuration.getChildren().addAll(durationLbl, durationText, btnDuration);
 
         controlInputs.setPadding(new Insets(10, 20, 10, 20));
 
+        // A duration that is not a positive number is refused like a spawn rate,
+        // and the words keep floating as long as before
         btnDuration.setOnMouseClicked(e -> {
-            try{
-                words.setWordDuration(Integer.parseInt(durationText.getText()));
-            } catch (NumberFormatException ignore) {
-                words.setWordDuration(10);
+            try {
+                double duration = Double.parseDouble(durationText.getText());
+                if (!(duration > 0) || Double.isInfinite(duration)) {
+                    throw new NumberFormatException("not a positive number");
+                }
+                words.setWordDuration(duration);
+                durationText.setStyle("");
+            } catch (NumberFormatException ex) {
+                durationText.setStyle("-fx-border-color: red");
+                System.out.println("Not a word duration: " + durationText.getText() + ", words keep floating for "
+                        + seconds(words.getSimulation().getLifetimeNanos()) + " seconds");
             }
         });
 
 
-        controlInputs.getChildren().addAll(spawnHB, wordDuration);
+        HBox dictionaryHB = new HBox(10);
+        Label dictionaryLbl = new Label("Dictionary: ");
+        dictionaryLbl.setPrefWidth(90);
+        dictionaryLbl.setStyle("-fx-font-weight: bold");
+        TextField dictionaryText = new TextField(settings.getDictionary());
+        Button btnDictionary = new Button("LOAD");
+        dictionaryHB.getChildren().addAll(dictionaryLbl, dictionaryText, btnDictionary);
+
+        // The new list is read in the background and swapped in once it is complete
+        btnDictionary.setOnMouseClicked(e -> words.loadDictionary(dictionaryText.getText()));
+
+        controlInputs.getChildren().addAll(spawnHB, wordDuration, dictionaryHB);
         window.getChildren().add(controlInputs);
 
         // Create a VBox for the keyboard
         VBox keyBoardWindow = new VBox(10);
         // Create an instance of our helper class Keyboard
-        Keyboard keyboard = new Keyboard(width, height / 5, 7);
+        Keyboard keyboard = new Keyboard(width, KEYBOARD_HEIGHT, settings.getKeySpacing());
         // Add a horizontal line above the keyboard to create clear seperation
 
         try {
@@ -118,6 +363,8 @@ public class Main extends Application {
 
         // Put it in the bottom of the BorderPane
         window.getChildren().add(keyBoardWindow);
+        // The key flashes and the second counter are the only animations besides the words
+        words.setLiveAnimations(() -> keyboard.getRunningTransitions() + 1);
 
 
 
@@ -128,35 +375,59 @@ public class Main extends Application {
         // Then start the fill transition, which blinks the key
         // Then add it to the typed letters
 
-        long startTime = System.currentTimeMillis();
-
-        words.createWord();
-        AtomicReference<Timeline> timeline = new AtomicReference<>(new Timeline(new KeyFrame(Duration.seconds(this.spawnRate), event -> {
-            if (this.isRunning) {
-                words.createWord();
-            }
-        })));
-        timeline.get().setCycleCount(Timeline.INDEFINITE);
-        timeline.get().play();
+        words.start();
 
+        // A rate that is not a number of at least SpawnScheduler.MIN_INTERVAL_NANOS is
+        // refused: the field turns red and the words keep spawning at the current rate
         btnSpawnRate.setOnMouseClicked(e -> {
             try {
-                this.spawnRate = Integer.parseInt(spawnText.getText());
-                timeline.get().stop();
-                timeline.set(new Timeline(new KeyFrame(Duration.seconds(this.spawnRate), event -> {
-                    if (this.isRunning) {
-                        words.createWord();
-                    }
-                })));
-                timeline.get().setCycleCount(Timeline.INDEFINITE);
-                timeline.get().play();
+                double rate = Double.parseDouble(spawnText.getText());
+                if (!(rate * GameSimulation.NANOS_PER_SECOND >= SpawnScheduler.MIN_INTERVAL_NANOS)
+                        || Double.isInfinite(rate)) {
+                    throw new NumberFormatException("shorter than the shortest interval");
+                }
+                this.spawnRate = rate;
+                words.setSpawnRate(this.spawnRate);
+                spawnText.setStyle("");
             } catch (NumberFormatException ex) {
-                this.spawnRate = 3;
-                spawnText.setText("3");
-                System.out.println("An error occurred!");
+                spawnText.setStyle("-fx-border-color: red");
+                System.out.println("Not a spawn rate: " + spawnText.getText() + ", words keep spawning every "
+                        + this.spawnRate + " seconds");
             }
         });
 
+        // Pass --spawn-jitter=0.3 to vary each time between spawns by up to 30%, --adaptive=words:6
+        // to keep about 6 words on the screen, or --adaptive=hits:0.8 to keep the player hitting about
+        // 80% of the words. Like every other setting they can be put into a profile as well.
+        // A profile file is read again whenever it is saved, between two frames
+        String profile = getParameters().getNamed().get("profile");
+        if (profile != null && replayPath == null && race == null
+                && !GameSettings.PRESETS.contains(profile.toLowerCase())) {
+            // What the window was built with, which later settings cannot change
+            GameSettings startSettings = settings;
+            try {
+                settingsWatch = GameSettings.watch(profile, settingsOverrides(getParameters().getNamed()), settings,
+                        next -> Platform.runLater(() -> {
+                            if (next.needsRestart(startSettings)) {
+                                System.out.println("The field size, keyboard, renderer and pool size of " + profile
+                                        + " take effect on the next start");
+                            }
+                            settings = next;
+                            this.spawnRate = (double) next.getSpawnIntervalNanos() / GameSimulation.NANOS_PER_SECOND;
+                            words.apply(next);
+                            spawnText.setText(seconds(next.getSpawnIntervalNanos()));
+                            spawnText.setStyle("");
+                            durationText.setText(seconds(next.getLifetimeNanos()));
+                            durationText.setStyle("");
+                            dictionaryText.setText(next.getDictionary());
+                            System.out.println("Applied the changed settings of " + profile);
+                        }),
+                        e -> System.out.println("Kept the settings, could not load " + profile + ": " + e.getMessage()));
+            } catch (IOException e) {
+                System.out.println("Could not watch " + profile + " for changes: " + e.getMessage());
+            }
+        }
+
         // add the stop button
         HBox stopBox = new HBox(50);
         stopBox.setAlignment(Pos.CENTER);
@@ -172,6 +443,7 @@ public class Main extends Application {
         Timeline secondCounter = new Timeline(new KeyFrame(Duration.seconds(1), event -> {
             secondsCount++;
             timerLabel.setText(secondsCount + " seconds");
+            keyboard.showHeatmap(words.getTypingStats());
         }));
         secondCounter.setCycleCount(Animation.INDEFINITE);
         secondCounter.play();
@@ -181,18 +453,56 @@ public class Main extends Application {
             long endTime = System.currentTimeMillis();
 
             this.isRunning = false;
+            words.stop();
+            words.stopJournal();
             resultsLabel.setVisible(true);
 
             secondCounter.stop();
-            long timeDifferenceInMillis = endTime - startTime;
-
-            double timeDifferenceInMinutes = timeDifferenceInMillis / (1000.0 * 60.0); // divide by 1000 * 60 to get minutes as a decimal value
-
-            double wordsTyped = words.getScore();
-
-            double wordsPerMinute = wordsTyped / timeDifferenceInMinutes;
-
-            resultsLabel.setText(String.format("Results: %d WPM", (int) wordsPerMinute ));
+            // Same net speed the speedLabel shows, in words of five characters, up to the moment STOP was pressed
+            double wordsPerMinute = words.getSpeedMeter().getNetWpm(System.nanoTime(), 0);
+
+            resultsLabel.setText(String.format("Results: %.0f WPM", wordsPerMinute));
+            if (sessions != null && isRecordable) {
+                isRecordable = false;
+                long now = System.nanoTime();
+                SpeedMeter speedMeter = words.getSpeedMeter();
+                try {
+                    sessions.add(new SessionRecord(player, endTime, words.getScore(), wordsPerMinute,
+                            speedMeter.getGrossWpm(now, 0), speedMeter.getAccuracy(), speedMeter.getElapsedNanos(now),
+                            words.getSimulation().getSpawnIntervalNanos(), words.getSimulation().getLifetimeNanos(),
+                            words.getTypingStats()));
+                    int index = sessions.size() - 1;
+                    resultsLabel.setText(String.format("Results: %.0f WPM, #%d of %d", wordsPerMinute,
+                            sessions.rank(SessionStore.Ranking.NET_WPM, index), sessions.size()));
+                    System.out.println("Best games:");
+                    for (SessionStore.Entry entry : sessions.top(SessionStore.Ranking.NET_WPM, 5)) {
+                        System.out.println("  " + entry);
+                    }
+                } catch (IOException ex) {
+                    System.out.println("Could not store the game: " + ex.getMessage());
+                }
+            }
+            if (words.getRace() != null) {
+                System.out.println("Race standings:");
+                for (String standing : words.getRace().getStandings()) {
+                    System.out.println("  " + standing);
+                }
+            }
+            keyboard.showHeatmap(words.getTypingStats());
+            System.out.println(words.getTypingStats().summary());
+            if (settings.isMetricsExport()) {
+                try {
+                    Path perfFile = Paths.get("perf", "perf-" + endTime + ".csv");
+                    Files.createDirectories(perfFile.getParent());
+                    words.getPerfMetrics().export(perfFile);
+                    System.out.println("Performance metrics written to " + perfFile);
+                } catch (IOException ex) {
+                    System.out.println("Could not write the performance metrics: " + ex.getMessage());
+                }
+            }
+            if (words.getWordBoxPool() != null) {
+                System.out.println("WordBox pool: " + words.getWordBoxPool().getStats());
+            }
 
         });
 
@@ -201,15 +511,63 @@ public class Main extends Application {
 
         window.getChildren().add(stopBox);
 
-        scene.setOnKeyPressed(event -> {
-            KeyCode keyCode = event.getCode();
+        // Flashes the key and adds it to the typed letters, for real keys and the bot alike
+        Consumer<KeyCode> pressKey = keyCode -> {
             keyboard.startFillTransition(keyCode);
             words.addTypedLetter(keyCode);
+        };
+        scene.setOnKeyPressed(event -> {
+            KeyCode keyCode = event.getCode();
+            // F3 shows or hides the performance overlay
+            if (keyCode == KeyCode.F3) {
+                words.togglePerfOverlay();
+                return;
+            }
+            pressKey.accept(keyCode);
         });
 
+        // Pass --bot=<wpm> to let a bot play at that speed, --load-test to raise
+        // the load step by step until frames get too slow
+        String botWpm = getParameters().getNamed().get("bot");
+        boolean loadTest = getParameters().getUnnamed().contains("--load-test");
+        if (botWpm != null || loadTest) {
+            double wpm = 60;
+            try {
+                wpm = botWpm == null ? wpm : Double.parseDouble(botWpm);
+            } catch (NumberFormatException ignore) {
+                System.out.println("Not a typing speed: " + botWpm + ", the bot types at " + wpm + " WPM");
+            }
+            BotDriver botDriver = new BotDriver(new BotPlayer(System.nanoTime(), wpm, 0.05, 300_000_000L),
+                    words.getSimulation(), pressKey);
+            if (loadTest) {
+                // The budget is one and a half frames at 60 frames per second
+                new LoadTest(words, botDriver, 1, 25_000_000L).start();
+            } else {
+                botDriver.start();
+            }
+        }
+
         scene.getRoot().requestFocus();
         // Set the scene
         primaryStage.setScene(scene);
+        // Closing the window ends the journal too, so it holds the final score, and saves the session index
+        primaryStage.setOnCloseRequest(e -> {
+            words.stopJournal();
+            if (settingsWatch != null) {
+                try {
+                    settingsWatch.close();
+                } catch (IOException ignore) {
+                    // Closing anyway
+                }
+            }
+            if (sessions != null) {
+                try {
+                    sessions.close();
+                } catch (IOException ex) {
+                    System.out.println("Could not save the session history: " + ex.getMessage());
+                }
+            }
+        });
         primaryStage.show();
 
     }
@@ -0,0 +1,115 @@
+import engine.WordEntity;
+import javafx.scene.Node;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+
+import java.util.List;
+
+/**
+ * Renders every word as its own WordBox node in a Pane. The WordBoxes
+ * come from a WordBoxPool and stay in the pane while they are idle, only
+ * hidden, so spawning and removing a word does not change the children
+ * of the pane.
+ */
+public class NodeWordRenderer implements WordRenderer {
+    // Pane holding one WordBox node per floating word
+    private final Pane pane;
+    // Reusable WordBoxes, each one already a child of the pane
+    private final WordBoxPool pool;
+
+    public NodeWordRenderer(double width, double height, int poolCapacity) {
+        pane = new Pane();
+        pane.setPrefWidth(width);
+        pane.setMinHeight(height);
+        pool = new WordBoxPool(30, poolCapacity, box -> {
+            box.getWordBox().setManaged(false);
+            box.getWordBox().setVisible(false);
+            pane.getChildren().add(box.getWordBox());
+        }, box -> pane.getChildren().remove(box.getWordBox()));
+    }
+
+    public WordBoxPool getPool() {
+        return pool;
+    }
+
+    @Override
+    public Node getNode() {
+        return pane;
+    }
+
+    /**
+     * @return the pane and every WordBox that shows a word, with its rectangle and label
+     */
+    @Override
+    public int getNodeCount() {
+        return 1 + 3 * pool.getInUse();
+    }
+
+    /**
+     * @return every idle WordBox in the pane, with its rectangle and label
+     */
+    @Override
+    public int getPooledNodeCount() {
+        return 3 * pool.getIdle();
+    }
+
+    /**
+     * Builds enough WordBoxes up front for the given number of words.
+     * @param expectedWords number of words expected on the screen at once
+     */
+    @Override
+    public void prewarm(int expectedWords) {
+        pool.prewarm(expectedWords);
+    }
+
+    /**
+     * Takes a WordBox from the pool, shows it and puts it at the starting point of the word.
+     * @param word the spawned word
+     */
+    @Override
+    public void onSpawn(WordEntity word) {
+        WordBox wordBox = pool.acquire(word.getWord());
+        wordBox.getWordBox().setLayoutX(word.getStartX());
+        wordBox.getWordBox().setLayoutY(word.getStartY());
+        wordBox.getWordBox().setVisible(true);
+        word.setView(wordBox);
+    }
+
+    /**
+     * Colors the typed word green.
+     * @param word the word that was typed
+     */
+    @Override
+    public void onHit(WordEntity word) {
+        ((WordBox) word.getView()).getLabel().setTextFill(Color.GREEN);
+    }
+
+    /**
+     * Hides the WordBox of the word and returns it to the pool.
+     * @param word the removed word
+     */
+    @Override
+    public void onRemove(WordEntity word) {
+        WordBox wordBox = (WordBox) word.getView();
+        wordBox.getWordBox().setVisible(false);
+        pool.release(wordBox);
+        word.setView(null);
+    }
+
+    /**
+     * Moves every WordBox to where its word is and fades out the words
+     * that were hit.
+     */
+    @Override
+    public void render(List<WordEntity> words, long time, long hitLingerNanos) {
+        for (int i = 0; i < words.size(); i++) {
+            WordEntity word = words.get(i);
+            Node node = ((WordBox) word.getView()).getWordBox();
+            node.setLayoutX(word.x(time));
+            node.setLayoutY(word.y(time));
+            if (word.getState() == WordEntity.State.HIT) {
+                node.setOpacity(WordRenderer.fade(word, time, hitLingerNanos));
+            }
+        }
+    }
+}
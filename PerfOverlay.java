@@ -0,0 +1,55 @@
+import engine.PerfMetrics;
+import javafx.scene.control.Label;
+
+/**
+ * Heads-up display that shows the PerfMetrics of the game on top of the
+ * floating words. It only refreshes a few times per second, and not at
+ * all while it is hidden.
+ */
+public class PerfOverlay {
+    // Time between two refreshes of the text
+    private static final long REFRESH_NANOS = 250_000_000L;
+
+    private final PerfMetrics metrics;
+    private final Label label;
+    private long lastRefreshNanos;
+
+    public PerfOverlay(PerfMetrics metrics) {
+        this.metrics = metrics;
+        label = new Label();
+        label.setStyle("-fx-font-family: monospace; -fx-font-size: 11; -fx-text-fill: white; "
+                + "-fx-background-color: rgba(0, 0, 0, 0.6); -fx-padding: 4");
+        label.setMouseTransparent(true);
+        label.setManaged(false);
+        label.setVisible(false);
+    }
+
+    public Label getLabel() {
+        return label;
+    }
+
+    public boolean isVisible() {
+        return label.isVisible();
+    }
+
+    /**
+     * Shows the overlay if it is hidden and hides it if it is shown.
+     */
+    public void toggle() {
+        label.setVisible(!label.isVisible());
+        lastRefreshNanos = 0;
+    }
+
+    /**
+     * Refreshes the text if the overlay is shown and enough time has passed.
+     * @param now pulse time in nanoseconds
+     */
+    public void update(long now) {
+        if (!label.isVisible() || now - lastRefreshNanos < REFRESH_NANOS) {
+            return;
+        }
+        lastRefreshNanos = now;
+        label.setText(metrics.summary().toString());
+        label.toFront();
+    }
+}
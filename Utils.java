@@ -1,10 +1,9 @@
+import engine.WordDictionary;
 import javafx.scene.input.KeyCode;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.List;
-import java.util.Scanner;
 
 public class Utils {
     public static String combineList(List<KeyCode> keyCodes) {
@@ -17,14 +16,24 @@ public class Utils {
         return sb.toString();
     }
 
-    public static List<String> readWords(String path) throws FileNotFoundException {
-        Scanner sc = new Scanner(new File(path));
-        List<String> words = new ArrayList<>();
-
-        while (sc.hasNextLine()) {
-            words.add(sc.nextLine());
-        }
+    /**
+     * Reads the word list at the given path. The words come back upper
+     * cased, trimmed and without duplicates, see WordDictionary.load.
+     * @param path path of the word list, one word per line
+     * @return the words
+     * @throws IOException if the file cannot be read
+     */
+    public static List<String> readWords(String path) throws IOException {
+        return readDictionary(path).asList();
+    }
 
-        return words;
+    /**
+     * Reads the word list at the given path into its packed form.
+     * @param path path of the word list, one word per line
+     * @return the packed words
+     * @throws IOException if the file cannot be read
+     */
+    public static WordDictionary readDictionary(String path) throws IOException {
+        return WordDictionary.load(Paths.get(path));
     }
 }
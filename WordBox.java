@@ -1,23 +1,41 @@
 import javafx.scene.control.Label;
 import javafx.scene.layout.StackPane;
 import javafx.scene.paint.Color;
+import javafx.scene.paint.Paint;
 import javafx.scene.shape.Rectangle;
-import javafx.scene.text.Font;
 
 public class WordBox {
     private final StackPane wordBox;
     private final Rectangle rect;
-    private final String word;
+    private final Label text;
+    // Text color the label starts with, restored when the box is reused
+    private final Paint textFill;
+    private String word;
 
     public WordBox(double size, String word, Color color) {
         wordBox = new StackPane();
         rect = new Rectangle(size, size, color);
         this.word = word.toUpperCase();
-        Label text = new Label(this.word);
-        text.setFont(new Font(size - 2));
+        text = new Label(this.word);
+        text.setFont(FontCache.get(size - 2).getFont());
+        textFill = text.getTextFill();
         wordBox.getChildren().addAll(rect, text);
     }
 
+    /**
+     * Puts the box back into the state of a freshly constructed one
+     * showing the given word, so it can be reused for another word.
+     * @param word word to show
+     */
+    public void reset(String word) {
+        this.word = word.toUpperCase();
+        text.setText(this.word);
+        text.setTextFill(textFill);
+        wordBox.setOpacity(1);
+        wordBox.setLayoutX(0);
+        wordBox.setLayoutY(0);
+    }
+
     public StackPane getWordBox() {
         return wordBox;
     }
@@ -26,6 +44,10 @@ public class WordBox {
         return rect;
     }
 
+    public Label getLabel() {
+        return text;
+    }
+
     public String getWord() {
         return word;
     }
@@ -0,0 +1,159 @@
+import javafx.scene.paint.Color;
+
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+
+/**
+ * Bounded pool of WordBoxes for the floating words. A removed word hands
+ * its WordBox back with release, and the next spawn resets and reuses it
+ * instead of building a new StackPane, Rectangle and Label.
+ * At most capacity idle boxes are kept, anything released beyond that
+ * is evicted.
+ */
+public class WordBoxPool {
+    // Idle boxes waiting to be reused
+    private final ArrayDeque<WordBox> free;
+    // Size of the boxes in this pool
+    private final double size;
+    // Maximum number of idle boxes
+    private final int capacity;
+    // Called for every box the pool builds, and for every box it drops
+    private final Consumer<WordBox> onCreate;
+    private final Consumer<WordBox> onEvict;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long created;
+    private int inUse;
+    private int peakInUse;
+
+    public WordBoxPool(double size, int capacity) {
+        this(size, capacity, box -> { }, box -> { });
+    }
+
+    public WordBoxPool(double size, int capacity, Consumer<WordBox> onCreate, Consumer<WordBox> onEvict) {
+        this.size = size;
+        this.capacity = capacity;
+        this.onCreate = onCreate;
+        this.onEvict = onEvict;
+        this.free = new ArrayDeque<>(capacity);
+    }
+
+    /**
+     * Estimates how many words are on the screen at the same time.
+     * @param spawnIntervalSeconds seconds between two spawns
+     * @param lifetimeSeconds seconds a word floats, including the time a hit word lingers
+     * @return number of boxes to keep ready
+     */
+    public static int expectedSize(double spawnIntervalSeconds, double lifetimeSeconds) {
+        if (spawnIntervalSeconds <= 0) {
+            return 1;
+        }
+        return (int) Math.ceil(lifetimeSeconds / spawnIntervalSeconds) + 1;
+    }
+
+    /**
+     * Builds boxes until at least count boxes are idle or in use,
+     * limited by the capacity of the pool.
+     * @param count number of boxes to have ready
+     */
+    public void prewarm(int count) {
+        int target = Math.min(count - inUse, capacity);
+        while (free.size() < target) {
+            free.push(create());
+        }
+    }
+
+    /**
+     * Takes an idle box, or builds a new one if there is none, and
+     * resets it to show the given word.
+     * @param word word to show
+     * @return a box showing the word
+     */
+    public WordBox acquire(String word) {
+        WordBox box = free.poll();
+        if (box == null) {
+            misses++;
+            box = create();
+        } else {
+            hits++;
+        }
+        box.reset(word);
+        inUse++;
+        peakInUse = Math.max(peakInUse, inUse);
+        return box;
+    }
+
+    /**
+     * Returns a box that is no longer shown. If the pool is full the box is evicted.
+     * @param box box to return
+     */
+    public void release(WordBox box) {
+        inUse--;
+        if (free.size() >= capacity) {
+            evictions++;
+            onEvict.accept(box);
+        } else {
+            free.push(box);
+        }
+    }
+
+    private WordBox create() {
+        created++;
+        WordBox box = new WordBox(size, "", Color.TRANSPARENT);
+        onCreate.accept(box);
+        return box;
+    }
+
+    /**
+     * @return boxes that show a word
+     */
+    public int getInUse() {
+        return inUse;
+    }
+
+    /**
+     * @return boxes waiting to be reused
+     */
+    public int getIdle() {
+        return free.size();
+    }
+
+    public Stats getStats() {
+        return new Stats(hits, misses, evictions, created, inUse, peakInUse, free.size());
+    }
+
+    /**
+     * Snapshot of the pool counters.
+     */
+    public static class Stats {
+        // Acquires served by an idle box
+        public final long hits;
+        // Acquires that had to build a new box
+        public final long misses;
+        // Released boxes dropped because the pool was full
+        public final long evictions;
+        // Boxes built in total, including prewarming
+        public final long created;
+        public final int inUse;
+        public final int peakInUse;
+        public final int idle;
+
+        Stats(long hits, long misses, long evictions, long created, int inUse, int peakInUse, int idle) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.created = created;
+            this.inUse = inUse;
+            this.peakInUse = peakInUse;
+            this.idle = idle;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d misses=%d evictions=%d created=%d inUse=%d peak=%d idle=%d",
+                    hits, misses, evictions, created, inUse, peakInUse, idle);
+        }
+    }
+}
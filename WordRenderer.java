@@ -0,0 +1,72 @@
+import engine.WordEntity;
+import javafx.scene.Node;
+
+import java.util.List;
+
+/**
+ * Draws the floating words of a GameSimulation. Words creates one of
+ * these depending on the chosen render mode and forwards the simulation
+ * events and frames to it.
+ */
+public interface WordRenderer {
+    /**
+     * @return the JavaFX node that shows the words, placed inside the wordsPane
+     */
+    Node getNode();
+
+    /**
+     * @return number of scene graph nodes that show the words
+     */
+    int getNodeCount();
+
+    /**
+     * @return number of scene graph nodes kept hidden for words to come
+     */
+    default int getPooledNodeCount() {
+        return 0;
+    }
+
+    /**
+     * Gets ready for the given number of words on the screen at once.
+     * @param expectedWords number of words expected on the screen at once
+     */
+    default void prewarm(int expectedWords) {
+    }
+
+    /**
+     * Called when a word is spawned, before it is first rendered.
+     * @param word the spawned word
+     */
+    void onSpawn(WordEntity word);
+
+    /**
+     * Called when a word was typed correctly.
+     * @param word the word that was typed
+     */
+    void onHit(WordEntity word);
+
+    /**
+     * Called when a word leaves the simulation.
+     * @param word the removed word
+     */
+    void onRemove(WordEntity word);
+
+    /**
+     * Draws every word at its position at the given time.
+     * @param words the words in the simulation
+     * @param time simulation time to draw
+     * @param hitLingerNanos how long hit words take to fade out
+     */
+    void render(List<WordEntity> words, long time, long hitLingerNanos);
+
+    /**
+     * @param word a word that was hit
+     * @param time simulation time
+     * @param hitLingerNanos how long hit words take to fade out
+     * @return opacity of the word, fading from 1 to 0 after the hit
+     */
+    static double fade(WordEntity word, long time, long hitLingerNanos) {
+        double faded = (double) (time - word.getHitNanos()) / hitLingerNanos;
+        return 1 - Math.min(1, Math.max(0, faded));
+    }
+}
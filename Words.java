@@ -1,4 +1,21 @@
+import engine.DictionaryLoader;
+import engine.DifficultyCurve;
+import engine.GameSettings;
+import engine.GameListener;
+import engine.GameSimulation;
+import engine.JournalReplay;
+import engine.KeyJournal;
+import engine.PerfMetrics;
+import engine.RaceMirror;
+import engine.RaceProtocol;
+import engine.SpeedMeter;
+import engine.TextMeasure;
+import engine.TypingStats;
+import engine.WordDictionary;
+import engine.WordEntity;
+import engine.WordIndex;
 import javafx.animation.Animation;
+import javafx.animation.AnimationTimer;
 import javafx.animation.KeyFrame;
 import javafx.animation.KeyValue;
 import javafx.animation.Timeline;
@@ -14,37 +31,161 @@ import javafx.scene.paint.Paint;
 import javafx.scene.text.Text;
 import javafx.util.Duration;
 
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.SQLOutput;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+/**
+ * Renders a GameSimulation into a Pane. All the game rules live in the
+ * simulation, this class only turns its words into JavaFX nodes and
+ * forwards the typed keys.
+ */
+public class Words implements GameListener {
+    /**
+     * How the floating words are drawn.
+     */
+    public enum RenderMode {
+        // One WordBox node per word
+        NODES,
+        // All words drawn onto one Canvas
+        CANVAS
+    }
 
-public class Words {
     // Pane (https://openjfx.io/javadoc/18/javafx.graphics/javafx/scene/layout/Pane.html)
     // which represents the floating words part of the game
     private final Pane wordsPane;
-    // List of all available words
-    private final List<String> words;
-    // List of all JavaFX floating words currently on the screen
-    private final List<WordBox> activeWords;
-    // List of all keys that have been pressed since the last correct word
-    private final List<KeyCode> typed;
+    // Draws the floating words inside the wordsPane
+    private final WordRenderer renderer;
+    // Pool of reusable WordBoxes, null when the words are drawn onto a Canvas
+    private final WordBoxPool wordBoxPool;
+    // The game itself, words, spawning, expiry, score and typed letters
+    private final GameSimulation simulation;
+    // AnimationTimer (https://openjfx.io/javadoc/18/javafx.graphics/javafx/animation/AnimationTimer.html)
+    // which advances the simulation and moves every word once per frame
+    private final AnimationTimer frameTimer;
+    // Pulse time of the previous frame, -1 before the first one
+    private long lastFrameNanos = -1;
     // JavaFX Label which shows the score on the screen
     private final Label scoreLabel;
-    // Keeps track of the number of correct words
-    private int score = 0;
     // JavaFX Label which shows what the user has typed since the last correct word
     private final Label typedLabel;
+    // Reads word lists on a background thread
+    private final DictionaryLoader dictionaryLoader;
+    // Words handed over by the loader thread, picked up by the next frame
+    private final AtomicReference<LoadedWords> pendingWords;
+    // Counts calls to loadDictionary so words of an older load are ignored
+    private final AtomicInteger loads;
+    // Frame times, input latency and counts of the running game
+    private final PerfMetrics perfMetrics;
+    // Shows perfMetrics on top of the words when toggled on
+    private final PerfOverlay perfOverlay;
+    // Counts the animations running outside of Words, for the metrics
+    private IntSupplier liveAnimations = () -> 0;
+    // Per-key and per-bigram timings and errors of the typed letters
+    private final TypingStats typingStats = new TypingStats();
+    // Copy of the typed letters, kept in step with every key and shown by the next frame
+    private final StringBuilder typedText = new StringBuilder();
+    // Set when the typedLabel or scoreLabel has to be refreshed by the next frame
+    private boolean typedDirty;
+    private boolean scoreDirty;
+    // Typing speed and accuracy, over the session and the last seconds
+    private final SpeedMeter speedMeter = new SpeedMeter();
+    // Shows speedMeter, refreshed a few times per second, may be null
+    private Label speedLabel;
+    // Pulse time the speedLabel was last refreshed
+    private long lastSpeedNanos;
+    // Time between two refreshes of the speedLabel
+    private static final long SPEED_REFRESH_NANOS = GameSimulation.NANOS_PER_SECOND / 4;
+    // Time between two writes of the journal, which is all a crash can lose of it
+    private static final long JOURNAL_FLUSH_NANOS = GameSimulation.NANOS_PER_SECOND;
+    // Pulse time the journal was last written out
+    private long lastJournalFlushNanos;
+    // Time of the oldest key press that has not been shown yet, 0 if there is none
+    private long pendingInputNanos;
+    // Plays a recorded game instead of taking typed keys, null when playing live
+    private final JournalReplay replay;
+    // Plays a race a server runs instead of a game of its own, null otherwise
+    private final RaceMirror race;
+    // Word list the journal was last told about
+    private String journalSource;
+    // Most idle WordBoxes kept for reuse, unless told otherwise
+    private static final int POOL_CAPACITY = 256;
+    // Word list that was last asked for
+    private String dictionaryPath;
+    // Settings given to apply last, null before the first
+    private GameSettings appliedSettings;
+    // Same box size the renderers use for the floating words
+    private static final double BOX_SIZE = 30;
+    // Font of the floating words and their measured widths
+    private final FontCache fonts = FontCache.get(BOX_SIZE - 2);
     // Width/height of the screen
     private final double width;
     private final double height;
-    private int duration = 10;
-    Random random = new Random();
 
     public Words(String path, double width, double height,
-                 Label scoreLabel, Label typedLabel) throws FileNotFoundException {
+                 Label scoreLabel, Label typedLabel) {
+        this(path, width, height, scoreLabel, typedLabel, RenderMode.NODES);
+    }
+
+    public Words(String path, double width, double height,
+                 Label scoreLabel, Label typedLabel, RenderMode renderMode) {
+        this(path, width, height, scoreLabel, typedLabel, renderMode, POOL_CAPACITY);
+    }
+
+    /**
+     * @param poolCapacity most idle WordBoxes kept for reuse
+     */
+    public Words(String path, double width, double height,
+                 Label scoreLabel, Label typedLabel, RenderMode renderMode, int poolCapacity) {
+        this(new GameSimulation(WordDictionary.EMPTY, width, height, System.nanoTime()), null, null,
+                width, height, scoreLabel, typedLabel, renderMode, poolCapacity);
+        loadDictionary(path);
+    }
+
+    /**
+     * Plays a recorded game. Typed keys are ignored, the journal types
+     * instead and brings its own seed, settings and word lists.
+     *
+     * @param replay the recorded game
+     */
+    public Words(JournalReplay replay, double width, double height,
+                 Label scoreLabel, Label typedLabel, RenderMode renderMode) {
+        this(replay, width, height, scoreLabel, typedLabel, renderMode, POOL_CAPACITY);
+    }
+
+    /**
+     * @param replay the recorded game
+     * @param poolCapacity most idle WordBoxes kept for reuse
+     */
+    public Words(JournalReplay replay, double width, double height,
+                 Label scoreLabel, Label typedLabel, RenderMode renderMode, int poolCapacity) {
+        this(replay.getSimulation(), replay, null, width, height, scoreLabel, typedLabel, renderMode, poolCapacity);
+    }
+
+    /**
+     * Plays a race. The server spawns the words and decides who typed
+     * them first, typed keys are sent to it and the score is the
+     * player's score in the race. The settings of the game are ignored.
+     *
+     * @param race race the player joined, whose field should be width by height
+     * @param poolCapacity most idle WordBoxes kept for reuse
+     */
+    public Words(RaceMirror race, double width, double height,
+                 Label scoreLabel, Label typedLabel, RenderMode renderMode, int poolCapacity) {
+        this(race.getSimulation(), null, race, width, height, scoreLabel, typedLabel, renderMode, poolCapacity);
+    }
+
+    private Words(GameSimulation simulation, JournalReplay replay, RaceMirror race, double width, double height,
+                  Label scoreLabel, Label typedLabel, RenderMode renderMode, int poolCapacity) {
 
         this.width = width;
         this.height = height;
@@ -53,10 +194,57 @@ public class Words {
         wordsPane.setPrefWidth(this.width);
         wordsPane.setMinHeight(this.height);
 
-        this.words = Utils.readWords(path);
+        if (renderMode == RenderMode.CANVAS) {
+            renderer = new CanvasWordRenderer(width, height);
+            wordBoxPool = null;
+        } else {
+            NodeWordRenderer nodeRenderer = new NodeWordRenderer(width, height, poolCapacity);
+            renderer = nodeRenderer;
+            wordBoxPool = nodeRenderer.getPool();
+        }
+        wordsPane.getChildren().add(renderer.getNode());
+
+        perfMetrics = new PerfMetrics();
+        // The first sample only sets where the allocation rate is measured from
+        perfMetrics.sampleAllocationRate();
+        perfOverlay = new PerfOverlay(perfMetrics);
+        wordsPane.getChildren().add(perfOverlay.getLabel());
+
+        this.simulation = simulation;
+        this.replay = replay;
+        this.race = race;
+        simulation.setListener(this);
+        if (replay == null) {
+            // Real bounds of the words, at least a box like the one behind a WordBox.
+            // A replay takes the bounds the recording was made with from its journal.
+            simulation.setTextMeasure(new TextMeasure() {
+                @Override
+                public double width(String word) {
+                    return Math.max(BOX_SIZE, fonts.width(word));
+                }
+
+                @Override
+                public double width(WordDictionary words, int index) {
+                    return Math.max(BOX_SIZE, fonts.width(words, index));
+                }
+
+                @Override
+                public double height() {
+                    return Math.max(BOX_SIZE, fonts.height());
+                }
+            });
+        }
+
+        dictionaryLoader = new DictionaryLoader();
+        pendingWords = new AtomicReference<>();
+        loads = new AtomicInteger();
 
-        activeWords = new ArrayList<>();
-        typed = new ArrayList<>();
+        frameTimer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                update(now);
+            }
+        };
 
         this.scoreLabel = scoreLabel;
         this.typedLabel = typedLabel;
@@ -68,124 +256,449 @@ public class Words {
         return wordsPane;
     }
 
+    public GameSimulation getSimulation() {
+        return simulation;
+    }
+
     /**
-     * Removes the wordBox from the wordsPane as well as
-     * removing it from activeWords.
+     * Loads a word list on a background thread. The game keeps running
+     * while the list is read. If there are no words yet, spawning starts
+     * with the first chunk of the list and more words are added as they
+     * are read. Otherwise the current words are kept until the new list
+     * is complete and then swapped in between two frames.
      *
-     * @param wordBox WordBox to remove
+     * @param path path of the word list, one word per line
      */
-    private void removeWord(WordBox wordBox) {
-        wordsPane.getChildren().remove(wordBox.getWordBox());
-        activeWords.remove(wordBox);
+    public void loadDictionary(String path) {
+        dictionaryPath = path;
+        int load = loads.incrementAndGet();
+        boolean progressive = simulation.getWords().isEmpty();
+        dictionaryLoader.load(Paths.get(path), new DictionaryLoader.Listener() {
+            @Override
+            public void onWords(WordDictionary words, boolean complete) {
+                if ((complete || progressive) && load == loads.get()) {
+                    // Index on the loader thread so the frame loop only swaps a reference
+                    pendingWords.set(new LoadedWords(path, WordIndex.build(words)));
+                }
+                if (complete && load == loads.get()) {
+                    fonts.warm(words);
+                }
+            }
+
+            @Override
+            public void onError(IOException e) {
+                System.out.println("Could not load " + path + ": " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Starts writing every typed key and every change of the settings or
+     * the words to a journal, so the game can be replayed later. Has to
+     * be called before start.
+     *
+     * @param base path of the first file of the journal
+     * @throws IOException if the journal cannot be created
+     */
+    public void startJournal(Path base) throws IOException {
+        simulation.setJournal(new KeyJournal(base));
+    }
+
+    /**
+     * Writes the final score to the journal, if there is one, and closes it.
+     */
+    public void stopJournal() {
+        KeyJournal journal = simulation.getJournal();
+        if (journal != null) {
+            simulation.setJournal(null);
+            journal.end(simulation.getTickCount(), simulation.getScore());
+            if (journal.getError() != null) {
+                System.out.println("Could not write the journal: " + journal.getError().getMessage());
+            }
+        }
     }
 
     /**
-     * Creates a random floating word.
-     * Choses a random word from the list of words.
-     * Then chooses a starting point on any edge of the screen.
-     * Then creates a Timeline (https://openjfx.io/javadoc/18/javafx.graphics/javafx/animation/Timeline.html)
-     * that moves the WordBox from its starting point to a random ending
-     * point over 10 seconds.
+     * @param difficulty curve the spawned words follow, null to pick every word with the same chance
      */
+    public void setDifficulty(DifficultyCurve difficulty) {
+        simulation.setDifficulty(difficulty);
+    }
 
+    /**
+     * Starts advancing the simulation in real time.
+     */
+    public void start() {
+        prewarm();
+        speedMeter.start(System.nanoTime());
+        lastFrameNanos = -1;
+        frameTimer.start();
+    }
+
+    /**
+     * Stops spawning new words, or leaves the race, and stops the
+     * speedMeter. Words already on the screen keep floating.
+     */
+    public void stop() {
+        simulation.setSpawning(false);
+        if (race != null) {
+            race.close();
+        }
+        speedMeter.stop(System.nanoTime());
+        refreshSpeed(System.nanoTime());
+    }
+
+    /**
+     * Spawns a random floating word right away.
+     */
     public void createWord() {
-        int[] randomXDistances = {15, 25, 35, 45, (int) (wordsPane.getPrefWidth() - 60), (int) (wordsPane.getPrefWidth() - 75), (int) (wordsPane.getPrefWidth() - 80), (int) (wordsPane.getPrefWidth() - 90)};
-        String word = words.get(ThreadLocalRandom.current().nextInt(words.size()));
+        simulation.spawn();
+    }
 
-        // Choose starting point on any edge of the screen
-        double startX = randomXDistances[random.nextInt(randomXDistances.length)];
-        if (startX > 500) {
-            startX = 400;
+    /**
+     * Runs once per frame. Advances the simulation by the time since the
+     * last frame, which spawns and removes words through the listener
+     * methods, then has the renderer draw every word where it is at this
+     * moment. Labels changed by any number of keys since the last frame
+     * are refreshed once. Nothing is allocated here apart from the text
+     * of refreshed labels.
+     *
+     * @param now pulse time in nanoseconds
+     */
+    private void update(long now) {
+        LoadedWords words = pendingWords.getAndSet(null);
+        if (words != null) {
+            KeyJournal journal = simulation.getJournal();
+            if (journal != null && !words.path.equals(journalSource)) {
+                journalSource = words.path;
+                journal.source(simulation.getTickCount(), words.path);
+            }
+            simulation.setWords(words.index);
+        }
+
+        if (lastFrameNanos >= 0) {
+            if (race != null) {
+                // The server's steps drive the race
+                race.apply();
+            } else if (replay == null) {
+                simulation.advance(now - lastFrameNanos);
+            } else {
+                advanceReplay(now - lastFrameNanos);
+            }
+            perfMetrics.recordFrame(now - lastFrameNanos);
+        }
+        lastFrameNanos = now;
+
+        renderer.render(simulation.getActiveWords(), simulation.getInterpolatedNanos(),
+                simulation.getHitLingerNanos());
+        flushLabels();
+
+        // Key presses so far are rendered by the pulse this timer runs in
+        if (pendingInputNanos != 0) {
+            perfMetrics.recordLatency(System.nanoTime() - pendingInputNanos);
+            pendingInputNanos = 0;
+        }
+        perfMetrics.recordCounts(simulation.getActiveWords().size(), renderer.getNodeCount(),
+                renderer.getPooledNodeCount(), liveAnimations.getAsInt());
+        if (now - lastSpeedNanos >= SPEED_REFRESH_NANOS) {
+            // Sampled here rather than by the overlay, so the rate is current while it is hidden
+            perfMetrics.sampleAllocationRate();
+            refreshSpeed(now);
+        }
+        perfOverlay.update(now);
+        if (now - lastJournalFlushNanos >= JOURNAL_FLUSH_NANOS) {
+            lastJournalFlushNanos = now;
+            KeyJournal journal = simulation.getJournal();
+            if (journal != null) {
+                journal.flush();
+            }
+        }
+    }
+
+    /**
+     * Refreshes the labels whose text changed since the last frame. Setting
+     * the text of a label makes JavaFX lay it out again, so this happens
+     * at most once per frame no matter how fast keys come in.
+     */
+    private void flushLabels() {
+        if (typedDirty) {
+            typedDirty = false;
+            typedLabel.setText(typedText.toString());
+        }
+        if (scoreDirty) {
+            scoreDirty = false;
+            scoreLabel.setText(Integer.toString(getScore()));
         }
+    }
 
-        double startY = random.nextInt((int) wordsPane.getMinHeight());
-        if (startY < 20) {
-            startY = 60;
+    private void refreshSpeed(long now) {
+        lastSpeedNanos = now;
+        if (speedLabel != null) {
+            speedLabel.setText(speedMeter.summary(now));
         }
-        if (startY > 200) {
-            startY = 100;
+    }
+
+    private void advanceReplay(long elapsedNanos) {
+        try {
+            if (replay.advance(elapsedNanos) > 0) {
+                // The journal types, so copy its letters over
+                typedText.setLength(0);
+                for (int i = 0; i < simulation.getTypedLength(); i++) {
+                    typedText.append(simulation.getTypedCharAt(i));
+                }
+                typedDirty = true;
+            }
+        } catch (IOException e) {
+            System.out.println("Could not replay the journal: " + e.getMessage());
+            frameTimer.stop();
         }
+    }
 
-        WordBox wordBox = new WordBox(30, word, Color.TRANSPARENT);
-        wordBox.getWordBox().setLayoutX(startX);
-        wordBox.getWordBox().setLayoutY(startY);
-        activeWords.add(wordBox);
-        wordsPane.getChildren().add(wordBox.getWordBox());
+    @Override
+    public void onSpawn(WordEntity word) {
+        renderer.onSpawn(word);
+    }
+
+    /**
+     * Marks the scoreLabel for the next frame and lets the renderer mark the word.
+     *
+     * @param word the word that was typed
+     * @param score score after the hit
+     */
+    @Override
+    public void onHit(WordEntity word, int score) {
+        scoreDirty = true;
+        renderer.onHit(word);
+    }
 
-        double xMid = width / 2;
-        double yMid = height / 2;
-        // Create Timeline to move WordBox to random ending point based on the starting point.
-        double endX = xMid + (startX > xMid ? -0.25 * startX : 0.25 * startX);
-        double endY = yMid + (startY > yMid ? -0.25 * startY : 0.25 * startY);
-        Duration duration = Duration.seconds(this.duration);
-        KeyValue kvX = new KeyValue(wordBox.getWordBox().layoutXProperty(), endX);
-        KeyValue kvY = new KeyValue(wordBox.getWordBox().layoutYProperty(), endY);
-        KeyFrame kf = new KeyFrame(duration, kvX, kvY);
-        Timeline timeline = new Timeline(kf);
-        timeline.setOnFinished(event -> removeWord(wordBox));
-        timeline.play();
+    @Override
+    public void onRemove(WordEntity word, boolean expired) {
+        renderer.onRemove(word);
     }
 
 
     /**
-     * Adds the keyCode to typed if it is a letter key.
-     * Removes the first element of typed if it is the backspace key.
-     * Either way it checks for a correct word and updates the typedLabel.
+     * Adds the keyCode to the typed letters if it is a letter key.
+     * Removes the last typed letter if it is the backspace key.
+     * Either way the simulation checks for a correct word, the key is
+     * added to the typing statistics and the typedLabel is marked for
+     * the next frame. In a race the key is sent to the server as well.
+     * Ignored while a journal is replayed.
      *
      * @param keyCode KeyCode to add to the state
      */
     public void addTypedLetter(KeyCode keyCode) {
+        if (replay != null) {
+            return;
+        }
+        long nanos = System.nanoTime();
+        if (pendingInputNanos == 0) {
+            pendingInputNanos = nanos;
+        }
         if (keyCode.isLetterKey()) {
-            typed.add(keyCode);
-        } else if (keyCode == KeyCode.BACK_SPACE && !typed.isEmpty()) {
-            typed.remove(typed.size() - 1);
+            char letter = keyCode.getName().charAt(0);
+            if (race != null) {
+                race.key(letter);
+            }
+            WordEntity hit = simulation.typeLetter(letter);
+            boolean correct = hit != null || simulation.getCandidateCount() > 0;
+            typingStats.letter(letter, correct, nanos);
+            speedMeter.letter(correct, nanos);
+            if (hit != null) {
+                speedMeter.hit(hit.getWord().length(), nanos);
+                // A hit clears the typed letters
+                typedText.setLength(0);
+            } else {
+                typedText.append(letter);
+            }
+            typedDirty = true;
+        } else if (keyCode == KeyCode.BACK_SPACE) {
+            int typed = simulation.getTypedLength();
+            typingStats.backspace(typed == 0 ? 0 : simulation.getTypedCharAt(typed - 1), nanos);
+            if (race != null) {
+                race.key(RaceProtocol.BACKSPACE);
+            }
+            simulation.backspace();
+            if (typedText.length() > 0) {
+                typedText.setLength(typedText.length() - 1);
+                typedDirty = true;
+            }
         }
-        String typedString = typed.stream()
-                .map(KeyCode::getName)
-                .reduce("", (a, b) -> a + b);
-        typedLabel.setText(typedString);
-        checkForCorrectWord(typedString);
     }
 
     /**
-     * Checks if the given String is equal to any of the currently
-     * active words. If it is then it updates the score and scoreLabel.
-     * It also removes the wordBox and clears the typed list.
+     * Calls the consumer for every active word that starts with the
+     * letters typed so far.
      *
-     * @param s Word to check
+     * @param consumer receives each matching word
      */
-    private void checkForCorrectWord(String s) {
-        for (WordBox wordBox : activeWords) {
+    public void forEachMatchingWord(Consumer<WordEntity> consumer) {
+        simulation.forEachCandidate(consumer);
+    }
 
-            if (wordBox.getWord().equals(s)) {
-                score++;
-                scoreLabel.setText(Integer.toString(score));
+    /**
+     * @return number of active words that start with the letters typed so far
+     */
+    public int getMatchingWordCount() {
+        return simulation.getCandidateCount();
+    }
 
-                for (Node child : wordBox.getWordBox().getChildren()) {
-                    if (child instanceof Label) {
-                        ((Label) child).setTextFill(Color.GREEN);
-                    }
-                }
+    /**
+     * @return the score of the game, or of the player in a race
+     */
+    public int getScore() {
+        return race != null ? race.getScore() : simulation.getScore();
+    }
 
-                Timeline secondCounter = new Timeline(new KeyFrame(Duration.seconds(1), event -> {
-                    removeWord(wordBox);
-                }));
-                secondCounter.setCycleCount(1);
-                secondCounter.play();
+    /**
+     * @return the race being played, null for a game of its own
+     */
+    public RaceMirror getRace() {
+        return race;
+    }
 
-                typedLabel.setText("");
-                typed.clear();
+    /**
+     * @param duration positive number of seconds a word floats, fractions
+     * such as 2.5 too. Ignored while a journal is replayed or in a race.
+     */
+    public void setWordDuration(double duration) {
+        if (replay != null || race != null) {
+            return;
+        }
+        simulation.setLifetimeNanos(Math.max(1, Math.round(duration * GameSimulation.NANOS_PER_SECOND)));
+        prewarm();
+    }
 
-                break;
-            }
+    /**
+     * @param spawnRate number of seconds between two spawned words, at
+     * least SpawnScheduler.MIN_INTERVAL_NANOS. May be shorter than a frame,
+     * which spawns several words per frame. Ignored while a journal is
+     * replayed or in a race.
+     */
+    public void setSpawnRate(double spawnRate) {
+        if (replay != null || race != null) {
+            return;
         }
+        simulation.setSpawnIntervalNanos(Math.round(spawnRate * GameSimulation.NANOS_PER_SECOND));
+        prewarm();
     }
 
-    public int getScore() {
-        return score;
+    /**
+     * Applies the settings that can change while the game runs: the word
+     * list, spawning, lifetimes, difficulty and the performance overlay.
+     * Only what differs from the settings applied before is changed, so
+     * changes made in the window in between stay unless the same setting
+     * changed. A new word list is read in the background like with
+     * loadDictionary. Everything but the overlay is ignored while a journal
+     * is replayed or in a race.
+     *
+     * @param settings settings to apply
+     */
+    public void apply(GameSettings settings) {
+        GameSettings previous = appliedSettings;
+        appliedSettings = settings;
+        if (previous == null || previous.isMetricsOverlay() != settings.isMetricsOverlay()) {
+            setPerfOverlayVisible(settings.isMetricsOverlay());
+        }
+        if (replay != null || race != null) {
+            return;
+        }
+        if (previous == null || previous.getSpawnIntervalNanos() != settings.getSpawnIntervalNanos()) {
+            simulation.setSpawnIntervalNanos(settings.getSpawnIntervalNanos());
+        }
+        if (previous == null || previous.getSpawnJitter() != settings.getSpawnJitter()) {
+            simulation.setSpawnJitter(settings.getSpawnJitter());
+        }
+        if (previous == null || previous.getSpawnTarget() != settings.getSpawnTarget()
+                || previous.getSpawnTargetValue() != settings.getSpawnTargetValue()) {
+            simulation.setSpawnTarget(settings.getSpawnTarget(), settings.getSpawnTargetValue());
+        }
+        if (previous == null || previous.getLifetimeNanos() != settings.getLifetimeNanos()) {
+            simulation.setLifetimeNanos(settings.getLifetimeNanos());
+        }
+        if (previous == null || previous.getHitLingerNanos() != settings.getHitLingerNanos()) {
+            simulation.setHitLingerNanos(settings.getHitLingerNanos());
+        }
+        if (previous == null || !previous.hasSameDifficulty(settings)) {
+            simulation.setDifficulty(settings.getDifficulty());
+        }
+        // The first time against the list the game started with, later against the profile
+        String dictionary = previous == null ? dictionaryPath : previous.getDictionary();
+        if (!settings.getDictionary().equals(dictionary)) {
+            loadDictionary(settings.getDictionary());
+        }
+        prewarm();
+    }
+
+    /**
+     * Lets the renderer build up front what it needs for the number of
+     * words the current spawn rate and duration keep on the screen.
+     */
+    private void prewarm() {
+        double nanos = GameSimulation.NANOS_PER_SECOND;
+        renderer.prewarm(WordBoxPool.expectedSize(simulation.getSpawnIntervalNanos() / nanos,
+                (simulation.getLifetimeNanos() + simulation.getHitLingerNanos()) / nanos));
+    }
+
+    public SpeedMeter getSpeedMeter() {
+        return speedMeter;
+    }
+
+    /**
+     * @param speedLabel shows the typing speed and accuracy, refreshed four times per second
+     */
+    public void setSpeedLabel(Label speedLabel) {
+        this.speedLabel = speedLabel;
+    }
+
+    public TypingStats getTypingStats() {
+        return typingStats;
+    }
+
+    public PerfMetrics getPerfMetrics() {
+        return perfMetrics;
     }
 
-    public void setWordDuration(int duration) {
-        this.duration = duration;
+    /**
+     * Shows the performance overlay if it is hidden and hides it if it is shown.
+     */
+    public void togglePerfOverlay() {
+        perfOverlay.toggle();
+    }
+
+    /**
+     * @param visible true to show the performance overlay, false to hide it
+     */
+    public void setPerfOverlayVisible(boolean visible) {
+        if (perfOverlay.isVisible() != visible) {
+            perfOverlay.toggle();
+        }
+    }
+
+    /**
+     * @param liveAnimations counts the animations running outside of Words, for the metrics
+     */
+    public void setLiveAnimations(IntSupplier liveAnimations) {
+        this.liveAnimations = liveAnimations;
+    }
+
+    /**
+     * @return the pool of WordBoxes, or null if the words are drawn onto a Canvas
+     */
+    public WordBoxPool getWordBoxPool() {
+        return wordBoxPool;
+    }
+
+    /**
+     * A word list from the loader thread and the path it was read from.
+     */
+    private static final class LoadedWords {
+        final String path;
+        final WordIndex index;
+
+        LoadedWords(String path, WordIndex index) {
+            this.path = path;
+            this.index = index;
+        }
     }
 }
@@ -0,0 +1,52 @@
+package bench;
+
+import javafx.scene.input.KeyCode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of Utils.combineList for typed buffers of different lengths.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CombineListBenchmark {
+    @Param({"5", "12", "50"})
+    int keys;
+
+    private List<KeyCode> keyCodes;
+    private MethodHandle combineList;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        keyCodes = new ArrayList<>();
+        for (int i = 0; i < keys; i++) {
+            keyCodes.add(KeyCode.getKeyCode(String.valueOf((char) ('A' + random.nextInt(26)))));
+        }
+        combineList = Fixtures.combineList();
+    }
+
+    @Benchmark
+    public String combineList() throws Throwable {
+        return (String) combineList.invoke(keyCodes);
+    }
+}
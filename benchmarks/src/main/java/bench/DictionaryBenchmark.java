@@ -0,0 +1,70 @@
+package bench;
+
+import engine.WordDictionary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of reading a word list through Utils.readWords and
+ * WordDictionary.load, with and without a valid cache file.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DictionaryBenchmark {
+    @Param({"small", "large"})
+    String dictionary;
+
+    @Param({"false", "true"})
+    boolean cached;
+
+    private Path path;
+    private Path cache;
+    private MethodHandle readWords;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        path = Fixtures.dictionary(dictionary);
+        cache = WordDictionary.cachePath(path);
+        readWords = Fixtures.readWords();
+        WordDictionary.load(path);
+    }
+
+    @Setup(Level.Invocation)
+    public void prepareCache() throws IOException {
+        if (!cached) {
+            Files.deleteIfExists(cache);
+        }
+    }
+
+    @Benchmark
+    public WordDictionary load() throws IOException {
+        return WordDictionary.load(path);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public List<String> readWords() throws Throwable {
+        return (List<String>) readWords.invoke(path.toString());
+    }
+}
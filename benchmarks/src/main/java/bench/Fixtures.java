@@ -0,0 +1,87 @@
+package bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Shared inputs for the benchmarks. The game classes outside the engine
+ * package live in the unnamed package, which cannot be imported, so they
+ * are reached through method handles.
+ */
+final class Fixtures {
+    // Number of words in the generated large dictionary
+    static final int LARGE_WORDS = 500_000;
+
+    private Fixtures() {
+    }
+
+    /**
+     * @return the bundled word list, or the one given with -Dwords=path
+     */
+    static Path smallDictionary() {
+        Path path = Paths.get(System.getProperty("words", "words.txt"));
+        if (!Files.exists(path)) {
+            path = Paths.get("..", "words.txt");
+        }
+        return path.toAbsolutePath();
+    }
+
+    /**
+     * Writes a word list of random lower case words of 3 to 12 letters.
+     * @return path of the written list
+     */
+    static Path largeDictionary() {
+        try {
+            Path path = Files.createTempFile("keyshooter-large", ".txt");
+            path.toFile().deleteOnExit();
+            Random random = new Random(42);
+            try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+                for (int i = 0; i < LARGE_WORDS; i++) {
+                    int length = 3 + random.nextInt(10);
+                    for (int j = 0; j < length; j++) {
+                        writer.write('a' + random.nextInt(26));
+                    }
+                    writer.newLine();
+                }
+            }
+            return path;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static Path dictionary(String size) {
+        return "large".equals(size) ? largeDictionary() : smallDictionary();
+    }
+
+    /**
+     * @return handle of Utils.readWords(String)
+     */
+    static MethodHandle readWords() {
+        return utils("readWords", MethodType.methodType(List.class, String.class));
+    }
+
+    /**
+     * @return handle of Utils.combineList(List)
+     */
+    static MethodHandle combineList() {
+        return utils("combineList", MethodType.methodType(String.class, List.class));
+    }
+
+    private static MethodHandle utils(String name, MethodType type) {
+        try {
+            return MethodHandles.publicLookup().findStatic(Class.forName("Utils"), name, type);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Key Shooter classes are not on the classpath", e);
+        }
+    }
+}
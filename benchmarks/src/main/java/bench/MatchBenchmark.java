@@ -0,0 +1,135 @@
+package bench;
+
+import engine.GameSimulation;
+import engine.WordDictionary;
+import engine.WordEntity;
+import javafx.scene.input.KeyCode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a key press with a given number of words on the screen, which
+ * is what Words.addTypedLetter hands to the simulation. legacyScan is the
+ * matching Words did before the prefix trie: rebuild the typed string
+ * from the typed keys and compare it with every active word.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatchBenchmark {
+    @Param({"10", "100", "1000"})
+    int activeWords;
+
+    private GameSimulation simulation;
+    // Words on the screen, and the same words for legacyScan
+    private List<String> words;
+    private KeyCode[][] wordKeys;
+    private int next;
+    private final List<KeyCode> typed = new ArrayList<>();
+
+    @Setup
+    public void setup() throws IOException {
+        WordDictionary dictionary = WordDictionary.load(Fixtures.smallDictionary());
+        simulation = new GameSimulation(dictionary, 600, 200, 42);
+        simulation.setSpawning(false);
+        simulation.setLifetimeNanos(Long.MAX_VALUE / 4);
+        simulation.setHitLingerNanos(0);
+        for (int i = 0; i < activeWords; i++) {
+            simulation.spawn();
+        }
+
+        words = new ArrayList<>();
+        for (WordEntity word : simulation.getActiveWords()) {
+            words.add(word.getWord());
+        }
+        wordKeys = new KeyCode[words.size()][];
+        for (int i = 0; i < words.size(); i++) {
+            String word = words.get(i);
+            wordKeys[i] = new KeyCode[word.length()];
+            for (int j = 0; j < word.length(); j++) {
+                wordKeys[i][j] = KeyCode.getKeyCode(String.valueOf(word.charAt(j)));
+            }
+        }
+    }
+
+    /**
+     * Types all but the last letter of an active word and deletes them again.
+     */
+    @Benchmark
+    public int typeAndBackspace() {
+        String word = words.get(next++ % words.size());
+        int candidates = 0;
+        for (int i = 0; i < word.length() - 1; i++) {
+            simulation.typeLetter(word.charAt(i));
+            candidates += simulation.getCandidateCount();
+        }
+        for (int i = 0; i < word.length() - 1; i++) {
+            simulation.backspace();
+        }
+        return candidates;
+    }
+
+    /**
+     * Types a whole active word, then lets the simulation remove it and
+     * spawns a replacement so the number of words stays the same.
+     */
+    @Benchmark
+    public void typeWordAndHit(Blackhole blackhole) {
+        List<WordEntity> active = simulation.getActiveWords();
+        WordEntity target = active.get(next++ % active.size());
+        String word = target.getWord();
+        for (int i = 0; i < word.length(); i++) {
+            blackhole.consume(simulation.typeLetter(word.charAt(i)));
+        }
+        simulation.tick(simulation.getStepNanos());
+        simulation.spawn();
+    }
+
+    /**
+     * The matching before the prefix trie, for the same key presses as typeAndBackspace.
+     */
+    @Benchmark
+    public int legacyScan() {
+        KeyCode[] keys = wordKeys[next++ % wordKeys.length];
+        int matches = 0;
+        for (int i = 0; i < keys.length - 1; i++) {
+            typed.add(keys[i]);
+            matches += legacyCheck();
+        }
+        for (int i = 0; i < keys.length - 1; i++) {
+            typed.remove(typed.size() - 1);
+            matches += legacyCheck();
+        }
+        return matches;
+    }
+
+    private int legacyCheck() {
+        String typedString = typed.stream()
+                .map(KeyCode::getName)
+                .reduce("", (a, b) -> a + b);
+        for (String word : words) {
+            if (word.equals(typedString)) {
+                return 1;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,65 @@
+package bench;
+
+import engine.DifficultyCurve;
+import engine.GameSimulation;
+import engine.WordDictionary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of spawning a word, which is what Words.createWord does, with a
+ * steady number of words on the screen. Every operation spawns one word
+ * and runs one step, in which the oldest word expires.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpawnBenchmark {
+    @Param({"10", "100", "1000"})
+    int activeWords;
+
+    @Param({"small", "large"})
+    String dictionary;
+
+    @Param({"uniform", "curve"})
+    String selection;
+
+    private GameSimulation simulation;
+
+    @Setup
+    public void setup() throws IOException {
+        WordDictionary words = WordDictionary.load(Fixtures.dictionary(dictionary));
+        simulation = new GameSimulation(words, 600, 200, 42);
+        simulation.setSpawning(false);
+        // Each word lives for activeWords steps, so that many stay on the screen
+        simulation.setLifetimeNanos(activeWords * simulation.getStepNanos());
+        if ("curve".equals(selection)) {
+            simulation.setDifficulty(DifficultyCurve.standard());
+        }
+        for (int i = 0; i < activeWords; i++) {
+            spawnAndStep();
+        }
+    }
+
+    @Benchmark
+    public int spawnAndStep() {
+        simulation.spawn();
+        simulation.tick(simulation.getStepNanos());
+        return simulation.getActiveWords().size();
+    }
+}
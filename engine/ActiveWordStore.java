@@ -0,0 +1,292 @@
+package engine;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The words of a simulation from their spawn until they are removed.
+ * Words are packed densely for iterating and referenced by handles which,
+ * like those of WordMatcher, carry a generation so a stale handle does not
+ * reach a word that later reused its slot. As the generation wraps around
+ * after 2048 reuses, a word is only removed if it is the one in its slot.
+ * Adding and removing a word is O(1), removing it a second time does
+ * nothing and is counted.
+ * <p>
+ * Floating words also sit in a min-heap ordered by the time they expire,
+ * and hit words in a queue ordered by the time they were hit, so a step
+ * only looks at the words that are due. A word that is hit stays in the
+ * heap until its expiry time comes and is then dropped from it.
+ * <p>
+ * The position of a word changes when another word is removed.
+ */
+final class ActiveWordStore {
+    /**
+     * Receives the words that removeDue takes out of the store.
+     */
+    interface RemovalVisitor {
+        /**
+         * @param expired true if the word was not hit
+         */
+        void removed(WordEntity word, boolean expired);
+    }
+
+    // Low bits of a handle hold the slot, the high bits hold the generation
+    private static final int SLOT_BITS = 20;
+    private static final int SLOT_MASK = (1 << SLOT_BITS) - 1;
+    private static final int GENERATION_MASK = (1 << (31 - SLOT_BITS)) - 1;
+    private static final int NONE = -1;
+
+    // The words, packed at the front
+    private WordEntity[] words = new WordEntity[16];
+    private int size;
+
+    // Per slot, the position of its word in words, NONE if the slot is free
+    private int[] slotIndices = new int[16];
+    private int[] slotGenerations = new int[16];
+    private int[] freeSlots = new int[16];
+    private int freeSlotCount;
+    private int slotCount;
+
+    // Floating words by the time they expire, the earliest first
+    private WordEntity[] expiries = new WordEntity[16];
+    private int expiryCount;
+    // Hit words in the order they were hit
+    private final ArrayDeque<WordEntity> hits = new ArrayDeque<>();
+    // Positions of the words that are due in a step
+    private int[] due = new int[16];
+    // Calls of remove with a word that was already gone
+    private long doubleRemovals;
+    // Read-only view of the words
+    private final List<WordEntity> view = new View();
+
+    /**
+     * Adds a floating word and gives it a handle.
+     *
+     * @param word word that just spawned
+     * @return handle of the word, also set on the word
+     */
+    int add(WordEntity word) {
+        int slot = allocateSlot();
+        if (size == words.length) {
+            words = Arrays.copyOf(words, size * 2);
+        }
+        slotIndices[slot] = size;
+        words[size++] = word;
+        int handle = (slotGenerations[slot] << SLOT_BITS) | slot;
+        word.setId(handle);
+        pushExpiry(word);
+        return handle;
+    }
+
+    /**
+     * Queues a word that was just hit, to be removed once it lingered
+     * long enough. Words have to be queued in the order they are hit.
+     *
+     * @param word word that was just hit
+     */
+    void hit(WordEntity word) {
+        hits.add(word);
+    }
+
+    /**
+     * Removes a word. Removing a word twice does nothing and is counted,
+     * also when another word has taken its slot since.
+     *
+     * @param word word that was added
+     * @return false if the word had already been removed
+     */
+    boolean remove(WordEntity word) {
+        int index = indexOf(word);
+        if (index == NONE) {
+            doubleRemovals++;
+            return false;
+        }
+        removeAt(index);
+        return true;
+    }
+
+    /**
+     * @param handle handle returned by add
+     * @return true if the handle still refers to a word in the store
+     */
+    boolean contains(int handle) {
+        int slot = handle & SLOT_MASK;
+        return handle >= 0 && slot < slotCount && slotIndices[slot] != NONE
+                && slotGenerations[slot] == handle >>> SLOT_BITS;
+    }
+
+    /**
+     * Removes every floating word whose time is up and every hit word
+     * that lingered long enough. The words are removed from the highest
+     * position down, so the remaining words end up in the same order as
+     * if the store had been scanned backwards removing each due word.
+     *
+     * @param nowNanos simulation time
+     * @param hitLingerNanos how long a hit word stays
+     * @param visitor receives every removed word, after it is removed
+     */
+    void removeDue(long nowNanos, long hitLingerNanos, RemovalVisitor visitor) {
+        int dueCount = 0;
+        while (expiryCount > 0 && expiries[0].getExpiryNanos() <= nowNanos) {
+            WordEntity word = popExpiry();
+            // Hit and removed words are dropped from the heap once their time comes
+            if (word.getState() == WordEntity.State.ACTIVE && indexOf(word) != NONE) {
+                due = grow(due, dueCount);
+                due[dueCount++] = indexOf(word);
+            }
+        }
+        while (!hits.isEmpty() && hits.peek().getHitNanos() + hitLingerNanos <= nowNanos) {
+            WordEntity word = hits.poll();
+            if (indexOf(word) != NONE) {
+                due = grow(due, dueCount);
+                due[dueCount++] = indexOf(word);
+            }
+        }
+        if (dueCount > 1) {
+            Arrays.sort(due, 0, dueCount);
+        }
+        for (int i = dueCount - 1; i >= 0; i--) {
+            WordEntity word = words[due[i]];
+            boolean expired = word.getState() == WordEntity.State.ACTIVE;
+            removeAt(due[i]);
+            visitor.removed(word, expired);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return number of times remove was called for a word that was already gone
+     */
+    long getDoubleRemovals() {
+        return doubleRemovals;
+    }
+
+    WordEntity get(int index) {
+        return view.get(index);
+    }
+
+    /**
+     * @return the position of the word, found through its handle, or -1
+     */
+    int indexOf(WordEntity word) {
+        int handle = word.getId();
+        if (!contains(handle)) {
+            return NONE;
+        }
+        int index = slotIndices[handle & SLOT_MASK];
+        return words[index] == word ? index : NONE;
+    }
+
+    /**
+     * @return the words as a list that cannot be modified
+     */
+    List<WordEntity> asList() {
+        return view;
+    }
+
+    private void removeAt(int index) {
+        WordEntity word = words[index];
+        int last = size - 1;
+        words[index] = words[last];
+        slotIndices[words[index].getId() & SLOT_MASK] = index;
+        words[last] = null;
+        size = last;
+
+        int slot = word.getId() & SLOT_MASK;
+        slotIndices[slot] = NONE;
+        slotGenerations[slot] = (slotGenerations[slot] + 1) & GENERATION_MASK;
+        freeSlots[freeSlotCount++] = slot;
+    }
+
+    private int allocateSlot() {
+        if (freeSlotCount > 0) {
+            return freeSlots[--freeSlotCount];
+        }
+        if (slotCount > SLOT_MASK) {
+            throw new IllegalStateException("More than " + (SLOT_MASK + 1) + " words");
+        }
+        if (slotCount == slotIndices.length) {
+            int capacity = slotCount * 2;
+            slotIndices = Arrays.copyOf(slotIndices, capacity);
+            slotGenerations = Arrays.copyOf(slotGenerations, capacity);
+            freeSlots = Arrays.copyOf(freeSlots, capacity);
+        }
+        return slotCount++;
+    }
+
+    private void pushExpiry(WordEntity word) {
+        if (expiryCount == expiries.length) {
+            expiries = Arrays.copyOf(expiries, expiryCount * 2);
+        }
+        int child = expiryCount++;
+        while (child > 0) {
+            int parent = (child - 1) / 2;
+            if (expiries[parent].getExpiryNanos() <= word.getExpiryNanos()) {
+                break;
+            }
+            expiries[child] = expiries[parent];
+            child = parent;
+        }
+        expiries[child] = word;
+    }
+
+    private WordEntity popExpiry() {
+        WordEntity top = expiries[0];
+        WordEntity last = expiries[--expiryCount];
+        expiries[expiryCount] = null;
+        if (expiryCount > 0) {
+            int parent = 0;
+            while (true) {
+                int child = 2 * parent + 1;
+                if (child >= expiryCount) {
+                    break;
+                }
+                if (child + 1 < expiryCount && expiries[child + 1].getExpiryNanos() < expiries[child].getExpiryNanos()) {
+                    child++;
+                }
+                if (last.getExpiryNanos() <= expiries[child].getExpiryNanos()) {
+                    break;
+                }
+                expiries[parent] = expiries[child];
+                parent = child;
+            }
+            expiries[parent] = last;
+        }
+        return top;
+    }
+
+    private static int[] grow(int[] array, int count) {
+        return count == array.length ? Arrays.copyOf(array, count * 2) : array;
+    }
+
+    private final class View extends AbstractList<WordEntity> implements RandomAccess {
+        @Override
+        public WordEntity get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+            }
+            return words[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public int indexOf(Object o) {
+            return o instanceof WordEntity ? ActiveWordStore.this.indexOf((WordEntity) o) : NONE;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return indexOf(o) >= 0;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package engine;
+
+import java.util.Random;
+
+/**
+ * Samples an index with probability proportional to its weight in
+ * constant time, using Vose's alias method. The weights can be changed
+ * with setWeights, which takes time linear in the number of weights and
+ * reuses the arrays of the table.
+ */
+public final class AliasTable {
+    private final double[] probability;
+    private final int[] alias;
+    // Scratch space for setWeights
+    private final double[] scaled;
+    private final int[] small;
+    private final int[] large;
+
+    public AliasTable(double[] weights) {
+        int n = weights.length;
+        probability = new double[n];
+        alias = new int[n];
+        scaled = new double[n];
+        small = new int[n];
+        large = new int[n];
+        setWeights(weights);
+    }
+
+    /**
+     * Rebuilds the table. Negative weights count as 0, if every weight
+     * is 0 all indexes become equally likely.
+     *
+     * @param weights one weight per index, as many as the table was built with
+     */
+    public void setWeights(double[] weights) {
+        int n = probability.length;
+        if (weights.length != n) {
+            throw new IllegalArgumentException("Expected " + n + " weights but got " + weights.length);
+        }
+        double total = 0;
+        for (double weight : weights) {
+            total += Math.max(0, weight);
+        }
+
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = total > 0 ? Math.max(0, weights[i]) * n / total : 1;
+            if (scaled[i] < 1) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            probability[less] = scaled[less];
+            alias[less] = more;
+            scaled[more] = scaled[more] + scaled[less] - 1;
+            if (scaled[more] < 1) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        // Whatever is left is 1 up to rounding errors
+        while (largeCount > 0) {
+            int index = large[--largeCount];
+            probability[index] = 1;
+            alias[index] = index;
+        }
+        while (smallCount > 0) {
+            int index = small[--smallCount];
+            probability[index] = 1;
+            alias[index] = index;
+        }
+    }
+
+    /**
+     * @param random source of randomness
+     * @return an index between 0 and the number of weights
+     */
+    public int sample(Random random) {
+        int column = random.nextInt(probability.length);
+        return random.nextDouble() < probability[column] ? column : alias[column];
+    }
+
+    public int size() {
+        return probability.length;
+    }
+}
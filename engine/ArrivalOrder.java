@@ -0,0 +1,73 @@
+package engine;
+
+import java.util.Arrays;
+
+/**
+ * The keys all players sent during one step of a race, handed to the
+ * room in the order they arrived in. Every message of keys gets a
+ * sequence number when the server reads it, so two players who complete
+ * the same word in the same step are decided by who sent it first, not
+ * by where their connections happen to be in the server's list.
+ * Only used by the tick thread of a RaceServer.
+ */
+final class ArrivalOrder {
+    // Low bits of an order entry hold the position of the key, the high bits how much later it arrived
+    private static final int INDEX_BITS = 24;
+    private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+
+    private char[] keys = new char[256];
+    private RaceRoom.Player[] players = new RaceRoom.Player[256];
+    private long[] sequences = new long[256];
+    private long[] order = new long[256];
+    private int count;
+
+    /**
+     * Adds a key. Keys of the same message share its sequence number and
+     * keep the order they were added in.
+     *
+     * @param player player who sent the key
+     * @param key upper case letter or RaceProtocol.BACKSPACE
+     * @param sequence sequence number of the message the key came in
+     */
+    void add(RaceRoom.Player player, char key, long sequence) {
+        if (count == INDEX_MASK) {
+            // More keys than a step can order, the rest are dropped like a full connection's
+            return;
+        }
+        if (count == keys.length) {
+            keys = Arrays.copyOf(keys, count * 2);
+            players = Arrays.copyOf(players, count * 2);
+            sequences = Arrays.copyOf(sequences, count * 2);
+            order = new long[count * 2];
+        }
+        keys[count] = key;
+        players[count] = player;
+        sequences[count] = sequence;
+        count++;
+    }
+
+    /**
+     * Hands every key added since the last call to the room, the earliest first.
+     *
+     * @param room room the keys are for
+     */
+    void applyTo(RaceRoom room) {
+        if (count == 0) {
+            return;
+        }
+        long first = Long.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            first = Math.min(first, sequences[i]);
+        }
+        for (int i = 0; i < count; i++) {
+            order[i] = (sequences[i] - first) << INDEX_BITS | i;
+        }
+        Arrays.sort(order, 0, count);
+        for (int i = 0; i < count; i++) {
+            int index = (int) (order[i] & INDEX_MASK);
+            room.key(players[index], keys[index]);
+        }
+        Arrays.fill(players, 0, count, null);
+        count = 0;
+    }
+}
@@ -0,0 +1,188 @@
+package engine;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Plays the game by itself, for load tests and demos. It picks the word
+ * that expires first among the ones it has seen for at least its reaction
+ * time and types it at a set speed, making and correcting mistakes at a
+ * set rate. The keys go to a Keys callback, which should feed them through
+ * the same path as real key presses.
+ * <p>
+ * Keys are due at times of the bot's own clock, usually the frame time.
+ * All keys that are due are pressed when play is called, so a fast bot
+ * presses several keys per frame just like a fast typist whose keys
+ * arrive between two frames.
+ */
+public final class BotPlayer {
+    /**
+     * Receives the keys the bot presses.
+     */
+    public interface Keys {
+        /**
+         * @param key upper case letter, or BACKSPACE
+         */
+        void press(char key);
+    }
+
+    public static final char BACKSPACE = '\b';
+
+    private final Random random;
+    private double wordsPerMinute;
+    private double errorRate;
+    private long reactionNanos;
+
+    // Word being typed, null if the next key has to pick one
+    private WordEntity target;
+    // Letters of the target typed so far
+    private int typedCount;
+    // Backspaces still to press before typing on
+    private int pendingBackspaces;
+    // Bot clock time of the next key, 0 before the first key
+    private long nextKeyNanos;
+    private long keyCount;
+
+    /**
+     * @param seed seed of the random mistakes and timing
+     * @param wordsPerMinute typing speed, in words of five letters
+     * @param errorRate chance of a wrong letter, between 0 and 1
+     * @param reactionNanos time a word has to be on the screen before the bot types it
+     */
+    public BotPlayer(long seed, double wordsPerMinute, double errorRate, long reactionNanos) {
+        this.random = new Random(seed);
+        setWordsPerMinute(wordsPerMinute);
+        this.errorRate = errorRate;
+        this.reactionNanos = reactionNanos;
+    }
+
+    public double getWordsPerMinute() {
+        return wordsPerMinute;
+    }
+
+    public void setWordsPerMinute(double wordsPerMinute) {
+        if (wordsPerMinute <= 0) {
+            throw new IllegalArgumentException("wordsPerMinute must be positive");
+        }
+        this.wordsPerMinute = wordsPerMinute;
+    }
+
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    public long getReactionNanos() {
+        return reactionNanos;
+    }
+
+    public void setReactionNanos(long reactionNanos) {
+        this.reactionNanos = reactionNanos;
+    }
+
+    /**
+     * @return number of keys pressed so far
+     */
+    public long getKeyCount() {
+        return keyCount;
+    }
+
+    /**
+     * Presses every key that is due by now.
+     *
+     * @param simulation game to play
+     * @param nowNanos current time of the bot's clock
+     * @param keys receives the pressed keys
+     * @return number of keys pressed
+     */
+    public int play(GameSimulation simulation, long nowNanos, Keys keys) {
+        if (nextKeyNanos == 0) {
+            nextKeyNanos = nowNanos;
+        }
+        int pressed = 0;
+        while (nextKeyNanos <= nowNanos) {
+            if (!pressNext(simulation, keys)) {
+                // Nothing to type, look again next time
+                nextKeyNanos = nowNanos + 1;
+                break;
+            }
+            pressed++;
+            keyCount++;
+            nextKeyNanos += Math.max(1, (long) (meanKeyNanos() * (0.8 + 0.4 * random.nextDouble())));
+        }
+        return pressed;
+    }
+
+    /**
+     * @return average time between two keys
+     */
+    private double meanKeyNanos() {
+        return 60.0 * GameSimulation.NANOS_PER_SECOND / (wordsPerMinute * 5);
+    }
+
+    /**
+     * @return false if there was nothing to press
+     */
+    private boolean pressNext(GameSimulation simulation, Keys keys) {
+        if (pendingBackspaces > 0) {
+            pendingBackspaces--;
+            keys.press(BACKSPACE);
+            return true;
+        }
+        if (target != null && (target.getState() != WordEntity.State.ACTIVE
+                || simulation.getTypedLength() != typedCount)) {
+            // The word expired, or typing it completed another word on the way
+            target = null;
+        }
+        if (target == null) {
+            if (simulation.getTypedLength() > 0) {
+                pendingBackspaces = simulation.getTypedLength() - 1;
+                keys.press(BACKSPACE);
+                return true;
+            }
+            target = pick(simulation);
+            typedCount = 0;
+            if (target == null) {
+                return false;
+            }
+        }
+
+        char letter = target.getWord().charAt(typedCount);
+        if (random.nextDouble() < errorRate) {
+            char wrong = (char) ('A' + random.nextInt(25));
+            // Noticed and taken back by the next key
+            pendingBackspaces = 1;
+            keys.press(wrong >= letter ? (char) (wrong + 1) : wrong);
+            return true;
+        }
+        typedCount++;
+        if (typedCount == target.getWord().length()) {
+            target = null;
+        }
+        keys.press(letter);
+        return true;
+    }
+
+    /**
+     * @return the word that expires first among the ones seen long enough
+     * and still typeable in time, or null
+     */
+    private WordEntity pick(GameSimulation simulation) {
+        List<WordEntity> words = simulation.getActiveWords();
+        long now = simulation.getNowNanos();
+        double keyNanos = meanKeyNanos();
+        WordEntity best = null;
+        for (int i = 0; i < words.size(); i++) {
+            WordEntity word = words.get(i);
+            if (word.getState() == WordEntity.State.ACTIVE && word.getSpawnNanos() <= now - reactionNanos
+                    && word.getExpiryNanos() - now >= word.getWord().length() * keyNanos
+                    && (best == null || word.getExpiryNanos() < best.getExpiryNanos())) {
+                best = word;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,129 @@
+package engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads word lists on a background thread. While a list is parsed the
+ * words read so far are handed out in growing snapshots, first after a
+ * small chunk and then every time the number of words doubles, so a game
+ * can start spawning long before a large list is done. A list with a
+ * valid cache is handed out in one go.
+ */
+public final class DictionaryLoader {
+    /**
+     * Receives the words of one load. Called on the loader thread.
+     */
+    public interface Listener {
+        /**
+         * @param words all words read so far
+         * @param complete true if this is the whole list
+         */
+        void onWords(WordDictionary words, boolean complete);
+
+        /**
+         * @param e why the list could not be read
+         */
+        default void onError(IOException e) {
+        }
+    }
+
+    // Size of the first chunk that is parsed before anything is handed out
+    private static final int FIRST_CHUNK_BYTES = 16 * 1024;
+
+    private final ExecutorService executor;
+
+    public DictionaryLoader() {
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "dictionary-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts loading a word list. Loads run one after another in the
+     * order they were started.
+     *
+     * @param source path of the word list
+     * @param listener receives the words as they become available
+     * @return the complete list once it is loaded
+     */
+    public Future<WordDictionary> load(Path source, Listener listener) {
+        return executor.submit(() -> {
+            try {
+                WordDictionary words = load(source, listener, FIRST_CHUNK_BYTES);
+                listener.onWords(words, true);
+                return words;
+            } catch (IOException e) {
+                listener.onError(e);
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Stops the loader thread, loads that have not started yet are dropped.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Reads the word list, handing partial snapshots to the listener.
+     * The complete list is returned rather than handed to the listener.
+     */
+    static WordDictionary load(Path source, Listener listener, int firstChunkBytes) throws IOException {
+        byte[] bytes = WordDictionary.readAll(source);
+        long hash = WordDictionary.hash(ByteBuffer.wrap(bytes));
+
+        Path cache = WordDictionary.cachePath(source);
+        WordDictionary cached = WordDictionary.readCache(cache, hash);
+        if (cached != null) {
+            return cached;
+        }
+
+        WordDictionary.Builder builder = new WordDictionary.Builder(Math.max(16, bytes.length / 8));
+        int start = 0;
+        int chunk = firstChunkBytes;
+        int published = 0;
+        while (start < bytes.length) {
+            int end = lineEnd(bytes, (int) Math.min(bytes.length, (long) start + chunk));
+            builder.addLines(bytes, start, end);
+            start = end;
+            if (start < bytes.length && builder.size() > 0 && builder.size() >= published * 2) {
+                published = builder.size();
+                listener.onWords(builder.build(0), false);
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new IOException("Loading " + source + " was cancelled");
+                }
+            }
+            chunk = (int) Math.min(chunk * 2L, 1 << 22);
+        }
+
+        WordDictionary words = builder.build(hash);
+        try {
+            words.writeCache(cache);
+        } catch (IOException ignore) {
+            // Read-only location, the next load simply parses again
+        }
+        return words;
+    }
+
+    /**
+     * @return the index just after the next line break at or after from,
+     * or the length of the bytes if there is none
+     */
+    private static int lineEnd(byte[] bytes, int from) {
+        for (int i = from; i < bytes.length; i++) {
+            if (bytes[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return bytes.length;
+    }
+}
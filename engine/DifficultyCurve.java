@@ -0,0 +1,56 @@
+package engine;
+
+/**
+ * Decides how hard the spawned words should be. The level starts at a
+ * given value and rises linearly to the hardest level over the ramp
+ * time. A player typing faster than the ramp expects skips ahead: the
+ * typing speed alone reaches the hardest level at maxWpm.
+ */
+public final class DifficultyCurve {
+    private final double startLevel;
+    private final long rampNanos;
+    private final double maxWpm;
+    // Width of the bell curve around the level, see WordIndex.setTargetLevel
+    private final double spread;
+
+    public DifficultyCurve(double startLevel, long rampNanos, double maxWpm, double spread) {
+        this.startLevel = startLevel;
+        this.rampNanos = rampNanos;
+        this.maxWpm = maxWpm;
+        this.spread = spread;
+    }
+
+    /**
+     * @return a curve that goes from short, easy words to the hardest ones over five minutes
+     */
+    public static DifficultyCurve standard() {
+        return new DifficultyCurve(0, 5 * 60 * GameSimulation.NANOS_PER_SECOND, 80, 0.15);
+    }
+
+    /**
+     * @param elapsedNanos time played so far
+     * @param wpm current typing speed in words per minute
+     * @return difficulty level between 0 and 1
+     */
+    public double level(long elapsedNanos, double wpm) {
+        double byTime = rampNanos <= 0 ? 1 : startLevel + (1 - startLevel) * elapsedNanos / rampNanos;
+        double bySpeed = maxWpm <= 0 ? 0 : wpm / maxWpm;
+        return Math.min(1, Math.max(0, Math.max(byTime, bySpeed)));
+    }
+
+    public double getStartLevel() {
+        return startLevel;
+    }
+
+    public long getRampNanos() {
+        return rampNanos;
+    }
+
+    public double getMaxWpm() {
+        return maxWpm;
+    }
+
+    public double getSpread() {
+        return spread;
+    }
+}
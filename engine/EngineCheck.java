@@ -0,0 +1,351 @@
+package engine;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Checks of the engine that need no window, run with --check. Each check
+ * plays a small, fixed scenario and reports what did not turn out as
+ * expected.
+ */
+public final class EngineCheck {
+    private final List<String> failures = new ArrayList<>();
+
+    private EngineCheck() {
+    }
+
+    /**
+     * Runs every check.
+     *
+     * @return a description of every failed expectation, empty if all passed
+     */
+    public static List<String> run() {
+        EngineCheck check = new EngineCheck();
+        check.doubleRemoval();
+        check.reusedSlot();
+        check.spawnBounds();
+        check.raceArrivalOrder();
+        try {
+            check.raceMirror();
+        } catch (IOException e) {
+            check.failures.add("race check could not run: " + e);
+        }
+        try {
+            check.journalReplay();
+        } catch (IOException e) {
+            check.failures.add("journal check could not run: " + e);
+        }
+        return check.failures;
+    }
+
+    /**
+     * A bot game recorded to a journal replays to the same score, steps
+     * and words. A copy of the journal taken right after a flush, as a
+     * crash would leave it, replays to the score the game had then.
+     */
+    private void journalReplay() throws IOException {
+        Path directory = Files.createTempDirectory("engine-check");
+        try {
+            Path wordsFile = directory.resolve("words.txt");
+            Files.write(wordsFile, Arrays.asList("KEY", "SHOOTER", "WORD", "TYPE", "FAST", "JOURNAL", "REPLAY",
+                    "SCORE", "LETTER", "STEP", "FLOAT", "SPAWN"));
+            Path base = directory.resolve("game.ksj");
+            Path crashBase = directory.resolve("crash.ksj");
+
+            GameSimulation simulation = new GameSimulation(WordDictionary.EMPTY, 600, 200, 1234);
+            // Sizes the estimate would not give, so the replay has to take them from the journal
+            simulation.setTextMeasure(new TextMeasure() {
+                @Override
+                public double width(String word) {
+                    return 13.5 * word.length() + 7;
+                }
+
+                @Override
+                public double height() {
+                    return 31;
+                }
+            });
+            // Small segments, so the journal continues in several files
+            KeyJournal journal = new KeyJournal(base, 4096);
+            simulation.setJournal(journal);
+            journal.source(simulation.getTickCount(), wordsFile.toString());
+            simulation.setWords(WordDictionary.load(wordsFile));
+            simulation.setSpawnIntervalNanos(GameSimulation.NANOS_PER_SECOND / 2);
+            simulation.setSpawnJitter(0.3);
+            BotPlayer bot = new BotPlayer(7, 90, 0.05, GameSimulation.NANOS_PER_SECOND / 5);
+            BotPlayer.Keys keys = key -> {
+                if (key == BotPlayer.BACKSPACE) {
+                    simulation.backspace();
+                } else {
+                    simulation.typeLetter(key);
+                }
+            };
+            int crashScore = -1;
+            for (int step = 0; step < 120 * 60; step++) {
+                simulation.tick(simulation.getStepNanos());
+                bot.play(simulation, simulation.getNowNanos(), keys);
+                if (step % 500 == 250 && !simulation.getActiveWords().isEmpty()) {
+                    simulation.hit(simulation.getActiveWords().get(0));
+                }
+                if (step == 3000) {
+                    simulation.setLifetimeNanos(6 * GameSimulation.NANOS_PER_SECOND);
+                }
+                if (step == 4000) {
+                    journal.flush();
+                    crashScore = simulation.getScore();
+                    for (int segment = 0; Files.exists(KeyJournal.segmentPath(base, segment)); segment++) {
+                        Files.copy(KeyJournal.segmentPath(base, segment), KeyJournal.segmentPath(crashBase, segment));
+                    }
+                }
+            }
+            simulation.setJournal(null);
+            journal.end(simulation.getTickCount(), simulation.getScore());
+            expect(journal.getError() == null, "journal is written without errors");
+            expect(crashScore > 0 && simulation.getScore() > crashScore, "bot scores before and after the flush");
+
+            JournalReplay replay = new JournalReplay(base);
+            GameSimulation replayed = replay.runToEnd();
+            expect(replay.getRecordedScore() == simulation.getScore(), "journal ends with the final score");
+            expect(replayed.getScore() == simulation.getScore(), "replay reaches the same score");
+            expect(replayed.getTickCount() == simulation.getTickCount(), "replay runs the same number of steps");
+            expect(sameWords(simulation, replayed), "replay ends with the same words in the same places");
+
+            JournalReplay crash = new JournalReplay(crashBase);
+            expect(crash.runToEnd().getScore() == crashScore, "flushed journal replays to the score of the flush");
+            expect(crash.getRecordedScore() == -1, "flushed journal has no end record");
+        } finally {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+
+    private static boolean sameWords(GameSimulation first, GameSimulation second) {
+        List<WordEntity> a = first.getActiveWords();
+        List<WordEntity> b = second.getActiveWords();
+        long now = first.getNowNanos();
+        if (a.size() != b.size() || now != second.getNowNanos()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (!a.get(i).getWord().equals(b.get(i).getWord()) || a.get(i).x(now) != b.get(i).x(now)
+                    || a.get(i).y(now) != b.get(i).y(now) || a.get(i).getState() != b.get(i).getState()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A word removed by hand is not removed again, neither by a second
+     * remove nor when its expiry time comes.
+     */
+    private void doubleRemoval() {
+        ActiveWordStore store = new ActiveWordStore();
+        WordEntity first = word("ONE", 10);
+        WordEntity second = word("TWO", 10);
+        store.add(first);
+        store.add(second);
+        expect(store.remove(first), "first removal removes the word");
+        expect(!store.remove(first), "second removal does nothing");
+        expect(store.getDoubleRemovals() == 1, "second removal is counted");
+
+        List<WordEntity> removed = new ArrayList<>();
+        store.removeDue(15, 0, (word, expired) -> removed.add(word));
+        expect(removed.size() == 1 && removed.get(0) == second, "only the remaining word expires");
+        expect(store.size() == 0, "store is empty after the expiry");
+    }
+
+    /**
+     * A slot freed by a removal and taken by a new word is not reached by
+     * the handle or the expiry of the word that had it before, not even
+     * once the generation of the slot wrapped around to the old handle.
+     */
+    private void reusedSlot() {
+        ActiveWordStore store = new ActiveWordStore();
+        WordEntity old = word("OLD", 10);
+        int oldHandle = store.add(old);
+        store.remove(old);
+        WordEntity young = word("NEW", 100);
+        int youngHandle = store.add(young);
+        expect((youngHandle & 0xFFFFF) == (oldHandle & 0xFFFFF), "new word reuses the freed slot");
+        expect(!store.remove(old), "removed word does not remove the new word");
+        expect(store.indexOf(young) == 0, "new word is still in the store");
+
+        ActiveWordStore wrapped = new ActiveWordStore();
+        WordEntity gone = word("OLD", 10);
+        int goneHandle = wrapped.add(gone);
+        wrapped.remove(gone);
+        WordEntity latest = word("NEW", 100);
+        while (wrapped.add(latest) != goneHandle) {
+            wrapped.remove(latest);
+            latest = word("NEW", 100);
+        }
+        expect(!wrapped.remove(gone), "handle that wrapped around does not remove another word");
+        expect(wrapped.size() == 1, "word with the wrapped handle is still in the store");
+
+        WordMatcher<WordEntity> matcher = new WordMatcher<>();
+        int goneMatch = matcher.add(gone.getWord(), gone);
+        matcher.remove(goneMatch);
+        int latestMatch = matcher.add(latest.getWord(), latest);
+        while (latestMatch != goneMatch) {
+            matcher.remove(latestMatch);
+            latestMatch = matcher.add(latest.getWord(), latest);
+        }
+        expect(!matcher.remove(goneMatch, gone), "match handle that wrapped around does not remove another word");
+        expect(matcher.size() == 1, "word with the wrapped match handle is still in the matcher");
+
+        List<WordEntity> removed = new ArrayList<>();
+        store.removeDue(15, 0, (word, expired) -> removed.add(word));
+        expect(removed.isEmpty() && store.size() == 1, "expiry of the old word leaves the new one");
+        store.removeDue(100, 0, (word, expired) -> removed.add(word));
+        expect(removed.size() == 1 && removed.get(0) == young, "new word expires at its own time");
+    }
+
+    /**
+     * Intervals below the shortest one are refused, by the simulation and
+     * by a profile, and a long step spawns no more than the most words
+     * per step.
+     */
+    private void spawnBounds() {
+        GameSimulation simulation = new GameSimulation(WordDictionary.of(Arrays.asList("KEY", "SHOOTER")), 600, 200, 1);
+        try {
+            simulation.setSpawnIntervalNanos(1);
+            failures.add("an interval of 1 ns is refused");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        try {
+            GameSettings.load(null, properties("spawn.interval", "1e-9"));
+            failures.add("a profile with an interval of 1 ns is refused");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        simulation.setSpawnIntervalNanos(SpawnScheduler.MIN_INTERVAL_NANOS);
+        simulation.setSpawnJitter(0.9);
+        simulation.tick(GameSimulation.NANOS_PER_SECOND);
+        int first = simulation.getActiveWords().size();
+        expect(first == SpawnScheduler.MAX_SPAWNS_PER_STEP, "a long step spawns the most words per step");
+        simulation.tick(simulation.getStepNanos());
+        expect(simulation.getActiveWords().size() - first <= SpawnScheduler.MAX_SPAWNS_PER_STEP,
+                "the words left over spawn in later steps");
+    }
+
+    /**
+     * Two players who complete the same word in the same step: the one
+     * whose keys arrived first scores it, whichever of them joined first.
+     */
+    private void raceArrivalOrder() {
+        GameSimulation simulation = new GameSimulation(WordDictionary.of(Arrays.asList("KEY")), 600, 200, 1);
+        simulation.setSpawnIntervalNanos(GameSimulation.NANOS_PER_SECOND);
+        RaceRoom room = new RaceRoom(simulation);
+        RaceRoom.Player first = room.join("first");
+        RaceRoom.Player second = room.join("second");
+        ArrivalOrder keys = new ArrivalOrder();
+
+        room.step(0);
+        addWord(keys, first, 2);
+        addWord(keys, second, 1);
+        keys.applyTo(room);
+        expect(second.getScore() == 1 && first.getScore() == 0, "the player who joined later scores the word "
+                + "they sent first");
+
+        // The letters of the word that was gone stay typed until the player takes them back
+        for (int i = 0; i < 3; i++) {
+            room.key(first, RaceProtocol.BACKSPACE);
+        }
+        room.step(0);
+        while (simulation.find("KEY") == null) {
+            room.step(0);
+        }
+        addWord(keys, second, 4);
+        addWord(keys, first, 3);
+        keys.applyTo(room);
+        expect(first.getScore() == 1 && second.getScore() == 1, "the player who joined first scores the word "
+                + "they sent first");
+    }
+
+    /**
+     * A player who joins a race server sees its words, scores a word by
+     * typing it and sees it hit.
+     */
+    private void raceMirror() throws IOException {
+        GameSimulation simulation = new GameSimulation(WordDictionary.of(Arrays.asList("KEY")), 600, 200, 1);
+        simulation.setSpawnIntervalNanos(GameSimulation.NANOS_PER_SECOND / 10);
+        try (RaceServer server = new RaceServer(new RaceRoom(simulation), 0)) {
+            server.start();
+            RaceMirror race = RaceMirror.join(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                    server.getPort()), "player");
+            try {
+                GameSimulation mirrored = race.getSimulation();
+                expect(mirrored.getWidth() == 600 && mirrored.getHeight() == 200, "race has the server's field");
+                WordEntity word = awaitRace(race, () -> mirrored.find("KEY"));
+                expect(word != null, "server's word shows up");
+                if (word == null) {
+                    return;
+                }
+                for (char key : "KEY".toCharArray()) {
+                    race.key(key);
+                    mirrored.typeLetter(key);
+                }
+                expect(word.getState() == WordEntity.State.ACTIVE, "typed word waits for the server");
+                expect(awaitRace(race, () -> race.getScore() == 1 ? word : null) != null, "typed word scores");
+                expect(word.getState() != WordEntity.State.ACTIVE, "scored word is hit");
+            } finally {
+                race.close();
+            }
+        }
+    }
+
+    /**
+     * Applies what the server reports until the condition gives a word, for up to two seconds.
+     */
+    private static WordEntity awaitRace(RaceMirror race, Supplier<WordEntity> condition) {
+        long end = System.nanoTime() + 2 * GameSimulation.NANOS_PER_SECOND;
+        while (System.nanoTime() < end) {
+            race.apply();
+            WordEntity word = condition.get();
+            if (word != null) {
+                return word;
+            }
+            LockSupport.parkNanos(GameSimulation.DEFAULT_STEP_NANOS);
+        }
+        return null;
+    }
+
+    private static void addWord(ArrivalOrder keys, RaceRoom.Player player, long sequence) {
+        for (char key : "KEY".toCharArray()) {
+            keys.add(player, key, sequence);
+        }
+    }
+
+    private static Properties properties(String key, String value) {
+        Properties properties = new Properties();
+        properties.setProperty(key, value);
+        return properties;
+    }
+
+    private static WordEntity word(String word, long lifetimeNanos) {
+        return new WordEntity(word, 0, 0, 0, 0, 0, lifetimeNanos, 30, 30);
+    }
+
+    private void expect(boolean condition, String expectation) {
+        if (!condition) {
+            failures.add(expectation);
+        }
+    }
+}
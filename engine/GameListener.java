@@ -0,0 +1,34 @@
+package engine;
+
+/**
+ * Receives the changes made by a GameSimulation so they can be rendered.
+ * All methods are called on the thread that drives the simulation.
+ */
+public interface GameListener {
+    GameListener NONE = new GameListener() {
+    };
+
+    /**
+     * A new word was placed on the field.
+     * @param word the spawned word
+     */
+    default void onSpawn(WordEntity word) {
+    }
+
+    /**
+     * A word was typed correctly and now lingers before it is removed.
+     * @param word the word that was typed
+     * @param score score after the hit
+     */
+    default void onHit(WordEntity word, int score) {
+    }
+
+    /**
+     * A word left the simulation, either because it expired or because
+     * its hit linger time ran out.
+     * @param word the removed word
+     * @param expired true if the word was never typed
+     */
+    default void onRemove(WordEntity word, boolean expired) {
+    }
+}
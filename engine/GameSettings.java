@@ -0,0 +1,409 @@
+package engine;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.function.Consumer;
+
+/**
+ * Everything about a game that can be tuned without recompiling, read
+ * from a profile. A profile is either the name of a built-in preset or a
+ * properties file such as
+ * <pre>
+ * preset=stress
+ * dictionary=./docs/words.txt
+ * spawn.interval=0.5
+ * </pre>
+ * A file may start from a preset and change single keys, every key it
+ * leaves out keeps its default. Times are in seconds. A value that cannot
+ * be read fails the whole profile, so a half edited file never takes
+ * effect.
+ */
+public final class GameSettings {
+    // Names of the built-in presets, see presetProperties
+    public static final List<String> PRESETS = Arrays.asList("stress", "training", "benchmark");
+
+    public static final GameSettings DEFAULT = new GameSettings(new Properties());
+
+    // Time waited after a change of the file, so an editor can finish writing it
+    private static final long SETTLE_MILLIS = 100;
+
+    private final String dictionary;
+    // Size of the field the words float in
+    private final double fieldWidth;
+    private final double fieldHeight;
+    // Space between the keys of the on-screen keyboard
+    private final double keySpacing;
+    // "nodes" for one node per word, "canvas" for all words on one canvas
+    private final String renderer;
+    // Most idle WordBoxes kept for reuse
+    private final int poolCapacity;
+    private final long spawnIntervalNanos;
+    private final double spawnJitter;
+    // Adaptive spawning, null target for a fixed interval
+    private final SpawnScheduler.Target spawnTarget;
+    private final double spawnTargetValue;
+    private final long lifetimeNanos;
+    private final long hitLingerNanos;
+    // Difficulty curve, no curve if rampNanos is negative
+    private final long difficultyRampNanos;
+    private final double difficultyMaxWpm;
+    // Show the performance overlay from the start, write the metrics when the game stops
+    private final boolean metricsOverlay;
+    private final boolean metricsExport;
+
+    private GameSettings(Properties properties) {
+        dictionary = properties.getProperty("dictionary", "./docs/words.txt");
+        fieldWidth = positive(properties, "field.width", 600);
+        fieldHeight = positive(properties, "field.height", 200);
+        keySpacing = number(properties, "keyboard.spacing", 7, 0, 50);
+        renderer = properties.getProperty("renderer", "nodes").trim().toLowerCase(Locale.ROOT);
+        if (!renderer.equals("nodes") && !renderer.equals("canvas")) {
+            throw invalid("renderer", renderer);
+        }
+        poolCapacity = (int) number(properties, "pool.capacity", 256, 0, 1 << 16);
+        spawnIntervalNanos = nanos(number(properties, "spawn.interval", 3,
+                (double) SpawnScheduler.MIN_INTERVAL_NANOS / GameSimulation.NANOS_PER_SECOND, Long.MAX_VALUE / 1e9));
+        spawnJitter = number(properties, "spawn.jitter", 0, 0, 1);
+        if (spawnJitter == 1) {
+            throw invalid("spawn.jitter", properties.getProperty("spawn.jitter"));
+        }
+        String adaptive = properties.getProperty("spawn.adaptive", "off").trim();
+        if (adaptive.equalsIgnoreCase("off")) {
+            spawnTarget = null;
+            spawnTargetValue = 0;
+        } else {
+            String[] parts = adaptive.split(":");
+            if (parts.length != 2) {
+                throw invalid("spawn.adaptive", adaptive);
+            }
+            if (parts[0].equalsIgnoreCase("words")) {
+                spawnTarget = SpawnScheduler.Target.ACTIVE_WORDS;
+            } else if (parts[0].equalsIgnoreCase("hits")) {
+                spawnTarget = SpawnScheduler.Target.HIT_RATE;
+            } else {
+                throw invalid("spawn.adaptive", adaptive);
+            }
+            spawnTargetValue = parse("spawn.adaptive", parts[1]);
+            if (spawnTargetValue < 0 || spawnTarget == SpawnScheduler.Target.HIT_RATE && spawnTargetValue > 1) {
+                throw invalid("spawn.adaptive", adaptive);
+            }
+        }
+        lifetimeNanos = nanos(positive(properties, "lifetime", 10));
+        hitLingerNanos = nanos(number(properties, "hit.linger", 1, 0, 60));
+        String difficulty = properties.getProperty("difficulty", "flat").trim();
+        if (difficulty.equalsIgnoreCase("flat")) {
+            difficultyRampNanos = -1;
+        } else if (difficulty.equalsIgnoreCase("curve")) {
+            difficultyRampNanos = nanos(number(properties, "difficulty.ramp", 300, 0, Long.MAX_VALUE / 1e9));
+        } else {
+            throw invalid("difficulty", difficulty);
+        }
+        difficultyMaxWpm = number(properties, "difficulty.max-wpm", 80, 0, 1000);
+        metricsOverlay = bool(properties, "metrics.overlay", false);
+        metricsExport = bool(properties, "metrics.export", false);
+    }
+
+    /**
+     * Reads a profile.
+     *
+     * @param profile name of a preset, or path of a properties file, null for the defaults
+     * @param overrides keys that win over the profile, such as the ones given on the command line
+     * @return the settings
+     * @throws IOException if the file cannot be read or holds a value that is not valid
+     */
+    public static GameSettings load(String profile, Properties overrides) throws IOException {
+        Properties properties = new Properties();
+        if (profile != null) {
+            if (PRESETS.contains(profile.toLowerCase(Locale.ROOT))) {
+                properties.putAll(presetProperties(profile.toLowerCase(Locale.ROOT)));
+            } else {
+                Properties file = new Properties();
+                try (BufferedReader reader = Files.newBufferedReader(Paths.get(profile))) {
+                    file.load(reader);
+                }
+                String preset = file.getProperty("preset");
+                if (preset != null) {
+                    if (!PRESETS.contains(preset.trim().toLowerCase(Locale.ROOT))) {
+                        throw new IOException("Unknown preset " + preset + " in " + profile + ", use one of " + PRESETS);
+                    }
+                    properties.putAll(presetProperties(preset.trim().toLowerCase(Locale.ROOT)));
+                }
+                properties.putAll(file);
+            }
+        }
+        properties.putAll(overrides);
+        try {
+            return new GameSettings(properties);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param profile name of a preset
+     * @return the keys of the preset, which are the defaults for every key it leaves out
+     */
+    private static Properties presetProperties(String profile) throws IOException {
+        String keys;
+        switch (profile) {
+            case "stress":
+                // Words as fast as the renderer takes them, with the metrics in sight
+                keys = "spawn.interval=0.1\nlifetime=10\nrenderer=canvas\npool.capacity=1024\nmetrics.overlay=true\n";
+                break;
+            case "training":
+                // Slow, easy words that get harder, spawned so most of them can be hit
+                keys = "spawn.interval=4\nlifetime=15\ndifficulty=curve\nspawn.adaptive=hits:0.8\n";
+                break;
+            default:
+                // The same steady load every run, so runs can be compared
+                keys = "spawn.interval=0.25\nspawn.jitter=0\nlifetime=8\nrenderer=canvas\n"
+                        + "metrics.overlay=true\nmetrics.export=true\n";
+                break;
+        }
+        Properties properties = new Properties();
+        properties.load(new StringReader(keys));
+        return properties;
+    }
+
+    /**
+     * Watches a profile file and reads it again whenever it changes, on a
+     * daemon thread of its own. Changes that leave the settings as they
+     * were are not reported.
+     *
+     * @param profile path of the profile, presets cannot change
+     * @param overrides keys that win over the profile
+     * @param current settings read from the profile so far
+     * @param onChange receives the new settings, on the watching thread
+     * @param onError receives the reason a changed file could not be read, on the watching thread
+     * @return stops watching when closed
+     * @throws IOException if the file cannot be watched
+     */
+    public static Closeable watch(String profile, Properties overrides, GameSettings current,
+                                  Consumer<GameSettings> onChange, Consumer<IOException> onError) throws IOException {
+        Path file = Paths.get(profile).toAbsolutePath();
+        WatchService watcher = FileSystems.getDefault().newWatchService();
+        file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        Thread thread = new Thread(() -> {
+            GameSettings last = current;
+            try {
+                while (true) {
+                    WatchKey key = watcher.take();
+                    boolean changed = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        changed |= file.getFileName().equals(event.context());
+                    }
+                    key.reset();
+                    if (!changed) {
+                        continue;
+                    }
+                    // Editors often write a file in several steps
+                    Thread.sleep(SETTLE_MILLIS);
+                    WatchKey more = watcher.poll();
+                    if (more != null) {
+                        more.pollEvents();
+                        more.reset();
+                    }
+                    try {
+                        GameSettings next = load(profile, overrides);
+                        if (!next.equals(last)) {
+                            last = next;
+                            onChange.accept(next);
+                        }
+                    } catch (IOException e) {
+                        onError.accept(e);
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // Closed
+            }
+        }, "settings-watch");
+        thread.setDaemon(true);
+        thread.start();
+        return watcher;
+    }
+
+    public String getDictionary() {
+        return dictionary;
+    }
+
+    public double getFieldWidth() {
+        return fieldWidth;
+    }
+
+    public double getFieldHeight() {
+        return fieldHeight;
+    }
+
+    public double getKeySpacing() {
+        return keySpacing;
+    }
+
+    /**
+     * @return true if the words are drawn onto one canvas, false for one node per word
+     */
+    public boolean isCanvasRenderer() {
+        return renderer.equals("canvas");
+    }
+
+    public int getPoolCapacity() {
+        return poolCapacity;
+    }
+
+    public long getSpawnIntervalNanos() {
+        return spawnIntervalNanos;
+    }
+
+    public double getSpawnJitter() {
+        return spawnJitter;
+    }
+
+    /**
+     * @return what adaptive spawning keeps at getSpawnTargetValue, null for a fixed interval
+     */
+    public SpawnScheduler.Target getSpawnTarget() {
+        return spawnTarget;
+    }
+
+    public double getSpawnTargetValue() {
+        return spawnTargetValue;
+    }
+
+    public long getLifetimeNanos() {
+        return lifetimeNanos;
+    }
+
+    public long getHitLingerNanos() {
+        return hitLingerNanos;
+    }
+
+    /**
+     * @return a new difficulty curve, or null if every word has the same chance
+     */
+    public DifficultyCurve getDifficulty() {
+        if (difficultyRampNanos < 0) {
+            return null;
+        }
+        DifficultyCurve standard = DifficultyCurve.standard();
+        return new DifficultyCurve(standard.getStartLevel(), difficultyRampNanos, difficultyMaxWpm,
+                standard.getSpread());
+    }
+
+    /**
+     * @param other settings to compare with
+     * @return true if both have no difficulty curve or the same one
+     */
+    public boolean hasSameDifficulty(GameSettings other) {
+        return difficultyRampNanos == other.difficultyRampNanos && difficultyMaxWpm == other.difficultyMaxWpm;
+    }
+
+    public boolean isMetricsOverlay() {
+        return metricsOverlay;
+    }
+
+    public boolean isMetricsExport() {
+        return metricsExport;
+    }
+
+    /**
+     * @param other settings to compare with
+     * @return true if the two differ in something that only takes effect when the game starts:
+     * the field size, the keyboard, the renderer or the pool
+     */
+    public boolean needsRestart(GameSettings other) {
+        return fieldWidth != other.fieldWidth || fieldHeight != other.fieldHeight
+                || keySpacing != other.keySpacing || !renderer.equals(other.renderer)
+                || poolCapacity != other.poolCapacity;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof GameSettings)) {
+            return false;
+        }
+        GameSettings other = (GameSettings) o;
+        return !needsRestart(other) && dictionary.equals(other.dictionary)
+                && spawnIntervalNanos == other.spawnIntervalNanos && spawnJitter == other.spawnJitter
+                && spawnTarget == other.spawnTarget && spawnTargetValue == other.spawnTargetValue
+                && lifetimeNanos == other.lifetimeNanos && hitLingerNanos == other.hitLingerNanos
+                && hasSameDifficulty(other)
+                && metricsOverlay == other.metricsOverlay && metricsExport == other.metricsExport;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(dictionary, fieldWidth, fieldHeight, renderer, spawnIntervalNanos, lifetimeNanos);
+    }
+
+    private static long nanos(double seconds) {
+        return Math.max(1, Math.round(seconds * GameSimulation.NANOS_PER_SECOND));
+    }
+
+    private static double positive(Properties properties, String key, double defaultValue) {
+        double value = number(properties, key, defaultValue, 0, Double.MAX_VALUE);
+        if (!(value > 0)) {
+            throw invalid(key, properties.getProperty(key));
+        }
+        return value;
+    }
+
+    private static double number(Properties properties, String key, double defaultValue, double min, double max) {
+        String text = properties.getProperty(key);
+        if (text == null) {
+            return defaultValue;
+        }
+        double value = parse(key, text);
+        if (!(value >= min && value <= max)) {
+            throw invalid(key, text);
+        }
+        return value;
+    }
+
+    private static double parse(String key, String text) {
+        try {
+            double value = Double.parseDouble(text.trim());
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                throw invalid(key, text);
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw invalid(key, text);
+        }
+    }
+
+    private static boolean bool(Properties properties, String key, boolean defaultValue) {
+        String text = properties.getProperty(key);
+        if (text == null) {
+            return defaultValue;
+        }
+        if (text.trim().equalsIgnoreCase("true") || text.trim().equalsIgnoreCase("on")) {
+            return true;
+        }
+        if (text.trim().equalsIgnoreCase("false") || text.trim().equalsIgnoreCase("off")) {
+            return false;
+        }
+        throw invalid(key, text);
+    }
+
+    private static IllegalArgumentException invalid(String key, String value) {
+        return new IllegalArgumentException("Not a valid " + key + ": " + value);
+    }
+}
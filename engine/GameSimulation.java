@@ -0,0 +1,682 @@
+package engine;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * The game rules without any JavaFX. Holds the floating words, spawns new
+ * ones, expires old ones, keeps the score and handles typed letters.
+ * Time only moves when tick or advance is called, always in fixed steps,
+ * so the same seed and the same input give the same game no matter how
+ * fast it is driven.
+ */
+public final class GameSimulation {
+    public static final long NANOS_PER_SECOND = 1_000_000_000L;
+    // Default step of 1/60th of a second
+    public static final long DEFAULT_STEP_NANOS = NANOS_PER_SECOND / 60;
+    // Size of the cells of the spatial grid, in pixels
+    private static final double CELL_SIZE = 32;
+    // Number of spots tried when looking for free space to spawn a word
+    private static final int SPAWN_ATTEMPTS = 8;
+    // Most a word is pushed away from an overlapping word in one step, in pixels
+    private static final double MAX_PUSH = 1.5;
+
+    // Size of the field the words float in
+    private final double width;
+    private final double height;
+    // Length of one fixed step
+    private final long stepNanos;
+    // Seed of random, kept so a game can be reproduced
+    private final long seed;
+    private final Random random;
+    // All available words, grouped by length and difficulty
+    private WordIndex words;
+    // Decides how hard new words are, null picks every word with the same chance
+    private DifficultyCurve difficulty;
+    // All words currently in the simulation, including ones that were just hit
+    private final ActiveWordStore activeWords;
+    // Prefix index over the words that can still be typed
+    private final WordMatcher<WordEntity> matcher;
+    private GameListener listener = GameListener.NONE;
+    // Records input and setting changes so the game can be replayed, may be null
+    private KeyJournal journal;
+    // How much room a word takes on the screen
+    private TextMeasure textMeasure = TextMeasure.ESTIMATE;
+    // Where the floating words were at the end of the last step
+    private final SpatialGrid grid;
+    // Word of each box in the grid
+    private WordEntity[] gridWords = new WordEntity[16];
+    // Pushes overlapping words apart, see separate
+    private final SpatialGrid.PairVisitor separator = this::separate;
+    // Lets go of a word that was taken out of activeWords, see removed
+    private final ActiveWordStore.RemovalVisitor remover = this::removed;
+
+    // Simulation time and the number of steps taken so far
+    private long nowNanos;
+    private long tickCount;
+    // Real time handed to advance that has not been simulated yet
+    private long pendingNanos;
+
+    private boolean spawning = true;
+    // False when somebody else decides which typed words are hit, see setTypedHits
+    private boolean typedHits = true;
+    // True while tick spawns words
+    private boolean stepping;
+    // Decides when the next word spawns
+    private final SpawnScheduler spawner = new SpawnScheduler(3 * NANOS_PER_SECOND);
+    private long lifetimeNanos = 10 * NANOS_PER_SECOND;
+    // How long a correct word stays on the screen before it is removed
+    private long hitLingerNanos = NANOS_PER_SECOND;
+    // Keeps track of the number of correct words
+    private int score;
+
+    public GameSimulation(WordDictionary words, double width, double height, long seed) {
+        this(words, width, height, seed, DEFAULT_STEP_NANOS);
+    }
+
+    public GameSimulation(WordDictionary words, double width, double height, long seed, long stepNanos) {
+        if (stepNanos <= 0) {
+            throw new IllegalArgumentException("stepNanos must be positive");
+        }
+        this.words = WordIndex.build(words);
+        this.width = width;
+        this.height = height;
+        this.seed = seed;
+        this.stepNanos = stepNanos;
+        this.random = new Random(seed);
+        this.activeWords = new ActiveWordStore();
+        this.matcher = new WordMatcher<>();
+        this.grid = new SpatialGrid(width, height, CELL_SIZE);
+    }
+
+    /**
+     * @param textMeasure tells how much room a word takes on the screen
+     */
+    public void setTextMeasure(TextMeasure textMeasure) {
+        this.textMeasure = textMeasure;
+    }
+
+    /**
+     * Starts recording into a journal: the seed and current settings right
+     * away, then every typed letter and every change of the settings or
+     * the words, each with the step it happened at.
+     *
+     * @param journal journal to record into, null to stop recording
+     * @throws IllegalStateException if the simulation has already run a step
+     */
+    public void setJournal(KeyJournal journal) {
+        if (journal != null && tickCount != 0) {
+            throw new IllegalStateException("A journal has to be attached before the first step");
+        }
+        this.journal = journal;
+        if (journal != null) {
+            journal.session(tickCount, seed, width, height, stepNanos);
+            journal.spawning(tickCount, spawning);
+            journal.spawnInterval(tickCount, spawner.getIntervalNanos());
+            journal.spawnJitter(tickCount, spawner.getJitter());
+            journal.spawnTarget(tickCount, spawner.getTarget(), spawner.getTargetValue());
+            journal.lifetime(tickCount, lifetimeNanos);
+            journal.hitLinger(tickCount, hitLingerNanos);
+            journal.difficulty(tickCount, difficulty);
+            if (!words.getWords().isEmpty()) {
+                journal.words(tickCount, words.getWords());
+            }
+        }
+    }
+
+    public KeyJournal getJournal() {
+        return journal;
+    }
+
+    public void setListener(GameListener listener) {
+        this.listener = listener == null ? GameListener.NONE : listener;
+    }
+
+    /**
+     * Adds real elapsed time and runs as many fixed steps as fit into it.
+     * Whatever is left over is carried into the next call.
+     *
+     * @param elapsedNanos time since the last call
+     * @return number of steps that were run
+     */
+    public int advance(long elapsedNanos) {
+        pendingNanos += Math.max(0, elapsedNanos);
+        int steps = 0;
+        while (pendingNanos >= stepNanos) {
+            pendingNanos -= stepNanos;
+            tick(stepNanos);
+            steps++;
+        }
+        return steps;
+    }
+
+    /**
+     * Runs the simulation for the given amount of time as fast as possible.
+     *
+     * @param durationNanos simulated time to run
+     */
+    public void run(long durationNanos) {
+        long end = nowNanos + durationNanos;
+        while (nowNanos + stepNanos <= end) {
+            tick(stepNanos);
+        }
+    }
+
+    /**
+     * Moves the simulation forward by one step. Spawns every word that is
+     * due, up to SpawnScheduler.MAX_SPAWNS_PER_STEP, then removes every
+     * word whose time is up, then pushes apart floating words that overlap.
+     *
+     * @param dtNanos length of the step
+     */
+    public void tick(long dtNanos) {
+        nowNanos += dtNanos;
+        tickCount++;
+
+        stepping = true;
+        for (int spawned = 0; spawning && spawned < SpawnScheduler.MAX_SPAWNS_PER_STEP && spawner.isDue(nowNanos);
+                spawned++) {
+            if (spawnWord() == null) {
+                // No words yet, spawn as soon as there are some
+                spawner.delay(nowNanos);
+                break;
+            }
+            spawner.spawned(random, matcher.size());
+        }
+        stepping = false;
+
+        activeWords.removeDue(nowNanos, hitLingerNanos, remover);
+
+        rebuildGrid();
+        grid.forEachOverlappingPair(separator);
+    }
+
+    /**
+     * Puts every floating word into the grid at its current position.
+     */
+    private void rebuildGrid() {
+        grid.clear();
+        for (int i = 0; i < activeWords.size(); i++) {
+            WordEntity word = activeWords.get(i);
+            if (word.getState() == WordEntity.State.ACTIVE) {
+                addToGrid(word);
+            }
+        }
+    }
+
+    private void addToGrid(WordEntity word) {
+        int box = grid.insert(word.x(nowNanos), word.y(nowNanos), word.getWidth(), word.getHeight());
+        if (box == gridWords.length) {
+            gridWords = Arrays.copyOf(gridWords, box * 2);
+        }
+        gridWords[box] = word;
+    }
+
+    /**
+     * Pushes two overlapping words apart along the direction in which they
+     * overlap the least, each by half of the overlap but at most MAX_PUSH
+     * per step, so crowded words drift apart instead of jumping. Words are
+     * kept inside the field.
+     */
+    private void separate(int a, int b) {
+        WordEntity first = gridWords[a];
+        WordEntity second = gridWords[b];
+        double firstX = first.x(nowNanos);
+        double firstY = first.y(nowNanos);
+        double secondX = second.x(nowNanos);
+        double secondY = second.y(nowNanos);
+        double overlapX = Math.min(firstX + first.getWidth(), secondX + second.getWidth()) - Math.max(firstX, secondX);
+        double overlapY = Math.min(firstY + first.getHeight(), secondY + second.getHeight()) - Math.max(firstY, secondY);
+        if (overlapY <= overlapX) {
+            double push = Math.min(overlapY / 2, MAX_PUSH);
+            double direction = firstY + first.getHeight() / 2 <= secondY + second.getHeight() / 2 ? -1 : 1;
+            first.push(0, clamp(direction * push, firstY, first.getHeight(), height));
+            second.push(0, clamp(-direction * push, secondY, second.getHeight(), height));
+        } else {
+            double push = Math.min(overlapX / 2, MAX_PUSH);
+            double direction = firstX + first.getWidth() / 2 <= secondX + second.getWidth() / 2 ? -1 : 1;
+            first.push(clamp(direction * push, firstX, first.getWidth(), width), 0);
+            second.push(clamp(-direction * push, secondX, second.getWidth(), width), 0);
+        }
+    }
+
+    /**
+     * @return the part of the push that keeps the word between 0 and limit
+     */
+    private static double clamp(double push, double position, double size, double limit) {
+        double moved = Math.max(0, Math.min(position + push, limit - size));
+        return moved - position;
+    }
+
+    /**
+     * Creates a random floating word.
+     * Chooses a random word from the list of words, following the
+     * difficulty curve if there is one, and a free starting point
+     * near the left or right edge of the field, found through the
+     * spatial grid. The word then moves towards the middle of the field
+     * over its lifetime.
+     *
+     * @return the new word, or null if there are no words to choose from
+     */
+    public WordEntity spawn() {
+        WordEntity word = spawnWord();
+        if (journal != null) {
+            // After the size of the word, which the replayed spawn needs first
+            journal.spawn(tickCount);
+        }
+        return word;
+    }
+
+    private WordEntity spawnWord() {
+        if (difficulty != null) {
+            words.setTargetLevel(difficulty.level(nowNanos, getWordsPerMinute()), difficulty.getSpread());
+        }
+        int index = words.sample(random);
+        if (index < 0) {
+            return null;
+        }
+        String word = words.getWords().word(index);
+        double wordWidth = textMeasure.width(words.getWords(), index);
+        double wordHeight = textMeasure.height();
+        if (journal != null) {
+            // Replays cannot measure text, so they get the sizes from the journal. Records
+            // of a step are replayed after it, so a spawn in a step goes with the step before.
+            journal.measure(stepping ? tickCount - 1 : tickCount, wordWidth, wordHeight);
+        }
+
+        // Try a few spots near the left and right edges and take the first
+        // free one, or the least crowded one if none is free
+        double startX = 0;
+        double startY = 0;
+        int leastCrowded = Integer.MAX_VALUE;
+        for (int attempt = 0; attempt < SPAWN_ATTEMPTS && leastCrowded > 0; attempt++) {
+            double margin = 15 + random.nextInt(31);
+            double x = random.nextBoolean() ? margin : width - wordWidth - margin;
+            x = Math.max(0, x);
+            double y = random.nextDouble() * Math.max(0, height - wordHeight);
+            int crowding = grid.crowding(x, y, wordWidth, wordHeight);
+            if (crowding < leastCrowded) {
+                leastCrowded = crowding;
+                startX = x;
+                startY = y;
+            }
+        }
+
+        double xMid = width / 2;
+        double yMid = height / 2;
+        double endX = xMid + (startX > xMid ? -0.25 * startX : 0.25 * startX);
+        double endY = yMid + (startY > yMid ? -0.25 * startY : 0.25 * startY);
+
+        WordEntity entity = new WordEntity(word, startX, startY, endX, endY, nowNanos, lifetimeNanos,
+                wordWidth, wordHeight);
+        add(entity);
+        return entity;
+    }
+
+    /**
+     * Puts a word on the field that was spawned somewhere else, such as
+     * by a race server, instead of by this simulation. Placed words are
+     * not journaled, so a simulation fed this way cannot record a journal.
+     *
+     * @param word upper case word
+     * @param spawnNanos simulation time the word spawned at, may be in the past
+     * @param lifetimeNanos time from the spawn until the word expires
+     * @return the new word
+     * @throws IllegalStateException if the simulation records a journal
+     */
+    public WordEntity place(String word, double startX, double startY, double endX, double endY,
+                            long spawnNanos, long lifetimeNanos) {
+        if (journal != null) {
+            throw new IllegalStateException("Placed words cannot be journaled");
+        }
+        WordEntity entity = new WordEntity(word, startX, startY, endX, endY, spawnNanos, lifetimeNanos,
+                textMeasure.width(word), textMeasure.height());
+        add(entity);
+        return entity;
+    }
+
+    private void add(WordEntity entity) {
+        entity.setHandle(matcher.add(entity.getWord(), entity));
+        activeWords.add(entity);
+        // Later spawns in the same step have to see this word too
+        addToGrid(entity);
+        listener.onSpawn(entity);
+    }
+
+    /**
+     * Adds a typed letter. If the typed letters now spell an active word
+     * the typed letters are cleared, and unless setTypedHits turned it
+     * off the score goes up and the word is marked as hit.
+     *
+     * @param letter upper case letter
+     * @return the word the typed letters spelled, or null
+     */
+    public WordEntity typeLetter(char letter) {
+        if (journal != null) {
+            journal.letter(tickCount, letter);
+        }
+        WordEntity hit = matcher.type(letter);
+        if (hit != null) {
+            matcher.clearTyped();
+            if (typedHits) {
+                markHit(hit);
+            }
+        }
+        return hit;
+    }
+
+    public boolean isTypedHits() {
+        return typedHits;
+    }
+
+    /**
+     * @param typedHits false to leave the word that typed letters spell
+     * active until hit is called for it, as in a race where the server
+     * decides who typed a word first
+     */
+    public void setTypedHits(boolean typedHits) {
+        this.typedHits = typedHits;
+    }
+
+    /**
+     * Marks an active word as hit without typing it, for games whose
+     * letters are matched somewhere else, such as a race where every
+     * player types on their own.
+     *
+     * @param word a word of this simulation
+     * @return false if the word was no longer active
+     */
+    public boolean hit(WordEntity word) {
+        if (word.getState() == WordEntity.State.REMOVED) {
+            // Expired before the hit came in, counted as a second removal
+            activeWords.remove(word);
+            return false;
+        }
+        if (word.getState() != WordEntity.State.ACTIVE) {
+            return false;
+        }
+        int index = activeWords.indexOf(word);
+        if (index < 0) {
+            return false;
+        }
+        if (journal != null) {
+            journal.hit(tickCount, index);
+        }
+        markHit(word);
+        return true;
+    }
+
+    private void markHit(WordEntity hit) {
+        score++;
+        spawner.resolved(true);
+        matcher.remove(hit.getHandle(), hit);
+        hit.setState(WordEntity.State.HIT);
+        hit.setHitNanos(nowNanos);
+        activeWords.hit(hit);
+        listener.onHit(hit, score);
+    }
+
+    /**
+     * Removes the last typed letter.
+     */
+    public void backspace() {
+        if (journal != null) {
+            journal.backspace(tickCount);
+        }
+        matcher.backspace();
+    }
+
+    private void removed(WordEntity word, boolean expired) {
+        // A hit word left the matcher already, and its slot may have been taken since
+        matcher.remove(word.getHandle(), word);
+        if (expired) {
+            spawner.resolved(false);
+        }
+        word.setState(WordEntity.State.REMOVED);
+        listener.onRemove(word, expired);
+    }
+
+    /**
+     * Looks up a word that can still be typed by its text.
+     *
+     * @param word upper case word
+     * @return one active word equal to the given word, or null
+     */
+    public WordEntity find(String word) {
+        return matcher.get(matcher.find(word));
+    }
+
+    /**
+     * Calls the consumer for every active word that starts with the typed letters.
+     *
+     * @param consumer receives each matching word
+     */
+    public void forEachCandidate(Consumer<? super WordEntity> consumer) {
+        matcher.forEachCandidate(consumer);
+    }
+
+    public int getCandidateCount() {
+        return matcher.candidateCount();
+    }
+
+    public String getTypedString() {
+        return matcher.typedString();
+    }
+
+    /**
+     * @return number of letters typed since the last correct word
+     */
+    public int getTypedLength() {
+        return matcher.typedLength();
+    }
+
+    /**
+     * @param index position among the typed letters, 0 is the first
+     * @return the typed letter at that position
+     */
+    public char getTypedCharAt(int index) {
+        return matcher.typedCharAt(index);
+    }
+
+    /**
+     * @return the words in the simulation, in no particular order. Do not modify.
+     */
+    public List<WordEntity> getActiveWords() {
+        return activeWords.asList();
+    }
+
+    /**
+     * @return number of times a word was removed or hit after it had already been removed
+     */
+    public long getDoubleRemovals() {
+        return activeWords.getDoubleRemovals();
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public long getNowNanos() {
+        return nowNanos;
+    }
+
+    /**
+     * @return simulation time plus the part of a step that advance has
+     * been given but not simulated yet, for smooth rendering between steps
+     */
+    public long getInterpolatedNanos() {
+        return nowNanos + pendingNanos;
+    }
+
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    public long getStepNanos() {
+        return stepNanos;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public double getWidth() {
+        return width;
+    }
+
+    public double getHeight() {
+        return height;
+    }
+
+    public WordDictionary getWords() {
+        return words.getWords();
+    }
+
+    /**
+     * Replaces the words new spawns are chosen from. Words already on the field stay.
+     * Builds the index right away, use setWords(WordIndex) to build it elsewhere.
+     * @param words the new words
+     */
+    public void setWords(WordDictionary words) {
+        setWords(WordIndex.build(words));
+    }
+
+    /**
+     * Replaces the words new spawns are chosen from. Words already on the field stay.
+     * @param words the new words, already indexed
+     */
+    public void setWords(WordIndex words) {
+        this.words = words;
+        if (journal != null) {
+            journal.words(tickCount, words.getWords());
+        }
+    }
+
+    public DifficultyCurve getDifficulty() {
+        return difficulty;
+    }
+
+    /**
+     * @param difficulty curve new words follow, null to pick every word with the same chance
+     */
+    public void setDifficulty(DifficultyCurve difficulty) {
+        this.difficulty = difficulty;
+        if (difficulty == null) {
+            words.clearTargetLevel();
+        }
+        if (journal != null) {
+            journal.difficulty(tickCount, difficulty);
+        }
+    }
+
+    /**
+     * @return correct words per minute of simulation time so far
+     */
+    public double getWordsPerMinute() {
+        return nowNanos <= 0 ? 0 : score * 60.0 * NANOS_PER_SECOND / nowNanos;
+    }
+
+    public boolean isSpawning() {
+        return spawning;
+    }
+
+    /**
+     * Turns spawning on or off. Words that are already on the field keep going.
+     * @param spawning true to spawn new words
+     */
+    public void setSpawning(boolean spawning) {
+        if (spawning && !this.spawning) {
+            spawner.resume(nowNanos);
+        }
+        this.spawning = spawning;
+        if (journal != null) {
+            journal.spawning(tickCount, spawning);
+        }
+    }
+
+    /**
+     * @return time between two spawns, which adaptive spawning keeps changing
+     */
+    public long getSpawnIntervalNanos() {
+        return spawner.getIntervalNanos();
+    }
+
+    /**
+     * Changes the time between spawns. The next spawn is counted from the
+     * previous one so changing the rate does not skip or double a spawn.
+     * In adaptive mode this is where the interval starts adapting from.
+     * @param spawnIntervalNanos time between two spawns, at least SpawnScheduler.MIN_INTERVAL_NANOS
+     */
+    public void setSpawnIntervalNanos(long spawnIntervalNanos) {
+        spawner.setIntervalNanos(spawnIntervalNanos, nowNanos);
+        if (journal != null) {
+            journal.spawnInterval(tickCount, spawnIntervalNanos);
+        }
+    }
+
+    public double getSpawnJitter() {
+        return spawner.getJitter();
+    }
+
+    /**
+     * @param jitter largest share each interval between spawns is stretched
+     * or shrunk by at random, between 0 and 1
+     */
+    public void setSpawnJitter(double jitter) {
+        spawner.setJitter(jitter);
+        if (journal != null) {
+            journal.spawnJitter(tickCount, jitter);
+        }
+    }
+
+    /**
+     * @return what adaptive spawning follows, null when the interval is fixed
+     */
+    public SpawnScheduler.Target getSpawnTarget() {
+        return spawner.getTarget();
+    }
+
+    public double getSpawnTargetValue() {
+        return spawner.getTargetValue();
+    }
+
+    /**
+     * Makes the time between spawns follow the player, between
+     * SpawnScheduler.MIN_ADAPTIVE_NANOS and MAX_ADAPTIVE_NANOS.
+     * @param target what to keep at the value, null for a fixed interval
+     * @param value number of typeable words on the screen, or share of words that are hit
+     */
+    public void setSpawnTarget(SpawnScheduler.Target target, double value) {
+        spawner.setTarget(target, value);
+        if (journal != null) {
+            journal.spawnTarget(tickCount, target, value);
+        }
+    }
+
+    public long getLifetimeNanos() {
+        return lifetimeNanos;
+    }
+
+    /**
+     * @param lifetimeNanos how long newly spawned words float before they expire
+     */
+    public void setLifetimeNanos(long lifetimeNanos) {
+        this.lifetimeNanos = lifetimeNanos;
+        if (journal != null) {
+            journal.lifetime(tickCount, lifetimeNanos);
+        }
+    }
+
+    public long getHitLingerNanos() {
+        return hitLingerNanos;
+    }
+
+    public void setHitLingerNanos(long hitLingerNanos) {
+        this.hitLingerNanos = hitLingerNanos;
+        if (journal != null) {
+            journal.hitLinger(tickCount, hitLingerNanos);
+        }
+    }
+}
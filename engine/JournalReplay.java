@@ -0,0 +1,316 @@
+package engine;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plays a KeyJournal back. Creates a GameSimulation with the recorded
+ * seed and applies every record at the step it was recorded at, so the
+ * replayed game ends with the same words and the same score. The replay
+ * can be driven in real time through advance or run to the end at once.
+ * <p>
+ * The word lists are read again from the recorded paths. A list that
+ * changed since the recording is refused rather than replayed wrongly.
+ * Word sizes are taken from the journal, journals that do not hold them
+ * are replayed with TextMeasure.ESTIMATE.
+ */
+public final class JournalReplay {
+    private final GameSimulation simulation;
+    // All segments of the journal, one after the other
+    private final ByteBuffer records;
+    // Word lists read so far, by path
+    private final Map<String, WordDictionary> sources = new HashMap<>();
+    private String source;
+    // Type and step of the next record, type is -1 after the last one
+    private int nextType = -1;
+    private long nextTick;
+    // Real time handed to advance that has not been replayed yet
+    private long pendingNanos;
+    private boolean ended;
+    // Sizes of the words that are about to spawn
+    private final RecordedMeasure sizes = new RecordedMeasure();
+    // Score written at the end of the journal, -1 if the journal stops early
+    private int recordedScore = -1;
+
+    /**
+     * Reads every segment of a journal and creates its simulation.
+     *
+     * @param base path of the first segment
+     * @throws IOException if the journal cannot be read or is not a journal
+     */
+    public JournalReplay(Path base) throws IOException {
+        records = readSegments(base);
+        readNext();
+        if (nextType != KeyJournal.SESSION) {
+            throw new IOException(base + " does not start with a session");
+        }
+        long seed = records.getLong();
+        double width = records.getDouble();
+        double height = records.getDouble();
+        long stepNanos = KeyJournal.getVarLong(records);
+        simulation = new GameSimulation(WordDictionary.EMPTY, width, height, seed, stepNanos);
+        simulation.setTextMeasure(sizes);
+        readNext();
+    }
+
+    /**
+     * @return the simulation the journal is played into
+     */
+    public GameSimulation getSimulation() {
+        return simulation;
+    }
+
+    /**
+     * @return true once the last record was replayed
+     */
+    public boolean isEnded() {
+        return ended;
+    }
+
+    /**
+     * @return score the recorded game ended with, -1 if the journal stops
+     * without an end record, for example after a crash
+     */
+    public int getRecordedScore() {
+        return recordedScore;
+    }
+
+    /**
+     * Replays as many steps as fit into the elapsed time, like
+     * GameSimulation.advance.
+     *
+     * @param elapsedNanos time since the last call
+     * @return number of steps that were run
+     * @throws IOException if a recorded word list cannot be read
+     */
+    public int advance(long elapsedNanos) throws IOException {
+        pendingNanos += Math.max(0, elapsedNanos);
+        int steps = 0;
+        while (pendingNanos >= simulation.getStepNanos()) {
+            pendingNanos -= simulation.getStepNanos();
+            step();
+            steps++;
+        }
+        return steps;
+    }
+
+    /**
+     * Replays the whole journal as fast as possible.
+     *
+     * @return the simulation after the last record
+     * @throws IOException if a recorded word list cannot be read
+     */
+    public GameSimulation runToEnd() throws IOException {
+        while (!ended) {
+            step();
+        }
+        return simulation;
+    }
+
+    /**
+     * Applies the records of the current step and runs one step, unless
+     * the journal has ended.
+     */
+    private void step() throws IOException {
+        applyDue();
+        if (!ended) {
+            simulation.tick(simulation.getStepNanos());
+            applyDue();
+        }
+    }
+
+    private void applyDue() throws IOException {
+        while (nextType >= 0 && nextTick == simulation.getTickCount()) {
+            try {
+                apply(nextType);
+            } catch (BufferUnderflowException e) {
+                // The last record was cut short
+                nextType = -1;
+                break;
+            }
+            readNext();
+        }
+        if (nextType < 0) {
+            ended = true;
+        }
+    }
+
+    private void apply(int type) throws IOException {
+        switch (type) {
+            case KeyJournal.LETTER:
+                simulation.typeLetter((char) records.get());
+                break;
+            case KeyJournal.BACKSPACE:
+                simulation.backspace();
+                break;
+            case KeyJournal.SPAWN:
+                simulation.spawn();
+                break;
+            case KeyJournal.MEASURE:
+                sizes.add(records.getDouble(), records.getDouble());
+                break;
+            case KeyJournal.HIT:
+                simulation.hit(simulation.getActiveWords().get((int) KeyJournal.getVarLong(records)));
+                break;
+            case KeyJournal.SPAWNING:
+                simulation.setSpawning(records.get() != 0);
+                break;
+            case KeyJournal.SPAWN_INTERVAL:
+                simulation.setSpawnIntervalNanos(KeyJournal.getVarLong(records));
+                break;
+            case KeyJournal.SPAWN_JITTER:
+                simulation.setSpawnJitter(records.getDouble());
+                break;
+            case KeyJournal.SPAWN_TARGET:
+                int target = records.get();
+                double value = records.getDouble();
+                simulation.setSpawnTarget(target == 0 ? null : SpawnScheduler.Target.values()[target - 1], value);
+                break;
+            case KeyJournal.LIFETIME:
+                simulation.setLifetimeNanos(KeyJournal.getVarLong(records));
+                break;
+            case KeyJournal.HIT_LINGER:
+                simulation.setHitLingerNanos(KeyJournal.getVarLong(records));
+                break;
+            case KeyJournal.DIFFICULTY:
+                if (records.get() == 0) {
+                    simulation.setDifficulty(null);
+                } else {
+                    double startLevel = records.getDouble();
+                    long rampNanos = KeyJournal.getVarLong(records);
+                    double maxWpm = records.getDouble();
+                    double spread = records.getDouble();
+                    simulation.setDifficulty(new DifficultyCurve(startLevel, rampNanos, maxWpm, spread));
+                }
+                break;
+            case KeyJournal.SOURCE:
+                byte[] path = new byte[(int) KeyJournal.getVarLong(records)];
+                records.get(path);
+                source = new String(path, StandardCharsets.UTF_8);
+                break;
+            case KeyJournal.WORDS:
+                int count = (int) KeyJournal.getVarLong(records);
+                long hash = records.getLong();
+                simulation.setWords(words(count, hash));
+                break;
+            case KeyJournal.END:
+                recordedScore = (int) KeyJournal.getVarLong(records);
+                records.position(records.limit());
+                break;
+            default:
+                throw new IOException("Unknown journal record " + type);
+        }
+    }
+
+    /**
+     * @return the first count words of the current source
+     */
+    private WordDictionary words(int count, long hash) throws IOException {
+        if (source == null) {
+            if (count == 0) {
+                return WordDictionary.EMPTY;
+            }
+            throw new IOException("Journal swaps in words without saying where they come from");
+        }
+        WordDictionary words = sources.get(source);
+        if (words == null) {
+            words = WordDictionary.load(Paths.get(source));
+            sources.put(source, words);
+        }
+        if ((hash != 0 && hash != words.getSourceHash()) || count > words.size()) {
+            throw new IOException(source + " changed since the journal was recorded");
+        }
+        return count == words.size() ? words : WordDictionary.of(words.asList().subList(0, count));
+    }
+
+    /**
+     * Reads the type and step of the next record. A record cut short by a
+     * crash counts as the end of the journal.
+     */
+    private void readNext() throws IOException {
+        if (!records.hasRemaining()) {
+            nextType = -1;
+            return;
+        }
+        try {
+            int type = records.get();
+            long tick = nextTick + KeyJournal.getVarLong(records);
+            nextType = type;
+            nextTick = tick;
+        } catch (BufferUnderflowException e) {
+            nextType = -1;
+        }
+    }
+
+    /**
+     * Reads all segments and joins their records, dropping the headers.
+     */
+    private static ByteBuffer readSegments(Path base) throws IOException {
+        List<ByteBuffer> segments = new ArrayList<>();
+        int length = 0;
+        for (int segment = 0; Files.exists(KeyJournal.segmentPath(base, segment)); segment++) {
+            Path path = KeyJournal.segmentPath(base, segment);
+            ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+            if (bytes.remaining() < 5 || bytes.getInt() != KeyJournal.MAGIC) {
+                throw new IOException(path + " is not a journal");
+            }
+            if (bytes.get() != KeyJournal.VERSION) {
+                throw new IOException(path + " has an unknown version");
+            }
+            if (KeyJournal.getVarLong(bytes) != segment) {
+                throw new IOException(path + " is out of order");
+            }
+            segments.add(bytes);
+            length += bytes.remaining();
+        }
+        if (length == 0) {
+            throw new IOException(base + " is empty or missing");
+        }
+        ByteBuffer joined = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        for (ByteBuffer segment : segments) {
+            joined.put(segment);
+        }
+        return joined.flip();
+    }
+
+    /**
+     * Hands out the recorded word sizes in the order they were measured.
+     * The simulation asks for the width of a word before its height.
+     */
+    private static final class RecordedMeasure implements TextMeasure {
+        private final ArrayDeque<double[]> pending = new ArrayDeque<>();
+        private double height = ESTIMATE.height();
+
+        void add(double width, double height) {
+            pending.add(new double[]{width, height});
+        }
+
+        @Override
+        public double width(String word) {
+            double[] size = pending.poll();
+            if (size == null) {
+                // Recorded before sizes were
+                height = ESTIMATE.height();
+                return ESTIMATE.width(word);
+            }
+            height = size[1];
+            return size[0];
+        }
+
+        @Override
+        public double height() {
+            return height;
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only binary log of everything that changes how a game plays out:
+ * the seed, typed letters, setting changes and word list swaps. Every
+ * record holds the step it happened at, so a JournalReplay can feed it
+ * back through a GameSimulation and get the exact same game.
+ * <p>
+ * Records go through a buffer into a FileChannel. Numbers are written as
+ * varints and steps as the difference to the previous record, so a typed
+ * letter usually takes three bytes. Once a file is larger than the segment
+ * size the journal continues in the next one: base, base.1, base.2 and so on.
+ * The buffer is only written out when it is full or on flush, so whoever
+ * runs the game should flush now and then: a crash loses what was
+ * recorded since, and a replay stops at the last complete record.
+ * <p>
+ * The game must not stop because its journal cannot be written, so the
+ * record methods never throw. The first error stops the journal and can
+ * be read with getError.
+ */
+public final class KeyJournal implements AutoCloseable {
+    static final int MAGIC = 0x4B534A31; // "KSJ1"
+    static final int VERSION = 1;
+
+    // Record types, each followed by the step difference and its payload
+    static final int END = 0;
+    static final int SESSION = 1;
+    static final int LETTER = 2;
+    static final int BACKSPACE = 3;
+    static final int SPAWN = 4;
+    static final int SPAWNING = 5;
+    static final int SPAWN_INTERVAL = 6;
+    static final int LIFETIME = 7;
+    static final int HIT_LINGER = 8;
+    static final int DIFFICULTY = 9;
+    static final int SOURCE = 10;
+    static final int WORDS = 11;
+    static final int SPAWN_JITTER = 12;
+    static final int SPAWN_TARGET = 13;
+    static final int HIT = 14;
+    static final int MEASURE = 15;
+
+    // Default size at which a new segment is started
+    public static final long DEFAULT_SEGMENT_BYTES = 1 << 20;
+    // Room one record needs at most, apart from the text of a source path
+    private static final int MAX_RECORD_BYTES = 64;
+
+    private final Path base;
+    private final long segmentBytes;
+    private final ByteBuffer buffer;
+    private FileChannel channel;
+    private int segment;
+    private long segmentSize;
+    // Step of the previous record
+    private long lastTick;
+    private IOException error;
+    private boolean closed;
+
+    /**
+     * Creates the first segment, replacing an existing journal of the same name.
+     *
+     * @param base path of the first segment
+     * @param segmentBytes size after which the next segment is started
+     * @throws IOException if the file cannot be created
+     */
+    public KeyJournal(Path base, long segmentBytes) throws IOException {
+        this.base = base;
+        this.segmentBytes = segmentBytes;
+        buffer = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        openSegment();
+    }
+
+    public KeyJournal(Path base) throws IOException {
+        this(base, DEFAULT_SEGMENT_BYTES);
+    }
+
+    /**
+     * @param base path of the first segment
+     * @param segment number of the segment
+     * @return path of the segment
+     */
+    public static Path segmentPath(Path base, int segment) {
+        return segment == 0 ? base : base.resolveSibling(base.getFileName() + "." + segment);
+    }
+
+    public Path getBase() {
+        return base;
+    }
+
+    /**
+     * @return the error that stopped the journal, or null
+     */
+    public IOException getError() {
+        return error;
+    }
+
+    /**
+     * Records everything a replay needs to create the same simulation.
+     */
+    void session(long tick, long seed, double width, double height, long stepNanos) {
+        if (begin(SESSION, tick)) {
+            buffer.putLong(seed);
+            buffer.putDouble(width);
+            buffer.putDouble(height);
+            putVarLong(stepNanos);
+        }
+    }
+
+    void letter(long tick, char letter) {
+        if (begin(LETTER, tick)) {
+            buffer.put((byte) letter);
+        }
+    }
+
+    void backspace(long tick) {
+        begin(BACKSPACE, tick);
+    }
+
+    /**
+     * Records a spawn that was asked for from outside the simulation.
+     */
+    void spawn(long tick) {
+        begin(SPAWN, tick);
+    }
+
+    /**
+     * Records the size of a word that is about to spawn.
+     */
+    void measure(long tick, double width, double height) {
+        if (begin(MEASURE, tick)) {
+            buffer.putDouble(width);
+            buffer.putDouble(height);
+        }
+    }
+
+    /**
+     * Records a word that was hit without being typed.
+     *
+     * @param index position of the word among the active words
+     */
+    void hit(long tick, int index) {
+        if (begin(HIT, tick)) {
+            putVarLong(index);
+        }
+    }
+
+    void spawning(long tick, boolean spawning) {
+        if (begin(SPAWNING, tick)) {
+            buffer.put((byte) (spawning ? 1 : 0));
+        }
+    }
+
+    void spawnInterval(long tick, long nanos) {
+        if (begin(SPAWN_INTERVAL, tick)) {
+            putVarLong(nanos);
+        }
+    }
+
+    void spawnJitter(long tick, double jitter) {
+        if (begin(SPAWN_JITTER, tick)) {
+            buffer.putDouble(jitter);
+        }
+    }
+
+    void spawnTarget(long tick, SpawnScheduler.Target target, double value) {
+        if (begin(SPAWN_TARGET, tick)) {
+            buffer.put((byte) (target == null ? 0 : target.ordinal() + 1));
+            buffer.putDouble(value);
+        }
+    }
+
+    void lifetime(long tick, long nanos) {
+        if (begin(LIFETIME, tick)) {
+            putVarLong(nanos);
+        }
+    }
+
+    void hitLinger(long tick, long nanos) {
+        if (begin(HIT_LINGER, tick)) {
+            putVarLong(nanos);
+        }
+    }
+
+    void difficulty(long tick, DifficultyCurve difficulty) {
+        if (begin(DIFFICULTY, tick)) {
+            buffer.put((byte) (difficulty == null ? 0 : 1));
+            if (difficulty != null) {
+                buffer.putDouble(difficulty.getStartLevel());
+                putVarLong(difficulty.getRampNanos());
+                buffer.putDouble(difficulty.getMaxWpm());
+                buffer.putDouble(difficulty.getSpread());
+            }
+        }
+    }
+
+    /**
+     * Records the word list the following words records are taken from.
+     *
+     * @param tick step the list was swapped in at
+     * @param path path of the word list
+     */
+    public void source(long tick, String path) {
+        byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+        if (ensureRoom(MAX_RECORD_BYTES + bytes.length) && begin(SOURCE, tick)) {
+            putVarLong(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    /**
+     * Records a word list swap. A partly loaded list holds the first words
+     * of the complete one, so its size is enough to rebuild it.
+     */
+    void words(long tick, WordDictionary words) {
+        if (begin(WORDS, tick)) {
+            putVarLong(words.size());
+            buffer.putLong(words.getSourceHash());
+        }
+    }
+
+    /**
+     * Writes out everything recorded so far.
+     */
+    public void flush() {
+        if (error != null || closed) {
+            return;
+        }
+        try {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                segmentSize += channel.write(buffer);
+            }
+            buffer.clear();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Records the end of the game with its final score, which a replay
+     * checks its own score against, and closes the journal.
+     *
+     * @param tick last step of the game
+     * @param score final score
+     */
+    public void end(long tick, int score) {
+        if (begin(END, tick)) {
+            putVarLong(score);
+        }
+        close();
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        flush();
+        closed = true;
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            if (error == null) {
+                error = e;
+            }
+        }
+    }
+
+    /**
+     * Starts a record, writing out the buffer first if it might not fit.
+     * @return false if the journal is stopped
+     */
+    private boolean begin(int type, long tick) {
+        if (!ensureRoom(MAX_RECORD_BYTES)) {
+            return false;
+        }
+        if (segmentSize + buffer.position() >= segmentBytes) {
+            rotate();
+            if (error != null) {
+                return false;
+            }
+        }
+        buffer.put((byte) type);
+        putVarLong(tick - lastTick);
+        lastTick = tick;
+        return true;
+    }
+
+    private boolean ensureRoom(int bytes) {
+        if (error != null || closed) {
+            return false;
+        }
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+        if (buffer.remaining() < bytes) {
+            fail(new IOException("Journal record of " + bytes + " bytes does not fit into the buffer"));
+        }
+        return error == null;
+    }
+
+    /**
+     * Writes out the current segment and continues in the next one.
+     */
+    private void rotate() {
+        flush();
+        if (error != null) {
+            return;
+        }
+        try {
+            channel.close();
+            segment++;
+            openSegment();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void openSegment() throws IOException {
+        channel = FileChannel.open(segmentPath(base, segment), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        segmentSize = 0;
+        buffer.putInt(MAGIC);
+        buffer.put((byte) VERSION);
+        putVarLong(segment);
+    }
+
+    private void fail(IOException e) {
+        error = e;
+        buffer.clear();
+        try {
+            channel.close();
+        } catch (IOException ignore) {
+            // Already failed
+        }
+    }
+
+    /**
+     * Writes a non-negative number 7 bits at a time, lowest bits first.
+     */
+    private void putVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static long getVarLong(ByteBuffer buffer) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in journal");
+    }
+}
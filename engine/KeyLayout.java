@@ -0,0 +1,56 @@
+package engine;
+
+/**
+ * The letter rows of the on-screen keyboard, shared by the Keyboard
+ * and everything that needs to know where a letter sits.
+ */
+public final class KeyLayout {
+    // Letters of each row from left to right, top row first
+    public static final String[] ROWS = {"QWERTYUIOP", "ASDFGHJKL", "ZXCVBNM"};
+    // How far each row is shifted to the right on a real keyboard, in keys
+    private static final double[] ROW_SHIFT = {0, 0.25, 0.75};
+
+    // Row and column of every letter, indexed by letter - 'A'
+    private static final int[] ROW = new int[26];
+    private static final int[] COLUMN = new int[26];
+
+    static {
+        for (int row = 0; row < ROWS.length; row++) {
+            for (int column = 0; column < ROWS[row].length(); column++) {
+                int letter = ROWS[row].charAt(column) - 'A';
+                ROW[letter] = row;
+                COLUMN[letter] = column;
+            }
+        }
+    }
+
+    private KeyLayout() {
+    }
+
+    /**
+     * @param letter upper case letter
+     * @return row of the letter, 0 is the top row
+     */
+    public static int row(char letter) {
+        return ROW[letter - 'A'];
+    }
+
+    /**
+     * @param letter upper case letter
+     * @return position of the letter in its row, 0 is the leftmost key
+     */
+    public static int column(char letter) {
+        return COLUMN[letter - 'A'];
+    }
+
+    /**
+     * @param from upper case letter
+     * @param to upper case letter
+     * @return distance between the centers of the two keys, in keys
+     */
+    public static double distance(char from, char to) {
+        double dx = (COLUMN[to - 'A'] + ROW_SHIFT[ROW[to - 'A']]) - (COLUMN[from - 'A'] + ROW_SHIFT[ROW[from - 'A']]);
+        double dy = ROW[to - 'A'] - ROW[from - 'A'];
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+}
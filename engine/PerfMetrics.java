@@ -0,0 +1,276 @@
+package engine;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Collects frame and input timings of a running game in fixed-size ring
+ * buffers, so recording costs a couple of array writes and never
+ * allocates. Percentiles are only worked out when a summary is asked
+ * for, which the overlay does a few times per second.
+ */
+public final class PerfMetrics {
+    // Samples kept per ring buffer, the most recent ones win
+    public static final int CAPACITY = 1024;
+    // Upper bounds of the frame time histogram buckets, in milliseconds
+    private static final long[] HISTOGRAM_MILLIS = {4, 8, 12, 17, 20, 25, 33, 50, 100};
+
+    private final long expectedFrameNanos;
+    private final Ring frames = new Ring(CAPACITY);
+    private final Ring jitter = new Ring(CAPACITY);
+    private final Ring latency = new Ring(CAPACITY);
+    // Frame times of the whole session, one count per histogram bucket plus one for longer frames
+    private final long[] histogram = new long[HISTOGRAM_MILLIS.length + 1];
+    // Scratch space for sorting a ring buffer
+    private final long[] sorted = new long[CAPACITY];
+
+    private boolean enabled = true;
+    private long frameCount;
+    private int activeWords;
+    // Scene nodes that show words, and hidden ones kept for reuse
+    private int visibleNodes;
+    private int pooledNodes;
+    private int liveAnimations;
+    private int peakActiveWords;
+    private int peakVisibleNodes;
+    private int peakPooledNodes;
+
+    // Allocation counter of the thread that records the frames
+    private final com.sun.management.ThreadMXBean threads;
+    private long allocationThread = -1;
+    private long lastAllocatedBytes;
+    private long lastAllocationNanos;
+    private double allocationRate;
+
+    public PerfMetrics() {
+        this(GameSimulation.DEFAULT_STEP_NANOS);
+    }
+
+    /**
+     * @param expectedFrameNanos time between two frames when nothing stutters
+     */
+    public PerfMetrics(long expectedFrameNanos) {
+        this.expectedFrameNanos = expectedFrameNanos;
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        threads = bean instanceof com.sun.management.ThreadMXBean ? (com.sun.management.ThreadMXBean) bean : null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param enabled false to ignore everything that is recorded
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Records the time since the previous frame, and how far it was off
+     * from the expected frame time.
+     * @param frameNanos time since the previous frame
+     */
+    public void recordFrame(long frameNanos) {
+        if (!enabled) {
+            return;
+        }
+        frames.add(frameNanos);
+        jitter.add(Math.abs(frameNanos - expectedFrameNanos));
+        frameCount++;
+        int bucket = 0;
+        while (bucket < HISTOGRAM_MILLIS.length && frameNanos > HISTOGRAM_MILLIS[bucket] * 1_000_000) {
+            bucket++;
+        }
+        histogram[bucket]++;
+    }
+
+    /**
+     * @param nanos time from a key press until the frame that shows it
+     */
+    public void recordLatency(long nanos) {
+        if (enabled) {
+            latency.add(nanos);
+        }
+    }
+
+    /**
+     * Records the size of the current frame.
+     * @param activeWords words in the simulation
+     * @param visibleNodes nodes that show them
+     * @param pooledNodes hidden nodes kept to show words to come
+     * @param liveAnimations animations that are running
+     */
+    public void recordCounts(int activeWords, int visibleNodes, int pooledNodes, int liveAnimations) {
+        if (!enabled) {
+            return;
+        }
+        this.activeWords = activeWords;
+        this.visibleNodes = visibleNodes;
+        this.pooledNodes = pooledNodes;
+        this.liveAnimations = liveAnimations;
+        peakActiveWords = Math.max(peakActiveWords, activeWords);
+        peakVisibleNodes = Math.max(peakVisibleNodes, visibleNodes);
+        peakPooledNodes = Math.max(peakPooledNodes, pooledNodes);
+    }
+
+    /**
+     * Works out the allocation rate of the calling thread since the
+     * previous call. Meant to be called from the thread that records the
+     * frames, a few times per second.
+     * @return bytes allocated per second, or -1 if the JVM cannot tell
+     */
+    public double sampleAllocationRate() {
+        if (threads == null || !threads.isThreadAllocatedMemorySupported()) {
+            allocationRate = -1;
+            return allocationRate;
+        }
+        long thread = Thread.currentThread().getId();
+        long now = System.nanoTime();
+        long bytes = threads.getThreadAllocatedBytes(thread);
+        if (thread == allocationThread && now > lastAllocationNanos) {
+            allocationRate = (bytes - lastAllocatedBytes) * 1e9 / (now - lastAllocationNanos);
+        }
+        allocationThread = thread;
+        lastAllocatedBytes = bytes;
+        lastAllocationNanos = now;
+        return allocationRate;
+    }
+
+    /**
+     * @return percentiles of the recent samples and the current counts
+     */
+    public Summary summary() {
+        return new Summary(frames.percentiles(sorted), jitter.percentiles(sorted), latency.percentiles(sorted),
+                frameCount, activeWords, peakActiveWords, visibleNodes, peakVisibleNodes, pooledNodes, peakPooledNodes,
+                liveAnimations, allocationRate);
+    }
+
+    /**
+     * Writes the summary, the frame time histogram of the whole session
+     * and the recent raw samples as CSV.
+     * @param path file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void export(Path path) throws IOException {
+        Summary summary = summary();
+        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+            writer.write("metric,p50_ns,p99_ns,max_ns\n");
+            writer.write("frame," + summary.frame[0] + "," + summary.frame[1] + "," + summary.frame[2] + "\n");
+            writer.write("jitter," + summary.jitter[0] + "," + summary.jitter[1] + "," + summary.jitter[2] + "\n");
+            writer.write("latency," + summary.latency[0] + "," + summary.latency[1] + "," + summary.latency[2] + "\n");
+            writer.write("\ncount,value\n");
+            writer.write("frames," + summary.frameCount + "\n");
+            writer.write("peak_active_words," + summary.peakActiveWords + "\n");
+            writer.write("peak_visible_nodes," + summary.peakVisibleNodes + "\n");
+            writer.write("peak_pooled_nodes," + summary.peakPooledNodes + "\n");
+            writer.write("allocation_bytes_per_second," + (long) summary.allocationRate + "\n");
+            writer.write("\nframe_time_up_to_ms,frames\n");
+            for (int bucket = 0; bucket < histogram.length; bucket++) {
+                writer.write((bucket < HISTOGRAM_MILLIS.length ? Long.toString(HISTOGRAM_MILLIS[bucket]) : "more")
+                        + "," + histogram[bucket] + "\n");
+            }
+            writer.write("\nsample,frame_ns,latency_ns\n");
+            int samples = Math.max(frames.size(), latency.size());
+            for (int i = 0; i < samples; i++) {
+                writer.write(i + "," + (i < frames.size() ? frames.get(i) : "") + ","
+                        + (i < latency.size() ? latency.get(i) : "") + "\n");
+            }
+        }
+    }
+
+    /**
+     * Percentiles are {p50, p99, max} in nanoseconds, all 0 without samples.
+     */
+    public static final class Summary {
+        public final long[] frame;
+        public final long[] jitter;
+        public final long[] latency;
+        public final long frameCount;
+        public final int activeWords;
+        public final int peakActiveWords;
+        public final int visibleNodes;
+        public final int peakVisibleNodes;
+        public final int pooledNodes;
+        public final int peakPooledNodes;
+        public final int liveAnimations;
+        // Bytes allocated per second by the frame thread, -1 if unknown
+        public final double allocationRate;
+
+        Summary(long[] frame, long[] jitter, long[] latency, long frameCount, int activeWords, int peakActiveWords,
+                int visibleNodes, int peakVisibleNodes, int pooledNodes, int peakPooledNodes, int liveAnimations,
+                double allocationRate) {
+            this.frame = frame;
+            this.jitter = jitter;
+            this.latency = latency;
+            this.frameCount = frameCount;
+            this.activeWords = activeWords;
+            this.peakActiveWords = peakActiveWords;
+            this.visibleNodes = visibleNodes;
+            this.peakVisibleNodes = peakVisibleNodes;
+            this.pooledNodes = pooledNodes;
+            this.peakPooledNodes = peakPooledNodes;
+            this.liveAnimations = liveAnimations;
+            this.allocationRate = allocationRate;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("frame  p50 %5.1f p99 %5.1f max %5.1f ms%n"
+                            + "jitter p50 %5.1f p99 %5.1f max %5.1f ms%n"
+                            + "input  p50 %5.1f p99 %5.1f max %5.1f ms%n"
+                            + "words %d (peak %d)  nodes %d (peak %d)  pooled %d (peak %d)%n"
+                            + "animations %d  alloc %s",
+                    frame[0] / 1e6, frame[1] / 1e6, frame[2] / 1e6,
+                    jitter[0] / 1e6, jitter[1] / 1e6, jitter[2] / 1e6,
+                    latency[0] / 1e6, latency[1] / 1e6, latency[2] / 1e6,
+                    activeWords, peakActiveWords, visibleNodes, peakVisibleNodes, pooledNodes, peakPooledNodes,
+                    liveAnimations, allocationRate < 0 ? "n/a" : String.format("%.1f MB/s", allocationRate / 1e6));
+        }
+    }
+
+    /**
+     * Ring buffer of the most recent long samples.
+     */
+    static final class Ring {
+        private final long[] values;
+        private int next;
+        private int size;
+
+        Ring(int capacity) {
+            values = new long[capacity];
+        }
+
+        void add(long value) {
+            values[next] = value;
+            next = (next + 1) % values.length;
+            if (size < values.length) {
+                size++;
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * @param index 0 is the oldest sample
+         */
+        long get(int index) {
+            return values[(next - size + index + values.length) % values.length];
+        }
+
+        long[] percentiles(long[] scratch) {
+            if (size == 0) {
+                return new long[3];
+            }
+            System.arraycopy(values, 0, scratch, 0, size);
+            Arrays.sort(scratch, 0, size);
+            return new long[]{scratch[(size - 1) / 2], scratch[(int) Math.ceil(size * 0.99) - 1], scratch[size - 1]};
+        }
+    }
+}
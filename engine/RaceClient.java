@@ -0,0 +1,245 @@
+package engine;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One player's connection to a RaceServer. Sends the keys of the player
+ * and passes everything the server reports to a Listener, on a thread of
+ * its own. The server decides which words there are and who typed them,
+ * the client only shows what it is told.
+ */
+public final class RaceClient implements AutoCloseable {
+    /**
+     * Receives what the server reports, all on the reading thread of the client.
+     */
+    public interface Listener {
+        /**
+         * The server let the player in.
+         * @param playerId id of this player
+         * @param seed seed of the race
+         * @param tick step the race is at
+         * @param width width of the field
+         * @param height height of the field
+         * @param stepNanos length of a step
+         */
+        default void onWelcome(int playerId, long seed, long tick, double width, double height, long stepNanos) {
+        }
+
+        /**
+         * A step begins, the messages up to the next one happened during it.
+         * @param tick the step
+         * @param serverNanos System.nanoTime of the server when the step was due
+         */
+        default void onTick(long tick, long serverNanos) {
+        }
+
+        /**
+         * A word started floating. It moves in a straight line from its
+         * start to its end point over its lifetime.
+         * @param wordId id of the word
+         * @param word the word
+         * @param spawnTick step the word spawned at
+         * @param lifetimeNanos time until it expires
+         */
+        default void onSpawn(int wordId, String word, int startX, int startY, int endX, int endY,
+                             long spawnTick, long lifetimeNanos) {
+        }
+
+        /**
+         * A player typed a word first.
+         * @param wordId id of the word
+         * @param playerId the player who typed it
+         * @param score score the player gained
+         */
+        default void onHit(int wordId, int playerId, int score) {
+        }
+
+        /**
+         * A word expired without anybody typing it.
+         * @param wordId id of the word
+         */
+        default void onExpire(int wordId) {
+        }
+
+        /**
+         * A player is in the race, either new or there already when this player joined.
+         */
+        default void onJoin(int playerId, String name, int score) {
+        }
+
+        default void onLeave(int playerId) {
+        }
+
+        /**
+         * The connection is gone.
+         * @param error what went wrong, null if the client was closed
+         */
+        default void onClose(IOException error) {
+        }
+    }
+
+    private final SocketChannel channel;
+    private final Listener listener;
+    // Guards writes, keys may be sent from any thread
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ByteBuffer out = ByteBuffer.allocate(1024);
+    private volatile boolean closed;
+
+    private RaceClient(SocketChannel channel, Listener listener) {
+        this.channel = channel;
+        this.listener = listener;
+    }
+
+    /**
+     * Connects and says hello. The listener hears of the welcome once the
+     * server's next step has let the player in.
+     *
+     * @param address address of the server
+     * @param name name of the player
+     * @param listener receives what the server reports
+     * @param threads creates the thread that reads from the server
+     * @return the connected client
+     * @throws IOException if the server cannot be reached
+     */
+    public static RaceClient connect(InetSocketAddress address, String name, Listener listener,
+                                     ThreadFactory threads) throws IOException {
+        SocketChannel channel = SocketChannel.open(address);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        RaceClient client = new RaceClient(channel, listener);
+        client.hello(name);
+        threads.newThread(client::readLoop).start();
+        return client;
+    }
+
+    /**
+     * Sends keys in one message.
+     *
+     * @param keys upper case letters or RaceProtocol.BACKSPACE
+     * @param count number of keys to send from the start of the array
+     * @throws IOException if the keys cannot be sent
+     */
+    public void sendKeys(char[] keys, int count) throws IOException {
+        writeLock.lock();
+        try {
+            out.clear();
+            RaceProtocol.beginFrame(out);
+            out.put((byte) RaceProtocol.KEYS);
+            int sent = Math.min(count, out.remaining() - 5);
+            RaceProtocol.putVarLong(out, sent);
+            for (int i = 0; i < sent; i++) {
+                out.put((byte) keys[i]);
+            }
+            RaceProtocol.endFrame(out, 0);
+            write();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException ignore) {
+            // Closing anyway
+        }
+    }
+
+    private void hello(String name) throws IOException {
+        writeLock.lock();
+        try {
+            out.clear();
+            RaceProtocol.beginFrame(out);
+            out.put((byte) RaceProtocol.HELLO);
+            ByteBuffer frame = RaceProtocol.putString(out, name);
+            if (frame != out) {
+                throw new IOException("Player name too long");
+            }
+            RaceProtocol.endFrame(out, 0);
+            write();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void write() throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+    }
+
+    private void readLoop() {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        IOException error = null;
+        try {
+            while (true) {
+                buffer = RaceProtocol.readFrame(channel, buffer);
+                while (buffer.hasRemaining()) {
+                    read(buffer);
+                }
+            }
+        } catch (IOException e) {
+            error = closed ? null : e;
+        } catch (RuntimeException e) {
+            error = new IOException("Malformed race frame", e);
+        }
+        close();
+        listener.onClose(error);
+    }
+
+    private void read(ByteBuffer buffer) throws IOException {
+        int type = buffer.get();
+        switch (type) {
+            case RaceProtocol.WELCOME:
+                int playerId = RaceProtocol.getVarInt(buffer);
+                long seed = buffer.getLong();
+                long tick = RaceProtocol.getVarLong(buffer);
+                double width = buffer.getDouble();
+                double height = buffer.getDouble();
+                listener.onWelcome(playerId, seed, tick, width, height, RaceProtocol.getVarLong(buffer));
+                break;
+            case RaceProtocol.TICK:
+                listener.onTick(RaceProtocol.getVarLong(buffer), buffer.getLong());
+                break;
+            case RaceProtocol.SPAWN:
+                int wordId = RaceProtocol.getVarInt(buffer);
+                String word = RaceProtocol.getString(buffer);
+                int startX = RaceProtocol.getVarInt(buffer);
+                int startY = RaceProtocol.getVarInt(buffer);
+                int endX = RaceProtocol.getVarInt(buffer);
+                int endY = RaceProtocol.getVarInt(buffer);
+                long spawnTick = RaceProtocol.getVarLong(buffer);
+                listener.onSpawn(wordId, word, startX, startY, endX, endY, spawnTick, RaceProtocol.getVarLong(buffer));
+                break;
+            case RaceProtocol.HIT:
+                listener.onHit(RaceProtocol.getVarInt(buffer), RaceProtocol.getVarInt(buffer),
+                        RaceProtocol.getVarInt(buffer));
+                break;
+            case RaceProtocol.EXPIRE:
+                listener.onExpire(RaceProtocol.getVarInt(buffer));
+                break;
+            case RaceProtocol.JOIN:
+                int id = RaceProtocol.getVarInt(buffer);
+                String name = RaceProtocol.getString(buffer);
+                listener.onJoin(id, name, RaceProtocol.getVarInt(buffer));
+                break;
+            case RaceProtocol.LEAVE:
+                listener.onLeave(RaceProtocol.getVarInt(buffer));
+                break;
+            default:
+                throw new IOException("Unknown race message " + type);
+        }
+    }
+}
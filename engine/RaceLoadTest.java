@@ -0,0 +1,264 @@
+package engine;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finds out how many players a RaceServer can take on one box. Starts a
+ * server on the loopback address and connects simulated players that
+ * type the floating words at a set speed, making and correcting mistakes
+ * now and then. Every player is a real RaceClient with its own socket,
+ * so the server does all the work a race of real players would make.
+ * <p>
+ * For every number of players it reports how long the server's steps
+ * took and how long the frames took to reach the players, both as
+ * percentiles. Server and players share the machine's monotonic clock,
+ * so the delivery times are only meaningful on one box.
+ */
+public final class RaceLoadTest {
+    // Size of the race field, the same as the window of the game
+    private static final double WIDTH = 600;
+    private static final double HEIGHT = 200;
+    // Delivery times kept per run, enough for 400 players over 10 seconds
+    private static final int MAX_SAMPLES = 1 << 18;
+    // Chance of a wrong letter
+    private static final double ERROR_RATE = 0.05;
+    // Time given to the players to connect before measuring
+    private static final long WARM_UP_NANOS = GameSimulation.NANOS_PER_SECOND;
+
+    private final WordDictionary words;
+    private final double wordsPerMinute;
+    private final long spawnIntervalNanos;
+    private final long durationNanos;
+
+    /**
+     * @param words words of the race
+     * @param wordsPerMinute typing speed of every simulated player
+     * @param spawnIntervalNanos time between two words
+     * @param durationNanos how long every run is measured
+     */
+    public RaceLoadTest(WordDictionary words, double wordsPerMinute, long spawnIntervalNanos, long durationNanos) {
+        this.words = words;
+        this.wordsPerMinute = wordsPerMinute;
+        this.spawnIntervalNanos = spawnIntervalNanos;
+        this.durationNanos = durationNanos;
+    }
+
+    /**
+     * Runs a race with the given number of simulated players.
+     *
+     * @param playerCount number of players
+     * @return one line with the step and delivery percentiles of the run
+     * @throws IOException if the server cannot be started or a player cannot connect
+     * @throws InterruptedException if interrupted while the race runs
+     */
+    public String run(int playerCount) throws IOException, InterruptedException {
+        GameSimulation simulation = new GameSimulation(words, WIDTH, HEIGHT, System.nanoTime());
+        simulation.setSpawnIntervalNanos(spawnIntervalNanos);
+        Delivery delivery = new Delivery();
+        List<SimulatedPlayer> players = new ArrayList<>();
+        ThreadFactory threads = RaceServer.connectionThreads("race-player");
+        try (RaceServer server = new RaceServer(new RaceRoom(simulation), 0)) {
+            server.start();
+            InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+            for (int i = 0; i < playerCount; i++) {
+                SimulatedPlayer player = new SimulatedPlayer(i, delivery);
+                player.client = RaceClient.connect(address, "player-" + i, player, threads);
+                players.add(player);
+            }
+            Thread.sleep(WARM_UP_NANOS / 1_000_000);
+            delivery.measuring = true;
+            long keysBefore = keyCount(players);
+            long lateBefore = server.getLateSteps();
+            Thread.sleep(durationNanos / 1_000_000);
+            delivery.measuring = false;
+
+            long[] steps = server.getTickPercentiles();
+            long[] frames = delivery.percentiles();
+            double seconds = (double) durationNanos / GameSimulation.NANOS_PER_SECOND;
+            int connected = 0;
+            int hits = 0;
+            for (SimulatedPlayer player : players) {
+                connected += player.client.isClosed() ? 0 : 1;
+                hits += player.hits;
+                player.client.close();
+            }
+            return String.format("%4d players (%4d connected): step p50 %5.2f p99 %5.2f max %6.2f ms, "
+                            + "delivery p50 %5.2f p99 %5.2f max %6.2f ms, %7.0f keys/s, %5d hits, %d late steps",
+                    playerCount, connected, steps[0] / 1e6, steps[1] / 1e6, steps[2] / 1e6,
+                    frames[0] / 1e6, frames[1] / 1e6, frames[2] / 1e6,
+                    (keyCount(players) - keysBefore) / seconds, hits, server.getLateSteps() - lateBefore);
+        } finally {
+            for (SimulatedPlayer player : players) {
+                player.client.close();
+            }
+        }
+    }
+
+    private static long keyCount(List<SimulatedPlayer> players) {
+        long keys = 0;
+        for (SimulatedPlayer player : players) {
+            keys += player.keys.get();
+        }
+        return keys;
+    }
+
+    /**
+     * Time from the start of a step until a player read its frame, of all players together.
+     */
+    private static final class Delivery {
+        private final PerfMetrics.Ring samples = new PerfMetrics.Ring(MAX_SAMPLES);
+        private final long[] sorted = new long[MAX_SAMPLES];
+        private volatile boolean measuring;
+
+        synchronized void add(long nanos) {
+            if (measuring) {
+                samples.add(nanos);
+            }
+        }
+
+        synchronized long[] percentiles() {
+            return samples.percentiles(sorted);
+        }
+    }
+
+    /**
+     * A player that types on the thread that reads its frames. After each
+     * step it sends the keys that came due during the step in one message,
+     * like a client sending what was typed since its last frame.
+     */
+    private final class SimulatedPlayer implements RaceClient.Listener {
+        private final Random random;
+        private final Delivery delivery;
+        private final double keysPerStep;
+        private RaceClient client;
+        private int playerId = -1;
+        // Floating words, ids and texts at the same positions
+        private final List<Integer> wordIds = new ArrayList<>();
+        private final List<String> wordTexts = new ArrayList<>();
+        // Word being typed, -1 if none
+        private int targetId = -1;
+        private String target;
+        private int typedCount;
+        private int pendingBackspaces;
+        // Fraction of a key carried over to the next step
+        private double keyCredit;
+        private final char[] keyBuffer = new char[64];
+        private final AtomicLong keys = new AtomicLong();
+        private int hits;
+
+        SimulatedPlayer(int index, Delivery delivery) {
+            this.random = new Random(index);
+            this.delivery = delivery;
+            keysPerStep = wordsPerMinute * SpeedMeter.CHARACTERS_PER_WORD / 60.0
+                    * GameSimulation.DEFAULT_STEP_NANOS / GameSimulation.NANOS_PER_SECOND;
+        }
+
+        @Override
+        public void onWelcome(int playerId, long seed, long tick, double width, double height, long stepNanos) {
+            this.playerId = playerId;
+        }
+
+        @Override
+        public void onTick(long tick, long serverNanos) {
+            delivery.add(System.nanoTime() - serverNanos);
+            keyCredit += keysPerStep;
+            int count = 0;
+            while (keyCredit >= 1 && count < keyBuffer.length) {
+                char key = nextKey();
+                if (key == 0) {
+                    keyCredit = 0;
+                    break;
+                }
+                keyBuffer[count++] = key;
+                keyCredit--;
+            }
+            if (count > 0) {
+                try {
+                    client.sendKeys(keyBuffer, count);
+                    keys.addAndGet(count);
+                } catch (IOException e) {
+                    client.close();
+                }
+            }
+        }
+
+        /**
+         * @return the next key to press, 0 if there is nothing to type
+         */
+        private char nextKey() {
+            if (pendingBackspaces > 0) {
+                pendingBackspaces--;
+                return RaceProtocol.BACKSPACE;
+            }
+            if (target == null) {
+                if (wordIds.isEmpty()) {
+                    return 0;
+                }
+                int pick = random.nextInt(wordIds.size());
+                targetId = wordIds.get(pick);
+                target = wordTexts.get(pick);
+                typedCount = 0;
+            }
+            char letter = target.charAt(typedCount);
+            if (random.nextDouble() < ERROR_RATE) {
+                pendingBackspaces = 1;
+                return letter == 'Z' ? 'A' : (char) (letter + 1);
+            }
+            if (++typedCount == target.length()) {
+                // Typed, so not worth picking again while the hit is on its way
+                forget(targetId);
+                target = null;
+                targetId = -1;
+            }
+            return letter;
+        }
+
+        @Override
+        public void onSpawn(int wordId, String word, int startX, int startY, int endX, int endY,
+                            long spawnTick, long lifetimeNanos) {
+            wordIds.add(wordId);
+            wordTexts.add(word);
+        }
+
+        @Override
+        public void onHit(int wordId, int playerId, int score) {
+            if (playerId == this.playerId) {
+                hits++;
+            }
+            gone(wordId);
+        }
+
+        @Override
+        public void onExpire(int wordId) {
+            gone(wordId);
+        }
+
+        private void gone(int wordId) {
+            forget(wordId);
+            if (wordId == targetId) {
+                // Somebody else was faster, take back what was typed of it
+                pendingBackspaces += typedCount;
+                target = null;
+                targetId = -1;
+            }
+        }
+
+        private void forget(int wordId) {
+            int index = wordIds.indexOf(wordId);
+            if (index >= 0) {
+                int last = wordIds.size() - 1;
+                wordIds.set(index, wordIds.get(last));
+                wordTexts.set(index, wordTexts.get(last));
+                wordIds.remove(last);
+                wordTexts.remove(last);
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package engine;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A race as one player sees it. The RaceClient hands over what the
+ * server reports on its reading thread, and apply plays it onto a
+ * GameSimulation on the thread that owns the simulation, one step for
+ * every step of the server. The simulation neither spawns words nor hits
+ * the words its player types: the words come from the server, and a word
+ * is hit once the server says who typed it first. Typed letters still go
+ * through the simulation, so the words they match can be shown.
+ */
+public final class RaceMirror implements RaceClient.Listener {
+    // Longest wait for the server to let the player in
+    private static final long WELCOME_TIMEOUT_MILLIS = 5000;
+
+    // What the reading thread received and apply has not played yet
+    private final ConcurrentLinkedQueue<Runnable> received = new ConcurrentLinkedQueue<>();
+    // Opens once the server let the player in or the connection is gone
+    private final CountDownLatch welcomed = new CountDownLatch(1);
+    private RaceClient client;
+    // Set by the reading thread before welcomed opens
+    private GameSimulation simulation;
+    private int playerId;
+    // Step of the server that step 0 of the simulation stands for
+    private long firstTick;
+    private long stepNanos;
+    // Words on the field by their id in the race, only used by apply
+    private final Map<Integer, WordEntity> words = new HashMap<>();
+    // Name and score of every player in the race, in the order they joined, only used by apply
+    private final Map<Integer, String> names = new LinkedHashMap<>();
+    private final Map<Integer, Integer> scores = new HashMap<>();
+    // Key handed to the client, only used by key
+    private final char[] key = new char[1];
+    private volatile boolean closed;
+    private volatile IOException error;
+
+    private RaceMirror() {
+    }
+
+    /**
+     * Connects to a race and waits until the server lets the player in.
+     *
+     * @param address address of the race server
+     * @param name name shown to the other players
+     * @return the race, with a simulation of the server's field size and step
+     * @throws IOException if the server cannot be reached or does not let the player in
+     */
+    public static RaceMirror join(InetSocketAddress address, String name) throws IOException {
+        RaceMirror mirror = new RaceMirror();
+        mirror.client = RaceClient.connect(address, name, mirror, RaceServer.connectionThreads("race-client"));
+        try {
+            if (!mirror.welcomed.await(WELCOME_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                mirror.close();
+                throw new IOException("The race server did not let " + name + " in");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            mirror.close();
+            throw new InterruptedIOException("Interrupted while joining the race");
+        }
+        if (mirror.simulation == null) {
+            throw new IOException("The race server closed the connection", mirror.error);
+        }
+        return mirror;
+    }
+
+    /**
+     * @return the simulation the race is played onto, only to be used on the thread that calls apply
+     */
+    public GameSimulation getSimulation() {
+        return simulation;
+    }
+
+    /**
+     * Plays everything the server reported since the last call onto the
+     * simulation. Has to be called from the thread that owns the simulation.
+     */
+    public void apply() {
+        Runnable message;
+        while ((message = received.poll()) != null) {
+            message.run();
+        }
+    }
+
+    /**
+     * Sends a key of the player to the server. A key that cannot be sent
+     * closes the connection.
+     *
+     * @param key upper case letter or RaceProtocol.BACKSPACE
+     */
+    public void key(char key) {
+        if (closed) {
+            return;
+        }
+        this.key[0] = key;
+        try {
+            client.sendKeys(this.key, 1);
+        } catch (IOException e) {
+            error = e;
+            close();
+        }
+    }
+
+    /**
+     * @return the score of the player, as far as apply has played the race
+     */
+    public int getScore() {
+        return scores.getOrDefault(playerId, 0);
+    }
+
+    /**
+     * @return every player still in the race with their score, the highest first
+     */
+    public List<String> getStandings() {
+        List<Integer> ids = new ArrayList<>(names.keySet());
+        ids.sort((a, b) -> Integer.compare(scores.getOrDefault(b, 0), scores.getOrDefault(a, 0)));
+        List<String> standings = new ArrayList<>();
+        for (int id : ids) {
+            standings.add(names.get(id) + " " + scores.getOrDefault(id, 0) + (id == playerId ? " (you)" : ""));
+        }
+        return standings;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return why the connection is gone, null if it is open or was closed on purpose
+     */
+    public IOException getError() {
+        return error;
+    }
+
+    /**
+     * Leaves the race.
+     */
+    public void close() {
+        closed = true;
+        client.close();
+    }
+
+    @Override
+    public void onWelcome(int playerId, long seed, long tick, double width, double height, long stepNanos) {
+        GameSimulation simulation = new GameSimulation(WordDictionary.EMPTY, width, height, seed, stepNanos);
+        simulation.setSpawning(false);
+        simulation.setTypedHits(false);
+        this.playerId = playerId;
+        this.firstTick = tick;
+        this.stepNanos = stepNanos;
+        this.simulation = simulation;
+        welcomed.countDown();
+    }
+
+    @Override
+    public void onTick(long tick, long serverNanos) {
+        received.add(() -> {
+            // Words expire by the simulation's own steps, which are the server's
+            while (simulation.getTickCount() < tick - firstTick) {
+                simulation.tick(stepNanos);
+            }
+        });
+    }
+
+    @Override
+    public void onSpawn(int wordId, String word, int startX, int startY, int endX, int endY,
+                        long spawnTick, long lifetimeNanos) {
+        received.add(() -> words.put(wordId, simulation.place(word, startX, startY, endX, endY,
+                (spawnTick - firstTick) * stepNanos, lifetimeNanos)));
+    }
+
+    @Override
+    public void onHit(int wordId, int playerId, int score) {
+        received.add(() -> {
+            scores.merge(playerId, score, Integer::sum);
+            WordEntity word = words.remove(wordId);
+            if (word != null) {
+                simulation.hit(word);
+            }
+        });
+    }
+
+    @Override
+    public void onExpire(int wordId) {
+        // The simulation expired the word in the same step already
+        received.add(() -> words.remove(wordId));
+    }
+
+    @Override
+    public void onJoin(int playerId, String name, int score) {
+        received.add(() -> {
+            names.put(playerId, name);
+            scores.put(playerId, score);
+        });
+    }
+
+    @Override
+    public void onLeave(int playerId) {
+        received.add(() -> {
+            names.remove(playerId);
+            scores.remove(playerId);
+        });
+    }
+
+    @Override
+    public void onClose(IOException error) {
+        if (error != null) {
+            this.error = error;
+            System.err.println("Left the race: " + error.getMessage());
+        }
+        closed = true;
+        welcomed.countDown();
+    }
+}
@@ -0,0 +1,164 @@
+package engine;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Wire format of a race between a RaceServer and its RaceClients.
+ * <p>
+ * Everything travels in frames: a four byte length followed by that many
+ * bytes of messages. A message is a type byte followed by its fields,
+ * numbers as varints like in the journal and text as a varint length
+ * followed by UTF-8 bytes.
+ * <p>
+ * A client says HELLO once and then sends KEYS whenever it likes. The
+ * server answers HELLO with a frame that starts with WELCOME and holds
+ * the other players and the words that are already floating. After that
+ * it sends one frame per step, which starts with TICK and holds
+ * everything that happened during that step, the same bytes for every
+ * client.
+ */
+public final class RaceProtocol {
+    // Client to server: name
+    static final int HELLO = 1;
+    // Client to server: number of keys, then one byte per key, a letter or BACKSPACE
+    static final int KEYS = 2;
+
+    // Server to client: player id, seed, step, width, height, step length
+    static final int WELCOME = 16;
+    // Server to client: step, then the server's System.nanoTime as eight bytes
+    static final int TICK = 17;
+    // Server to client: word id, word, start x, start y, end x, end y, step it spawned at, lifetime
+    static final int SPAWN = 18;
+    // Server to client: word id, id of the player who typed it, score the player gained
+    static final int HIT = 19;
+    // Server to client: word id
+    static final int EXPIRE = 20;
+    // Server to client: player id, name, score
+    static final int JOIN = 21;
+    // Server to client: player id
+    static final int LEAVE = 22;
+
+    public static final char BACKSPACE = '\b';
+    // Largest frame either side accepts
+    static final int MAX_FRAME_BYTES = 1 << 20;
+    // Room a message needs at most, apart from its text
+    static final int MAX_MESSAGE_BYTES = 96;
+
+    private RaceProtocol() {
+    }
+
+    /**
+     * @return the buffer, or a larger copy of it if fewer than the given bytes are left
+     */
+    static ByteBuffer ensureRoom(ByteBuffer buffer, int bytes) {
+        if (buffer.remaining() >= bytes) {
+            return buffer;
+        }
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+        buffer.flip();
+        larger.put(buffer);
+        return larger;
+    }
+
+    /**
+     * Writes a non-negative number 7 bits at a time, lowest bits first.
+     */
+    static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static long getVarLong(ByteBuffer buffer) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in race message");
+    }
+
+    static int getVarInt(ByteBuffer buffer) throws IOException {
+        long value = getVarLong(buffer);
+        if (value > Integer.MAX_VALUE) {
+            throw new IOException("Number out of range in race message");
+        }
+        return (int) value;
+    }
+
+    /**
+     * @return the buffer the text was written to, which may be a larger copy
+     */
+    static ByteBuffer putString(ByteBuffer buffer, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        buffer = ensureRoom(buffer, bytes.length + 5);
+        putVarLong(buffer, bytes.length);
+        buffer.put(bytes);
+        return buffer;
+    }
+
+    static String getString(ByteBuffer buffer) throws IOException {
+        int length = getVarInt(buffer);
+        if (length > buffer.remaining()) {
+            throw new IOException("Text longer than its race message");
+        }
+        String text = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return text;
+    }
+
+    /**
+     * Leaves room for the length of a frame, which endFrame fills in.
+     */
+    static void beginFrame(ByteBuffer buffer) {
+        buffer.putInt(0);
+    }
+
+    /**
+     * Fills in the length of the frame that starts at the given position.
+     */
+    static void endFrame(ByteBuffer buffer, int start) {
+        buffer.putInt(start, buffer.position() - start - Integer.BYTES);
+    }
+
+    /**
+     * Reads one frame from a blocking channel.
+     *
+     * @param buffer buffer to read into, replaced by a larger one when the frame does not fit
+     * @return the buffer holding the frame, positioned at its first message
+     * @throws EOFException if the channel ends before the frame
+     */
+    static ByteBuffer readFrame(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.clear().limit(Integer.BYTES);
+        readFully(channel, buffer);
+        int length = buffer.getInt(0);
+        if (length < 0 || length > MAX_FRAME_BYTES) {
+            throw new IOException("Race frame of " + length + " bytes");
+        }
+        if (length > buffer.capacity()) {
+            buffer = ByteBuffer.allocate(Math.max(length, buffer.capacity() * 2));
+        }
+        buffer.clear().limit(length);
+        readFully(channel, buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Race connection closed");
+            }
+        }
+    }
+}
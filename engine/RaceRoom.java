@@ -0,0 +1,317 @@
+package engine;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The rules of a race, without any networking. All players type on the
+ * same field of words, which one GameSimulation spawns and expires from
+ * the room's seed. Every player has a WordMatcher of their own over those
+ * words, so their typed letters do not get in each other's way. The
+ * first player to complete a word scores it and it is gone for everyone.
+ * <p>
+ * Everything that happens is written as race messages into a buffer,
+ * which step turns into one frame per step for all players. A room is
+ * not thread safe, a RaceServer drives it from its tick thread.
+ */
+public final class RaceRoom {
+    // Score a player gains for a word
+    private static final int HIT_SCORE = 1;
+
+    private final GameSimulation simulation;
+    private final List<Player> players = new ArrayList<>();
+    private int nextPlayerId;
+    private int nextWordId;
+
+    // Slot of each word, handles of the players' matchers are kept per slot
+    private Word[] words = new Word[64];
+    private int[] freeSlots = new int[64];
+    private int freeSlotCount;
+    private int slotCount;
+    // Player whose key completed the word that is being hit
+    private Player claimer;
+
+    // Messages of the current step
+    private ByteBuffer events = ByteBuffer.allocate(4096);
+    // The frame being built by step
+    private ByteBuffer frame = ByteBuffer.allocate(4096);
+
+    /**
+     * A player in the room.
+     */
+    public static final class Player {
+        private final int id;
+        private final String name;
+        private final WordMatcher<WordEntity> matcher = new WordMatcher<>();
+        // Handle of every word in the matcher, indexed by the slot of the word
+        private int[] handles = new int[64];
+        private int score;
+
+        private Player(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getScore() {
+            return score;
+        }
+    }
+
+    /**
+     * A word on the field, attached to its WordEntity as the view.
+     */
+    private static final class Word {
+        private final int id;
+        private final int slot;
+
+        private Word(int id, int slot) {
+            this.id = id;
+            this.slot = slot;
+        }
+    }
+
+    /**
+     * @param simulation spawns and expires the words of the race, the room becomes its listener
+     */
+    public RaceRoom(GameSimulation simulation) {
+        this.simulation = simulation;
+        simulation.setListener(new GameListener() {
+            @Override
+            public void onSpawn(WordEntity word) {
+                spawned(word);
+            }
+
+            @Override
+            public void onHit(WordEntity word, int score) {
+                hit(word);
+            }
+
+            @Override
+            public void onRemove(WordEntity word, boolean expired) {
+                removed(word, expired);
+            }
+        });
+    }
+
+    public GameSimulation getSimulation() {
+        return simulation;
+    }
+
+    public int getPlayerCount() {
+        return players.size();
+    }
+
+    /**
+     * @return the players in the order they joined. Do not modify.
+     */
+    public List<Player> getPlayers() {
+        return players;
+    }
+
+    /**
+     * Adds a player, who can type every word that is floating right away.
+     *
+     * @param name name shown to the other players
+     * @return the new player
+     */
+    public Player join(String name) {
+        Player player = new Player(nextPlayerId++, name);
+        player.handles = new int[words.length];
+        List<WordEntity> active = simulation.getActiveWords();
+        for (int i = 0; i < active.size(); i++) {
+            WordEntity word = active.get(i);
+            if (word.getState() == WordEntity.State.ACTIVE) {
+                player.handles[((Word) word.getView()).slot] = player.matcher.add(word.getWord(), word);
+            }
+        }
+        players.add(player);
+        events = RaceProtocol.ensureRoom(events, RaceProtocol.MAX_MESSAGE_BYTES);
+        events.put((byte) RaceProtocol.JOIN);
+        RaceProtocol.putVarLong(events, player.id);
+        events = RaceProtocol.putString(events, name);
+        RaceProtocol.putVarLong(events, 0);
+        return player;
+    }
+
+    /**
+     * Removes a player. Removing a player twice does nothing.
+     */
+    public void leave(Player player) {
+        if (players.remove(player)) {
+            events = RaceProtocol.ensureRoom(events, RaceProtocol.MAX_MESSAGE_BYTES);
+            events.put((byte) RaceProtocol.LEAVE);
+            RaceProtocol.putVarLong(events, player.id);
+        }
+    }
+
+    /**
+     * Handles a key of a player. If it completes a floating word the
+     * player scores it and the word is hit for everyone.
+     *
+     * @param player player who pressed the key
+     * @param key upper case letter, or BACKSPACE
+     */
+    public void key(Player player, char key) {
+        if (key == RaceProtocol.BACKSPACE) {
+            player.matcher.backspace();
+            return;
+        }
+        WordEntity word = player.matcher.type(key);
+        if (word != null) {
+            player.matcher.clearTyped();
+            claimer = player;
+            simulation.hit(word);
+            claimer = null;
+        }
+    }
+
+    /**
+     * Runs one step of the simulation and builds the frame that tells
+     * every player what happened since the previous one.
+     *
+     * @param stampNanos System.nanoTime of the step, for players to measure how late the frame arrives
+     * @return the frame, ready to be sent to every player
+     */
+    public byte[] step(long stampNanos) {
+        simulation.tick(simulation.getStepNanos());
+        frame.clear();
+        frame = RaceProtocol.ensureRoom(frame, RaceProtocol.MAX_MESSAGE_BYTES + events.position());
+        RaceProtocol.beginFrame(frame);
+        frame.put((byte) RaceProtocol.TICK);
+        RaceProtocol.putVarLong(frame, simulation.getTickCount());
+        frame.putLong(stampNanos);
+        events.flip();
+        frame.put(events);
+        events.clear();
+        RaceProtocol.endFrame(frame, 0);
+        return Arrays.copyOf(frame.array(), frame.position());
+    }
+
+    /**
+     * Builds the first frame a player gets: their id and the settings of
+     * the race, the other players and the words that are floating.
+     *
+     * @param player player who just joined
+     * @return the frame, to be sent before any frame of a later step
+     */
+    public byte[] welcome(Player player) {
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        RaceProtocol.beginFrame(buffer);
+        buffer.put((byte) RaceProtocol.WELCOME);
+        RaceProtocol.putVarLong(buffer, player.id);
+        buffer.putLong(simulation.getSeed());
+        RaceProtocol.putVarLong(buffer, simulation.getTickCount());
+        buffer.putDouble(simulation.getWidth());
+        buffer.putDouble(simulation.getHeight());
+        RaceProtocol.putVarLong(buffer, simulation.getStepNanos());
+        for (Player other : players) {
+            if (other != player) {
+                buffer = RaceProtocol.ensureRoom(buffer, RaceProtocol.MAX_MESSAGE_BYTES);
+                buffer.put((byte) RaceProtocol.JOIN);
+                RaceProtocol.putVarLong(buffer, other.id);
+                buffer = RaceProtocol.putString(buffer, other.name);
+                RaceProtocol.putVarLong(buffer, other.score);
+            }
+        }
+        List<WordEntity> active = simulation.getActiveWords();
+        for (int i = 0; i < active.size(); i++) {
+            WordEntity word = active.get(i);
+            if (word.getState() == WordEntity.State.ACTIVE) {
+                buffer = putSpawn(buffer, word);
+            }
+        }
+        RaceProtocol.endFrame(buffer, 0);
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    private void spawned(WordEntity entity) {
+        int slot;
+        if (freeSlotCount > 0) {
+            slot = freeSlots[--freeSlotCount];
+        } else {
+            if (slotCount == words.length) {
+                words = Arrays.copyOf(words, slotCount * 2);
+                freeSlots = Arrays.copyOf(freeSlots, slotCount * 2);
+            }
+            slot = slotCount++;
+        }
+        Word word = new Word(nextWordId++, slot);
+        words[slot] = word;
+        entity.setView(word);
+        for (Player player : players) {
+            if (slot >= player.handles.length) {
+                player.handles = Arrays.copyOf(player.handles, words.length);
+            }
+            player.handles[slot] = player.matcher.add(entity.getWord(), entity);
+        }
+        events = putSpawn(events, entity);
+    }
+
+    private void hit(WordEntity entity) {
+        Word word = (Word) entity.getView();
+        forget(entity);
+        events = RaceProtocol.ensureRoom(events, RaceProtocol.MAX_MESSAGE_BYTES);
+        if (claimer == null) {
+            // Hit from outside the race, gone without anybody scoring it
+            events.put((byte) RaceProtocol.EXPIRE);
+            RaceProtocol.putVarLong(events, word.id);
+            return;
+        }
+        claimer.score += HIT_SCORE;
+        events.put((byte) RaceProtocol.HIT);
+        RaceProtocol.putVarLong(events, word.id);
+        RaceProtocol.putVarLong(events, claimer.id);
+        RaceProtocol.putVarLong(events, HIT_SCORE);
+    }
+
+    private void removed(WordEntity entity, boolean expired) {
+        Word word = (Word) entity.getView();
+        if (expired) {
+            forget(entity);
+            events = RaceProtocol.ensureRoom(events, RaceProtocol.MAX_MESSAGE_BYTES);
+            events.put((byte) RaceProtocol.EXPIRE);
+            RaceProtocol.putVarLong(events, word.id);
+        }
+        words[word.slot] = null;
+        freeSlots[freeSlotCount++] = word.slot;
+    }
+
+    /**
+     * Takes a word out of every player's matcher.
+     */
+    private void forget(WordEntity entity) {
+        int slot = ((Word) entity.getView()).slot;
+        for (Player player : players) {
+            player.matcher.remove(player.handles[slot], entity);
+        }
+    }
+
+    private ByteBuffer putSpawn(ByteBuffer buffer, WordEntity word) {
+        buffer = RaceProtocol.ensureRoom(buffer, RaceProtocol.MAX_MESSAGE_BYTES);
+        buffer.put((byte) RaceProtocol.SPAWN);
+        RaceProtocol.putVarLong(buffer, ((Word) word.getView()).id);
+        buffer = RaceProtocol.putString(buffer, word.getWord());
+        buffer = RaceProtocol.ensureRoom(buffer, RaceProtocol.MAX_MESSAGE_BYTES);
+        RaceProtocol.putVarLong(buffer, pixels(word.getStartX()));
+        RaceProtocol.putVarLong(buffer, pixels(word.getStartY()));
+        RaceProtocol.putVarLong(buffer, pixels(word.getEndX()));
+        RaceProtocol.putVarLong(buffer, pixels(word.getEndY()));
+        RaceProtocol.putVarLong(buffer, word.getSpawnNanos() / simulation.getStepNanos());
+        RaceProtocol.putVarLong(buffer, word.getLifetimeNanos());
+        return buffer;
+    }
+
+    private static long pixels(double position) {
+        return Math.max(0, Math.round(position));
+    }
+}
@@ -0,0 +1,355 @@
+package engine;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hosts a RaceRoom over TCP. One tick thread owns the room: once per
+ * step it takes in the players that arrived and the keys that came in,
+ * runs the step and hands the frame of the step to every connection.
+ * The keys of all players go to the room in the order they were read,
+ * see ArrivalOrder. The frame is built once and the same bytes go to
+ * everybody.
+ * <p>
+ * Every connection has a thread that reads its keys and one that writes
+ * its frames, virtual threads where the JDK has them and daemon platform
+ * threads before that. A client that falls more than a second of frames
+ * behind is dropped rather than slowing down the others.
+ */
+public final class RaceServer implements AutoCloseable {
+    // Frames a connection may have waiting before it is dropped
+    private static final int MAX_BACKLOG = 64;
+    // Keys a connection may send per step, the rest are dropped
+    private static final int MAX_KEYS_PER_STEP = 256;
+    // Frames written to a socket at once
+    private static final int WRITE_BATCH = 16;
+    // Put into an outbox to stop its writer
+    private static final byte[] CLOSE = new byte[0];
+
+    private final RaceRoom room;
+    private final ServerSocketChannel server;
+    private final ThreadFactory threads;
+    private final Thread tickThread;
+    // Connections that said hello and wait for the tick thread to let them in
+    private final ConcurrentLinkedQueue<Connection> arrivals = new ConcurrentLinkedQueue<>();
+    // Connections in the room, only used by the tick thread
+    private final List<Connection> connections = new ArrayList<>();
+    // Sequence number of the next message of keys read from any connection
+    private final AtomicLong keyMessages = new AtomicLong();
+    private volatile boolean running;
+
+    // Time the tick thread spent on each recent step, from its deadline to the last frame handed out
+    private final PerfMetrics.Ring tickTimes = new PerfMetrics.Ring(PerfMetrics.CAPACITY);
+    private final long[] sortedTimes = new long[PerfMetrics.CAPACITY];
+    private volatile long lateSteps;
+
+    /**
+     * Binds to the given port of the loopback address.
+     *
+     * @param room room to host, which must not be touched from elsewhere once the server runs
+     * @param port port to listen on, 0 for any free one
+     * @throws IOException if the port cannot be bound
+     */
+    public RaceServer(RaceRoom room, int port) throws IOException {
+        this(room, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * @param room room to host, which must not be touched from elsewhere once the server runs
+     * @param address address to listen on
+     * @throws IOException if the address cannot be bound
+     */
+    public RaceServer(RaceRoom room, InetSocketAddress address) throws IOException {
+        this.room = room;
+        this.threads = connectionThreads("race");
+        server = ServerSocketChannel.open();
+        server.bind(address);
+        tickThread = new Thread(this::tickLoop, "race-tick");
+        tickThread.setDaemon(true);
+    }
+
+    /**
+     * @param name prefix of the thread names
+     * @return a factory of virtual threads on JDK 21 and later, of daemon platform threads before
+     */
+    public static ThreadFactory connectionThreads(String name) {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // No virtual threads, or only as a preview
+            AtomicInteger count = new AtomicInteger();
+            return runnable -> {
+                Thread thread = new Thread(runnable, name + "-" + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    public RaceRoom getRoom() {
+        return room;
+    }
+
+    /**
+     * Starts accepting players and running steps.
+     */
+    public void start() {
+        running = true;
+        threads.newThread(this::acceptLoop).start();
+        tickThread.start();
+    }
+
+    /**
+     * @return {p50, p99, max} of the time the recent steps took, in nanoseconds
+     */
+    public long[] getTickPercentiles() {
+        synchronized (tickTimes) {
+            return tickTimes.percentiles(sortedTimes);
+        }
+    }
+
+    /**
+     * @return number of steps that started a whole step late
+     */
+    public long getLateSteps() {
+        return lateSteps;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            server.close();
+        } catch (IOException ignore) {
+            // Closing anyway
+        }
+        try {
+            tickThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Connection connection : arrivals) {
+            connection.close();
+        }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                SocketChannel channel = server.accept();
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                Connection connection = new Connection(channel);
+                threads.newThread(connection::readLoop).start();
+                threads.newThread(connection::writeLoop).start();
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Race server stopped accepting: " + e);
+                }
+                return;
+            }
+        }
+    }
+
+    private void tickLoop() {
+        long stepNanos = room.getSimulation().getStepNanos();
+        long deadline = System.nanoTime();
+        ArrivalOrder keys = new ArrivalOrder();
+        while (running) {
+            deadline += stepNanos;
+            long now = System.nanoTime();
+            while (now < deadline && running) {
+                LockSupport.parkNanos(deadline - now);
+                now = System.nanoTime();
+            }
+            if (now - deadline >= stepNanos) {
+                lateSteps++;
+            }
+
+            Connection arrival;
+            while ((arrival = arrivals.poll()) != null) {
+                arrival.player = room.join(arrival.name);
+                connections.add(arrival);
+                arrival.send(room.welcome(arrival.player));
+            }
+            for (int i = connections.size() - 1; i >= 0; i--) {
+                Connection connection = connections.get(i);
+                if (connection.closed) {
+                    room.leave(connection.player);
+                    connections.set(i, connections.get(connections.size() - 1));
+                    connections.remove(connections.size() - 1);
+                    continue;
+                }
+                connection.takeKeys(keys);
+            }
+            keys.applyTo(room);
+
+            byte[] frame = room.step(deadline);
+            for (int i = 0; i < connections.size(); i++) {
+                connections.get(i).send(frame);
+            }
+            long took = System.nanoTime() - deadline;
+            synchronized (tickTimes) {
+                tickTimes.add(took);
+            }
+        }
+        for (Connection connection : connections) {
+            connection.close();
+        }
+    }
+
+    /**
+     * One player's socket.
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private final ArrayBlockingQueue<byte[]> outbox = new ArrayBlockingQueue<>(MAX_BACKLOG + 1);
+        // Keys that came in since the last step, guarded by keyLock
+        private final ReentrantLock keyLock = new ReentrantLock();
+        private final char[] pendingKeys = new char[MAX_KEYS_PER_STEP];
+        // Sequence number of the message each pending key came in
+        private final long[] pendingSequences = new long[MAX_KEYS_PER_STEP];
+        private int pendingCount;
+        private volatile boolean closed;
+        private String name;
+        // Set by the tick thread when the player joins
+        private RaceRoom.Player player;
+
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        private void readLoop() {
+            ByteBuffer buffer = ByteBuffer.allocate(1024);
+            try {
+                while (!closed) {
+                    buffer = RaceProtocol.readFrame(channel, buffer);
+                    while (buffer.hasRemaining()) {
+                        read(buffer);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                // Gone, or sent something that is not the protocol
+            }
+            close();
+        }
+
+        private void read(ByteBuffer buffer) throws IOException {
+            int type = buffer.get();
+            if (type == RaceProtocol.HELLO) {
+                String hello = RaceProtocol.getString(buffer);
+                if (name == null) {
+                    name = hello;
+                    arrivals.add(this);
+                }
+            } else if (type == RaceProtocol.KEYS) {
+                int count = RaceProtocol.getVarInt(buffer);
+                if (count > buffer.remaining()) {
+                    throw new IOException("Keys message longer than its frame");
+                }
+                long sequence = keyMessages.getAndIncrement();
+                keyLock.lock();
+                try {
+                    for (int i = 0; i < count; i++) {
+                        char key = (char) buffer.get();
+                        if (pendingCount < pendingKeys.length) {
+                            pendingSequences[pendingCount] = sequence;
+                            pendingKeys[pendingCount++] = key;
+                        }
+                    }
+                } finally {
+                    keyLock.unlock();
+                }
+            } else {
+                throw new IOException("Unknown race message " + type);
+            }
+        }
+
+        /**
+         * Moves the keys that came in since the last step into the order of the step.
+         */
+        private void takeKeys(ArrivalOrder keys) {
+            keyLock.lock();
+            try {
+                for (int i = 0; i < pendingCount; i++) {
+                    keys.add(player, pendingKeys[i], pendingSequences[i]);
+                }
+                pendingCount = 0;
+            } finally {
+                keyLock.unlock();
+            }
+        }
+
+        /**
+         * Queues a frame for the writer, dropping the connection if it is too far behind.
+         */
+        private void send(byte[] frame) {
+            if (!closed && !outbox.offer(frame)) {
+                close();
+            }
+        }
+
+        private void writeLoop() {
+            List<byte[]> batch = new ArrayList<>(WRITE_BATCH);
+            ByteBuffer[] buffers = new ByteBuffer[WRITE_BATCH];
+            try {
+                while (!closed) {
+                    batch.add(outbox.take());
+                    outbox.drainTo(batch, WRITE_BATCH - 1);
+                    int count = 0;
+                    for (byte[] frame : batch) {
+                        if (frame == CLOSE) {
+                            return;
+                        }
+                        buffers[count++] = ByteBuffer.wrap(frame);
+                    }
+                    batch.clear();
+                    while (buffers[count - 1].hasRemaining()) {
+                        channel.write(buffers, 0, count);
+                    }
+                }
+            } catch (IOException | InterruptedException e) {
+                // Gone
+            } finally {
+                close();
+            }
+        }
+
+        private void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            outbox.clear();
+            outbox.offer(CLOSE);
+            try {
+                channel.close();
+            } catch (IOException ignore) {
+                // Closing anyway
+            }
+        }
+    }
+}
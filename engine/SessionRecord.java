@@ -0,0 +1,181 @@
+package engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The result of one finished game, as kept by a SessionStore.
+ */
+public final class SessionRecord {
+    private static final int LETTERS = 26;
+    // Longest player name that is kept, in bytes
+    private static final int MAX_NAME_BYTES = 255;
+
+    private final String player;
+    private final long timeMillis;
+    private final int score;
+    private final double netWpm;
+    private final double grossWpm;
+    private final double accuracy;
+    private final long durationNanos;
+    private final long spawnIntervalNanos;
+    private final long lifetimeNanos;
+    // Presses and errors per letter, indexed by letter - 'A', empty if not known
+    private final long[] keyPresses;
+    private final long[] keyErrors;
+
+    /**
+     * @param player name of the player
+     * @param timeMillis wall clock time the game ended at
+     * @param score number of words typed
+     * @param netWpm net speed over the whole game
+     * @param grossWpm gross speed over the whole game
+     * @param accuracy share of correct letters, between 0 and 1
+     * @param durationNanos how long the game lasted
+     * @param spawnIntervalNanos time between two words at the end of the game
+     * @param lifetimeNanos time a word floated at the end of the game
+     * @param stats per key statistics of the game, may be null
+     */
+    public SessionRecord(String player, long timeMillis, int score, double netWpm, double grossWpm, double accuracy,
+                         long durationNanos, long spawnIntervalNanos, long lifetimeNanos, TypingStats stats) {
+        this(player, timeMillis, score, netWpm, grossWpm, accuracy, durationNanos, spawnIntervalNanos, lifetimeNanos,
+                new long[stats == null ? 0 : LETTERS], new long[stats == null ? 0 : LETTERS]);
+        if (stats != null) {
+            for (int i = 0; i < LETTERS; i++) {
+                keyPresses[i] = stats.getPresses((char) ('A' + i));
+                keyErrors[i] = stats.getErrors((char) ('A' + i));
+            }
+        }
+    }
+
+    private SessionRecord(String player, long timeMillis, int score, double netWpm, double grossWpm, double accuracy,
+                          long durationNanos, long spawnIntervalNanos, long lifetimeNanos,
+                          long[] keyPresses, long[] keyErrors) {
+        this.player = player;
+        this.timeMillis = timeMillis;
+        this.score = score;
+        this.netWpm = netWpm;
+        this.grossWpm = grossWpm;
+        this.accuracy = accuracy;
+        this.durationNanos = durationNanos;
+        this.spawnIntervalNanos = spawnIntervalNanos;
+        this.lifetimeNanos = lifetimeNanos;
+        this.keyPresses = keyPresses;
+        this.keyErrors = keyErrors;
+    }
+
+    public String getPlayer() {
+        return player;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public double getNetWpm() {
+        return netWpm;
+    }
+
+    public double getGrossWpm() {
+        return grossWpm;
+    }
+
+    public double getAccuracy() {
+        return accuracy;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public long getSpawnIntervalNanos() {
+        return spawnIntervalNanos;
+    }
+
+    public long getLifetimeNanos() {
+        return lifetimeNanos;
+    }
+
+    /**
+     * @return false if the record was stored without per key statistics
+     */
+    public boolean hasKeyStats() {
+        return keyPresses.length == LETTERS;
+    }
+
+    /**
+     * @return presses of the letter, 0 without per key statistics
+     */
+    public long getPresses(char letter) {
+        return hasKeyStats() ? keyPresses[letter - 'A'] : 0;
+    }
+
+    /**
+     * @return errors on the letter, 0 without per key statistics
+     */
+    public long getErrors(char letter) {
+        return hasKeyStats() ? keyErrors[letter - 'A'] : 0;
+    }
+
+    /**
+     * @return the record as bytes
+     */
+    byte[] encode() {
+        byte[] name = player.getBytes(StandardCharsets.UTF_8);
+        int nameLength = Math.min(name.length, MAX_NAME_BYTES);
+        ByteBuffer buffer = ByteBuffer.allocate(1 + nameLength + 8 + 4 + 3 * 8 + 3 * 8 + 1
+                + keyPresses.length * 2 * 8);
+        buffer.put((byte) nameLength);
+        buffer.put(name, 0, nameLength);
+        buffer.putLong(timeMillis);
+        buffer.putInt(score);
+        buffer.putDouble(netWpm);
+        buffer.putDouble(grossWpm);
+        buffer.putDouble(accuracy);
+        buffer.putLong(durationNanos);
+        buffer.putLong(spawnIntervalNanos);
+        buffer.putLong(lifetimeNanos);
+        buffer.put((byte) keyPresses.length);
+        for (int i = 0; i < keyPresses.length; i++) {
+            buffer.putLong(keyPresses[i]);
+            buffer.putLong(keyErrors[i]);
+        }
+        return buffer.array();
+    }
+
+    static SessionRecord decode(ByteBuffer buffer) throws IOException {
+        byte[] name = new byte[buffer.get() & 0xFF];
+        buffer.get(name);
+        long timeMillis = buffer.getLong();
+        int score = buffer.getInt();
+        double netWpm = buffer.getDouble();
+        double grossWpm = buffer.getDouble();
+        double accuracy = buffer.getDouble();
+        long durationNanos = buffer.getLong();
+        long spawnIntervalNanos = buffer.getLong();
+        long lifetimeNanos = buffer.getLong();
+        int keys = buffer.get();
+        if (keys != 0 && keys != LETTERS) {
+            throw new IOException("Session record with " + keys + " keys");
+        }
+        long[] keyPresses = new long[keys];
+        long[] keyErrors = new long[keys];
+        for (int i = 0; i < keys; i++) {
+            keyPresses[i] = buffer.getLong();
+            keyErrors[i] = buffer.getLong();
+        }
+        return new SessionRecord(new String(name, StandardCharsets.UTF_8), timeMillis, score, netWpm, grossWpm,
+                accuracy, durationNanos, spawnIntervalNanos, lifetimeNanos, keyPresses, keyErrors);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d words, %.0f WPM (gross %.0f), accuracy %.0f%%, %.0f s",
+                player, score, netWpm, grossWpm, accuracy * 100, durationNanos / 1e9);
+    }
+}
@@ -0,0 +1,756 @@
+package engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the result of every game in an append-only log and answers
+ * leaderboard and history questions from an index in memory.
+ * <p>
+ * Every record in the log is its length, a CRC32 of its bytes and the
+ * bytes. The index holds what the questions need of every session in
+ * primitive arrays, plus the sessions sorted by score and by speed, so a
+ * top ten is read straight off the front of an array. Closing the store
+ * writes the index next to the log, together with the length of the log
+ * it covers. Opening reads that index and only reads the records that
+ * were appended after it, so a large store opens without reading the log.
+ * A record cut short by a crash ends the log and is cut off.
+ * <p>
+ * add only updates the index and queues the record. A writer thread
+ * appends everything that was queued in one write and forces it to disk
+ * once, so a burst of results costs one disk sync. If a write fails the
+ * writer cuts the log back to the last record it wrote and stops: add and
+ * flush then fail with the error, and so does reading a session that did
+ * not make it into the log. All methods can be called from any thread.
+ */
+public final class SessionStore implements AutoCloseable {
+    static final int LOG_MAGIC = 0x4B535331; // "KSS1"
+    static final int INDEX_MAGIC = 0x4B534931; // "KSI1"
+    static final int VERSION = 1;
+    // Magic, version and the id of the log
+    private static final int LOG_HEADER_BYTES = 4 + 1 + 8;
+    // Length and CRC32 in front of every record
+    private static final int RECORD_HEADER_BYTES = 8;
+    // Largest record accepted when reading the log
+    private static final int MAX_RECORD_BYTES = 1 << 16;
+    // Bytes read at once when the log is read front to back
+    private static final int SCAN_CHUNK_BYTES = 1 << 20;
+    // Put into the queue to stop the writer
+    private static final byte[] STOP = new byte[0];
+
+    /**
+     * What a leaderboard is sorted by.
+     */
+    public enum Ranking {
+        SCORE,
+        NET_WPM
+    }
+
+    private final Path logPath;
+    private final Path indexPath;
+    private final FileChannel log;
+    // Random id written into the log, so an index is never used with another log
+    private long logId;
+
+    // Everything below is guarded by this
+    private int size;
+    private long[] offsets = new long[1024];
+    private long[] times = new long[1024];
+    private int[] scores = new int[1024];
+    private double[] netWpms = new double[1024];
+    private int[] playerOf = new int[1024];
+    // Session indices sorted best first, equal ones in the order they were added
+    private int[] byScore = new int[1024];
+    private int[] byNetWpm = new int[1024];
+    private final List<String> players = new ArrayList<>();
+    private final Map<String, Integer> playerIds = new HashMap<>();
+    // Sessions of every player in the order they were added
+    private final List<int[]> playerSessions = new ArrayList<>();
+    private final List<Integer> playerSessionCounts = new ArrayList<>();
+    // Where the next record goes
+    private long logEnd;
+
+    // Records waiting for the writer and the progress of the writer, guarded by queue
+    private final LinkedBlockingQueue<byte[]> queue = new LinkedBlockingQueue<>();
+    private long queued;
+    private long written;
+    // End of the last record the writer got into the log
+    private long writtenEnd;
+    private IOException error;
+    private final Thread writer;
+    private boolean closed;
+
+    /**
+     * Summary of one stored session.
+     */
+    public static final class Entry {
+        private final int index;
+        private final String player;
+        private final long timeMillis;
+        private final int score;
+        private final double netWpm;
+
+        private Entry(int index, String player, long timeMillis, int score, double netWpm) {
+            this.index = index;
+            this.player = player;
+            this.timeMillis = timeMillis;
+            this.score = score;
+            this.netWpm = netWpm;
+        }
+
+        /**
+         * @return position of the session in the store, 0 is the first one ever added
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public String getPlayer() {
+            return player;
+        }
+
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        public int getScore() {
+            return score;
+        }
+
+        public double getNetWpm() {
+            return netWpm;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d words, %.0f WPM", player, score, netWpm);
+        }
+    }
+
+    private SessionStore(Path logPath) throws IOException {
+        this.logPath = logPath;
+        this.indexPath = logPath.resolveSibling(logPath.getFileName() + ".idx");
+        log = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        writer = new Thread(this::writeLoop, "session-store");
+        writer.setDaemon(true);
+    }
+
+    /**
+     * Opens a store, creating it if it does not exist.
+     *
+     * @param logPath path of the log, the index is kept next to it
+     * @return the open store
+     * @throws IOException if the log cannot be read or created
+     */
+    public static SessionStore open(Path logPath) throws IOException {
+        SessionStore store = new SessionStore(logPath);
+        try {
+            store.load();
+        } catch (IOException | RuntimeException e) {
+            store.log.close();
+            throw e instanceof IOException ? (IOException) e : new IOException("Cannot open " + logPath, e);
+        }
+        store.writtenEnd = store.logEnd;
+        store.writer.start();
+        return store;
+    }
+
+    /**
+     * Stores a session. The leaderboards and histories know of it right
+     * away, it reaches the disk shortly after on the writer thread.
+     *
+     * @param record the session
+     * @throws IOException if an earlier write failed, which stopped the store from writing
+     */
+    public void add(SessionRecord record) throws IOException {
+        byte[] bytes = frame(record.encode());
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Session store is closed");
+            }
+            IOException failure = getError();
+            if (failure != null) {
+                throw new IOException("Session store stopped writing: " + failure.getMessage(), failure);
+            }
+            index(record, logEnd);
+            logEnd += bytes.length;
+            // Queued while still holding the lock, so records reach the log in the order of their offsets
+            synchronized (queue) {
+                queued++;
+                queue.add(bytes);
+            }
+        }
+    }
+
+    /**
+     * @return number of stored sessions
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @param ranking what to sort by
+     * @param count most entries to return
+     * @return the best sessions, best first
+     */
+    public synchronized List<Entry> top(Ranking ranking, int count) {
+        int[] order = ranking == Ranking.SCORE ? byScore : byNetWpm;
+        List<Entry> top = new ArrayList<>(Math.min(count, size));
+        for (int i = 0; i < size && i < count; i++) {
+            top.add(entry(order[i]));
+        }
+        return top;
+    }
+
+    /**
+     * @param ranking what to sort by
+     * @param index position of the session in the store
+     * @return place of the session on the leaderboard, 1 is the best
+     */
+    public synchronized int rank(Ranking ranking, int index) {
+        int[] order = ranking == Ranking.SCORE ? byScore : byNetWpm;
+        return insertionPoint(order, index, ranking) + 1;
+    }
+
+    /**
+     * @param player name of the player
+     * @param count most entries to return
+     * @return the latest sessions of the player, latest first
+     */
+    public synchronized List<Entry> history(String player, int count) {
+        Integer id = playerIds.get(player);
+        if (id == null) {
+            return new ArrayList<>();
+        }
+        int[] sessions = playerSessions.get(id);
+        int sessionCount = playerSessionCounts.get(id);
+        List<Entry> history = new ArrayList<>(Math.min(count, sessionCount));
+        for (int i = sessionCount - 1; i >= 0 && history.size() < count; i--) {
+            history.add(entry(sessions[i]));
+        }
+        return history;
+    }
+
+    /**
+     * Reads the whole record of a session, with its settings and per key statistics.
+     *
+     * @param index position of the session in the store
+     * @return the record
+     * @throws IOException if the record could not be written or cannot be read
+     */
+    public SessionRecord read(int index) throws IOException {
+        long offset;
+        synchronized (this) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("No session " + index);
+            }
+            offset = offsets[index];
+        }
+        synchronized (queue) {
+            // Records the writer got into the log stay readable after a later write failed
+            if (offset >= writtenEnd) {
+                flush();
+            }
+        }
+        ByteBuffer record = readRecord(offset, Long.MAX_VALUE);
+        if (record == null) {
+            throw new IOException("Session " + index + " is damaged");
+        }
+        return SessionRecord.decode(record);
+    }
+
+    /**
+     * Waits until every session added so far is on disk.
+     *
+     * @throws IOException if writing failed
+     */
+    public void flush() throws IOException {
+        synchronized (queue) {
+            while (written < queued && error == null) {
+                try {
+                    queue.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for the session store", e);
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+        }
+    }
+
+    /**
+     * @return the error that stopped the writer, or null
+     */
+    public IOException getError() {
+        synchronized (queue) {
+            return error;
+        }
+    }
+
+    /**
+     * Writes out what is queued, saves the index and closes the log.
+     *
+     * @throws IOException if the sessions or the index could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            flush();
+            saveIndex();
+        } finally {
+            queue.add(STOP);
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            log.close();
+        }
+    }
+
+    private void writeLoop() {
+        List<byte[]> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch);
+            boolean stop = batch.remove(STOP);
+            if (!batch.isEmpty()) {
+                IOException failure;
+                long start;
+                synchronized (queue) {
+                    failure = error;
+                    start = writtenEnd;
+                }
+                long end = start;
+                // Once a write failed nothing is appended anymore, the offsets in the index would be wrong
+                if (failure == null) {
+                    try {
+                        ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+                        for (int i = 0; i < buffers.length; i++) {
+                            buffers[i] = ByteBuffer.wrap(batch.get(i));
+                            end += buffers[i].remaining();
+                        }
+                        while (buffers[buffers.length - 1].hasRemaining()) {
+                            log.write(buffers);
+                        }
+                        log.force(false);
+                    } catch (IOException e) {
+                        failure = e;
+                        try {
+                            // Whatever part of the batch got in goes, the log ends with the last whole record
+                            log.truncate(start);
+                            log.position(start);
+                        } catch (IOException ignore) {
+                            // A record cut short is cut off when the log is opened again
+                        }
+                    }
+                }
+                synchronized (queue) {
+                    if (failure != null && error == null) {
+                        error = failure;
+                    }
+                    if (failure == null) {
+                        writtenEnd = end;
+                    }
+                    written += batch.size();
+                    queue.notifyAll();
+                }
+                batch.clear();
+            }
+            if (stop) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads the saved index if it matches the log, then the records
+     * appended after it.
+     */
+    private void load() throws IOException {
+        long length = log.size();
+        if (length < LOG_HEADER_BYTES) {
+            // New or never got past its header
+            logId = new Random().nextLong();
+            ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_BYTES);
+            header.putInt(LOG_MAGIC).put((byte) VERSION).putLong(logId).flip();
+            log.truncate(0);
+            log.write(header, 0);
+            log.force(false);
+            logEnd = LOG_HEADER_BYTES;
+            log.position(logEnd);
+            return;
+        }
+        ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_BYTES);
+        log.read(header, 0);
+        header.flip();
+        if (header.getInt() != LOG_MAGIC || header.get() != VERSION) {
+            throw new IOException(logPath + " is not a session log");
+        }
+        logId = header.getLong();
+
+        long covered = loadIndex(length);
+        if (covered < 0) {
+            clearIndex();
+            covered = LOG_HEADER_BYTES;
+        }
+        int indexed = size;
+        long offset = scan(covered, length);
+        if (size > indexed) {
+            sort(byScore, Ranking.SCORE);
+            sort(byNetWpm, Ranking.NET_WPM);
+        }
+        if (offset < length) {
+            // Cut short by a crash, later records go where it started
+            log.truncate(offset);
+        }
+        logEnd = offset;
+        log.position(logEnd);
+    }
+
+    /**
+     * Indexes the records from the offset on, reading the log front to
+     * back in large chunks. The leaderboards are left for sort.
+     *
+     * @return offset after the last complete and intact record
+     */
+    private long scan(long offset, long length) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(SCAN_CHUNK_BYTES);
+        chunk.limit(0);
+        CRC32 check = new CRC32();
+        while (fill(chunk, offset, RECORD_HEADER_BYTES, length)) {
+            int start = chunk.position();
+            int size = chunk.getInt(start);
+            int crc = chunk.getInt(start + 4);
+            if (size < 0 || size > MAX_RECORD_BYTES || !fill(chunk, offset, RECORD_HEADER_BYTES + size, length)) {
+                break;
+            }
+            start = chunk.position();
+            check.reset();
+            check.update(chunk.array(), start + RECORD_HEADER_BYTES, size);
+            if ((int) check.getValue() != crc) {
+                break;
+            }
+            ByteBuffer record = ByteBuffer.wrap(chunk.array(), start + RECORD_HEADER_BYTES, size).slice();
+            index(SessionRecord.decode(record), offset, false);
+            chunk.position(start + RECORD_HEADER_BYTES + size);
+            offset += RECORD_HEADER_BYTES + size;
+        }
+        return offset;
+    }
+
+    /**
+     * Makes sure the chunk holds the given number of bytes from the
+     * offset on, reading more of the log if it does not.
+     *
+     * @param chunk bytes of the log, its position is at the offset
+     * @return false if the log ends before that
+     */
+    private boolean fill(ByteBuffer chunk, long offset, int bytes, long length) throws IOException {
+        if (chunk.remaining() >= bytes) {
+            return true;
+        }
+        if (offset + bytes > length) {
+            return false;
+        }
+        chunk.compact();
+        while (chunk.hasRemaining()) {
+            if (log.read(chunk, offset + chunk.position()) <= 0) {
+                break;
+            }
+        }
+        chunk.flip();
+        return chunk.remaining() >= bytes;
+    }
+
+    /**
+     * @return the record at the offset, or null if there is no complete and intact record
+     */
+    private ByteBuffer readRecord(long offset, long length) throws IOException {
+        if (offset + RECORD_HEADER_BYTES > length) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+        if (readFully(header, offset) < RECORD_HEADER_BYTES) {
+            return null;
+        }
+        int size = header.getInt(0);
+        int crc = header.getInt(4);
+        if (size < 0 || size > MAX_RECORD_BYTES || offset + RECORD_HEADER_BYTES + size > length) {
+            return null;
+        }
+        ByteBuffer record = ByteBuffer.allocate(size);
+        if (readFully(record, offset + RECORD_HEADER_BYTES) < size) {
+            return null;
+        }
+        CRC32 check = new CRC32();
+        check.update(record.array(), 0, size);
+        if ((int) check.getValue() != crc) {
+            return null;
+        }
+        record.flip();
+        return record;
+    }
+
+    private int readFully(ByteBuffer buffer, long offset) throws IOException {
+        int read = 0;
+        while (buffer.hasRemaining()) {
+            int bytes = log.read(buffer, offset + read);
+            if (bytes < 0) {
+                break;
+            }
+            read += bytes;
+        }
+        return read;
+    }
+
+    private static byte[] frame(byte[] record) {
+        CRC32 check = new CRC32();
+        check.update(record);
+        ByteBuffer framed = ByteBuffer.allocate(RECORD_HEADER_BYTES + record.length);
+        framed.putInt(record.length);
+        framed.putInt((int) check.getValue());
+        framed.put(record);
+        return framed.array();
+    }
+
+    private void index(SessionRecord record, long offset) {
+        index(record, offset, true);
+    }
+
+    /**
+     * Adds a session to the index.
+     *
+     * @param ranked false to only append it to the leaderboards, which then have to be sorted
+     */
+    private void index(SessionRecord record, long offset, boolean ranked) {
+        if (size == offsets.length) {
+            int capacity = size * 2;
+            offsets = Arrays.copyOf(offsets, capacity);
+            times = Arrays.copyOf(times, capacity);
+            scores = Arrays.copyOf(scores, capacity);
+            netWpms = Arrays.copyOf(netWpms, capacity);
+            playerOf = Arrays.copyOf(playerOf, capacity);
+            byScore = Arrays.copyOf(byScore, capacity);
+            byNetWpm = Arrays.copyOf(byNetWpm, capacity);
+        }
+        int index = size;
+        offsets[index] = offset;
+        times[index] = record.getTimeMillis();
+        scores[index] = record.getScore();
+        netWpms[index] = record.getNetWpm();
+        int player = playerId(record.getPlayer());
+        playerOf[index] = player;
+        addSession(player, index);
+        if (ranked) {
+            insertSorted(byScore, index, Ranking.SCORE);
+            insertSorted(byNetWpm, index, Ranking.NET_WPM);
+        } else {
+            byScore[index] = index;
+            byNetWpm[index] = index;
+        }
+        size++;
+    }
+
+    private int playerId(String player) {
+        Integer id = playerIds.get(player);
+        if (id == null) {
+            id = players.size();
+            players.add(player);
+            playerIds.put(player, id);
+            playerSessions.add(new int[4]);
+            playerSessionCounts.add(0);
+        }
+        return id;
+    }
+
+    private void addSession(int player, int index) {
+        int[] sessions = playerSessions.get(player);
+        int count = playerSessionCounts.get(player);
+        if (count == sessions.length) {
+            sessions = Arrays.copyOf(sessions, count * 2);
+            playerSessions.set(player, sessions);
+        }
+        sessions[count] = index;
+        playerSessionCounts.set(player, count + 1);
+    }
+
+    /**
+     * Inserts a session behind every session that is at least as good.
+     */
+    private void insertSorted(int[] order, int index, Ranking ranking) {
+        int position = insertionPoint(order, index, ranking);
+        System.arraycopy(order, position, order, position + 1, size - position);
+        order[position] = index;
+    }
+
+    /**
+     * Sorts a whole leaderboard, faster than inserting many sessions one by one.
+     */
+    private void sort(int[] order, Ranking ranking) {
+        Integer[] sorted = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = order[i];
+        }
+        Arrays.sort(sorted, (first, second) -> first.equals(second) ? 0 : better(first, second, ranking) ? -1 : 1);
+        for (int i = 0; i < size; i++) {
+            order[i] = sorted[i];
+        }
+    }
+
+    /**
+     * @return number of sessions among the first size of order that are at least as good as the session
+     */
+    private int insertionPoint(int[] order, int index, Ranking ranking) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int other = order[middle];
+            if (other != index && !better(index, other, ranking)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return true if the first session ranks above the second, earlier sessions win ties
+     */
+    private boolean better(int first, int second, Ranking ranking) {
+        int compare = ranking == Ranking.SCORE
+                ? Integer.compare(scores[first], scores[second])
+                : Double.compare(netWpms[first], netWpms[second]);
+        return compare > 0 || (compare == 0 && first < second);
+    }
+
+    private Entry entry(int index) {
+        return new Entry(index, players.get(playerOf[index]), times[index], scores[index], netWpms[index]);
+    }
+
+    private void clearIndex() {
+        size = 0;
+        players.clear();
+        playerIds.clear();
+        playerSessions.clear();
+        playerSessionCounts.clear();
+    }
+
+    /**
+     * Writes the index into a temporary file and moves it over the old one.
+     */
+    private void saveIndex() throws IOException {
+        ByteBuffer buffer;
+        synchronized (this) {
+            int bytes = 4 + 1 + 8 + 8 + 4 + 4 + size * (8 + 8 + 4 + 8 + 4 + 4 + 4);
+            for (String player : players) {
+                bytes += 4 + player.getBytes(StandardCharsets.UTF_8).length;
+            }
+            buffer = ByteBuffer.allocate(bytes);
+            buffer.putInt(INDEX_MAGIC).put((byte) VERSION).putLong(logId).putLong(logEnd);
+            buffer.putInt(players.size());
+            for (String player : players) {
+                byte[] name = player.getBytes(StandardCharsets.UTF_8);
+                buffer.putInt(name.length).put(name);
+            }
+            buffer.putInt(size);
+            for (int i = 0; i < size; i++) {
+                buffer.putLong(offsets[i]).putLong(times[i]).putInt(scores[i]).putDouble(netWpms[i])
+                        .putInt(playerOf[i]).putInt(byScore[i]).putInt(byNetWpm[i]);
+            }
+        }
+        buffer.flip();
+        Path temporary = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        Files.move(temporary, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @param logLength current length of the log
+     * @return length of the log the saved index covers, -1 if there is no usable index
+     */
+    private long loadIndex(long logLength) {
+        if (!Files.exists(indexPath)) {
+            return -1;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(indexPath));
+            if (buffer.getInt() != INDEX_MAGIC || buffer.get() != VERSION || buffer.getLong() != logId) {
+                return -1;
+            }
+            long covered = buffer.getLong();
+            if (covered < LOG_HEADER_BYTES || covered > logLength) {
+                return -1;
+            }
+            int playerCount = buffer.getInt();
+            for (int i = 0; i < playerCount; i++) {
+                byte[] name = new byte[buffer.getInt()];
+                buffer.get(name);
+                playerId(new String(name, StandardCharsets.UTF_8));
+            }
+            int count = buffer.getInt();
+            int capacity = Math.max(1024, Integer.highestOneBit(Math.max(1, count)) * 2);
+            offsets = new long[capacity];
+            times = new long[capacity];
+            scores = new int[capacity];
+            netWpms = new double[capacity];
+            playerOf = new int[capacity];
+            byScore = new int[capacity];
+            byNetWpm = new int[capacity];
+            for (int i = 0; i < count; i++) {
+                offsets[i] = buffer.getLong();
+                times[i] = buffer.getLong();
+                scores[i] = buffer.getInt();
+                netWpms[i] = buffer.getDouble();
+                playerOf[i] = buffer.getInt();
+                byScore[i] = buffer.getInt();
+                byNetWpm[i] = buffer.getInt();
+                if (playerOf[i] < 0 || playerOf[i] >= playerCount || byScore[i] < 0 || byScore[i] >= count
+                        || byNetWpm[i] < 0 || byNetWpm[i] >= count) {
+                    return -1;
+                }
+                addSession(playerOf[i], i);
+            }
+            size = count;
+            return covered;
+        } catch (IOException | RuntimeException e) {
+            // Damaged, read the whole log instead
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package engine;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid over the field, used to find words that are close to each
+ * other without checking every pair. Boxes are inserted into every cell
+ * they overlap. The grid is rebuilt from scratch every step, which is
+ * cheaper than updating it for words that all move every step. Nothing
+ * is allocated once the arrays are big enough.
+ */
+final class SpatialGrid {
+    /**
+     * Receives pairs of overlapping boxes.
+     */
+    interface PairVisitor {
+        void visit(int a, int b);
+    }
+
+    private static final int NONE = -1;
+
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+    // First entry of every cell
+    private final int[] cellHead;
+    // Per entry, the next entry in the same cell and the box it belongs to
+    private int[] entryNext;
+    private int[] entryBox;
+    private int entryCount;
+    // Per box, its bounds
+    private double[] boxX;
+    private double[] boxY;
+    private double[] boxRight;
+    private double[] boxBottom;
+    private int boxCount;
+
+    SpatialGrid(double width, double height, double cellSize) {
+        this.cellSize = cellSize;
+        columns = Math.max(1, (int) Math.ceil(width / cellSize));
+        rows = Math.max(1, (int) Math.ceil(height / cellSize));
+        cellHead = new int[columns * rows];
+        Arrays.fill(cellHead, NONE);
+        entryNext = new int[64];
+        entryBox = new int[64];
+        boxX = new double[16];
+        boxY = new double[16];
+        boxRight = new double[16];
+        boxBottom = new double[16];
+    }
+
+    void clear() {
+        Arrays.fill(cellHead, NONE);
+        entryCount = 0;
+        boxCount = 0;
+    }
+
+    /**
+     * Adds a box, boxes are numbered in the order they are inserted.
+     * @return number of the box
+     */
+    int insert(double x, double y, double width, double height) {
+        if (boxCount == boxX.length) {
+            int capacity = boxCount * 2;
+            boxX = Arrays.copyOf(boxX, capacity);
+            boxY = Arrays.copyOf(boxY, capacity);
+            boxRight = Arrays.copyOf(boxRight, capacity);
+            boxBottom = Arrays.copyOf(boxBottom, capacity);
+        }
+        int box = boxCount++;
+        boxX[box] = x;
+        boxY[box] = y;
+        boxRight[box] = x + width;
+        boxBottom[box] = y + height;
+
+        int firstColumn = column(x);
+        int lastColumn = column(x + width);
+        int firstRow = row(y);
+        int lastRow = row(y + height);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                if (entryCount == entryNext.length) {
+                    entryNext = Arrays.copyOf(entryNext, entryCount * 2);
+                    entryBox = Arrays.copyOf(entryBox, entryCount * 2);
+                }
+                int cell = row * columns + column;
+                entryBox[entryCount] = box;
+                entryNext[entryCount] = cellHead[cell];
+                cellHead[cell] = entryCount++;
+            }
+        }
+        return box;
+    }
+
+    /**
+     * @return number of boxes that overlap the given area, counting a box
+     * once for every cell they share
+     */
+    int crowding(double x, double y, double width, double height) {
+        int count = 0;
+        for (int row = row(y); row <= row(y + height); row++) {
+            for (int column = column(x); column <= column(x + width); column++) {
+                for (int entry = cellHead[row * columns + column]; entry != NONE; entry = entryNext[entry]) {
+                    int box = entryBox[entry];
+                    if (boxX[box] < x + width && x < boxRight[box] && boxY[box] < y + height && y < boxBottom[box]) {
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Calls the visitor once for every pair of overlapping boxes. A pair
+     * that shares several cells is only reported by the cell holding the
+     * top left corner of their intersection.
+     */
+    void forEachOverlappingPair(PairVisitor visitor) {
+        for (int cell = 0; cell < cellHead.length; cell++) {
+            for (int first = cellHead[cell]; first != NONE; first = entryNext[first]) {
+                int a = entryBox[first];
+                for (int second = entryNext[first]; second != NONE; second = entryNext[second]) {
+                    int b = entryBox[second];
+                    double left = Math.max(boxX[a], boxX[b]);
+                    double top = Math.max(boxY[a], boxY[b]);
+                    if (left < Math.min(boxRight[a], boxRight[b]) && top < Math.min(boxBottom[a], boxBottom[b])
+                            && row(top) * columns + column(left) == cell) {
+                        visitor.visit(a, b);
+                    }
+                }
+            }
+        }
+    }
+
+    private int column(double x) {
+        return Math.min(columns - 1, Math.max(0, (int) (x / cellSize)));
+    }
+
+    private int row(double y) {
+        return Math.min(rows - 1, Math.max(0, (int) (y / cellSize)));
+    }
+}
@@ -0,0 +1,179 @@
+package engine;
+
+import java.util.Random;
+
+/**
+ * Decides when the next word spawns. Spawns are planned on the simulation
+ * clock, one interval after the previous spawn, so spawns are never lost
+ * or bunched up, not even when the rate changes between two of them.
+ * Intervals can be as short as MIN_INTERVAL_NANOS, shorter than a step
+ * too, which spawns several words in one step.
+ * <p>
+ * Every interval can be stretched or shrunk at random by up to the jitter.
+ * In adaptive mode the interval follows the player: it grows while there
+ * are more words on the screen than the target, or while fewer words are
+ * hit than the target share, and shrinks otherwise.
+ */
+public final class SpawnScheduler {
+    /**
+     * What adaptive mode tries to keep at its target.
+     */
+    public enum Target {
+        // Number of words that can still be typed
+        ACTIVE_WORDS,
+        // Share of words that are hit rather than expired, between 0 and 1
+        HIT_RATE
+    }
+
+    // Shortest interval that can be set, about 170 words per step of 60 Hz
+    public static final long MIN_INTERVAL_NANOS = GameSimulation.NANOS_PER_SECOND / 10_000;
+    // Most words spawned in one step, the rest spawn in the steps after it
+    public static final int MAX_SPAWNS_PER_STEP = 256;
+    // Bounds of the interval in adaptive mode
+    public static final long MIN_ADAPTIVE_NANOS = GameSimulation.NANOS_PER_SECOND / 20;
+    public static final long MAX_ADAPTIVE_NANOS = 10 * GameSimulation.NANOS_PER_SECOND;
+    // How strongly adaptive mode corrects the interval per second
+    private static final double ACTIVE_WORDS_GAIN = 0.2;
+    private static final double HIT_RATE_GAIN = 0.2;
+    // Weight of the newest word in the running hit rate
+    private static final double HIT_RATE_SMOOTHING = 0.1;
+
+    private long intervalNanos;
+    // Largest share an interval is stretched or shrunk by at random
+    private double jitter;
+    // What adaptive mode follows, null when the interval is fixed
+    private Target target;
+    private double targetValue;
+    // Running share of words that were hit, starts at the target
+    private double hitRate;
+
+    // Time of the previous spawn, only valid once there was one
+    private long lastSpawnNanos;
+    private boolean spawnedBefore;
+    private long nextSpawnNanos;
+    // Random factor of the interval up to the next spawn
+    private double nextJitter = 1;
+
+    /**
+     * @param intervalNanos time between two spawns, at least MIN_INTERVAL_NANOS
+     */
+    public SpawnScheduler(long intervalNanos) {
+        setIntervalNanos(intervalNanos, 0);
+    }
+
+    public long getIntervalNanos() {
+        return intervalNanos;
+    }
+
+    /**
+     * Changes the interval. The next spawn is counted from the previous
+     * one, or comes right away if that is already past. Before the first
+     * spawn the first spawn stays where it is.
+     *
+     * @param intervalNanos time between two spawns, at least MIN_INTERVAL_NANOS
+     * @param nowNanos current simulation time
+     */
+    public void setIntervalNanos(long intervalNanos, long nowNanos) {
+        if (intervalNanos < MIN_INTERVAL_NANOS) {
+            throw new IllegalArgumentException("intervalNanos must be at least " + MIN_INTERVAL_NANOS);
+        }
+        this.intervalNanos = intervalNanos;
+        if (spawnedBefore) {
+            nextSpawnNanos = Math.max(lastSpawnNanos + jittered(), nowNanos);
+        }
+    }
+
+    public double getJitter() {
+        return jitter;
+    }
+
+    /**
+     * @param jitter largest share an interval is stretched or shrunk by at random, between 0 and 1
+     */
+    public void setJitter(double jitter) {
+        if (jitter < 0 || jitter >= 1) {
+            throw new IllegalArgumentException("jitter must be at least 0 and less than 1");
+        }
+        this.jitter = jitter;
+    }
+
+    public Target getTarget() {
+        return target;
+    }
+
+    public double getTargetValue() {
+        return targetValue;
+    }
+
+    /**
+     * @param target what the interval should follow, null for a fixed interval
+     * @param value number of words or share of hits to keep
+     */
+    public void setTarget(Target target, double value) {
+        this.target = target;
+        this.targetValue = value;
+        hitRate = target == Target.HIT_RATE ? value : 0;
+    }
+
+    /**
+     * @return true if a word should spawn at the given time
+     */
+    boolean isDue(long nowNanos) {
+        return nextSpawnNanos <= nowNanos;
+    }
+
+    /**
+     * Plans the spawn after the one that is due, adapting the interval
+     * first. The correction is scaled by the time since the previous
+     * spawn, so fast spawning does not correct faster than the hit rate
+     * and the word count can follow.
+     *
+     * @param random random of the simulation, so jitter stays reproducible
+     * @param activeWords words that can still be typed
+     */
+    void spawned(Random random, int activeWords) {
+        double seconds = (double) jittered() / GameSimulation.NANOS_PER_SECOND;
+        if (target == Target.ACTIVE_WORDS) {
+            adapt(Math.pow((activeWords + 1.0) / (targetValue + 1.0), ACTIVE_WORDS_GAIN * seconds));
+        } else if (target == Target.HIT_RATE) {
+            adapt(Math.exp((targetValue - hitRate) * HIT_RATE_GAIN * seconds));
+        }
+        nextJitter = jitter == 0 ? 1 : 1 + jitter * (2 * random.nextDouble() - 1);
+        lastSpawnNanos = nextSpawnNanos;
+        spawnedBefore = true;
+        nextSpawnNanos += jittered();
+    }
+
+    /**
+     * Puts the due spawn off until the given time, when there was nothing to spawn.
+     */
+    void delay(long nowNanos) {
+        nextSpawnNanos = Math.max(nextSpawnNanos, nowNanos);
+    }
+
+    /**
+     * Starts spawning again after a pause, without catching up on the
+     * spawns the pause skipped.
+     */
+    void resume(long nowNanos) {
+        if (nextSpawnNanos < nowNanos) {
+            nextSpawnNanos = nowNanos;
+            lastSpawnNanos = nowNanos - jittered();
+        }
+    }
+
+    /**
+     * @param hit true if a word was hit, false if it expired
+     */
+    void resolved(boolean hit) {
+        hitRate += ((hit ? 1 : 0) - hitRate) * HIT_RATE_SMOOTHING;
+    }
+
+    private void adapt(double factor) {
+        intervalNanos = Math.max(MIN_ADAPTIVE_NANOS, Math.min(MAX_ADAPTIVE_NANOS, Math.round(intervalNanos * factor)));
+    }
+
+    private long jittered() {
+        return Math.max(1, Math.round(intervalNanos * nextJitter));
+    }
+}
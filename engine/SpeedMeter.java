@@ -0,0 +1,208 @@
+package engine;
+
+import java.util.Arrays;
+
+/**
+ * Typing speed and accuracy, over the whole session and over sliding
+ * windows of the last seconds. Speeds are in the standard words of five
+ * characters per minute. Every hit word also counts one character for
+ * the space that would separate it from the next word.
+ * <ul>
+ * <li>Gross speed counts every typed letter.</li>
+ * <li>Net speed only counts the letters of words that were hit.</li>
+ * <li>Accuracy is the share of typed letters that kept the typed text on
+ * track for some word.</li>
+ * </ul>
+ * Times come from a monotonic clock such as System.nanoTime. Once the
+ * meter is stopped every reading is taken at the stop time, so the final
+ * report shows what the live view showed last. Keys are counted per
+ * second in ring buffers, so recording never allocates.
+ */
+public final class SpeedMeter {
+    // Characters in a standard word
+    public static final double CHARACTERS_PER_WORD = 5;
+    // Longest window that can be asked for, in seconds
+    public static final int MAX_WINDOW_SECONDS = 60;
+    private static final long SECOND = GameSimulation.NANOS_PER_SECOND;
+    private static final int BUCKETS = MAX_WINDOW_SECONDS + 1;
+
+    // Per second counts, indexed by second % BUCKETS
+    private final long[] typedBuckets = new long[BUCKETS];
+    private final long[] correctBuckets = new long[BUCKETS];
+    private final long[] netBuckets = new long[BUCKETS];
+    // Second the newest bucket belongs to
+    private long currentSecond;
+
+    private long typed;
+    private long correct;
+    private long net;
+    private long startNanos;
+    private long stopNanos;
+    private boolean started;
+    private boolean stopped;
+
+    /**
+     * Starts measuring, forgetting everything measured before.
+     * @param nanos current time
+     */
+    public void start(long nanos) {
+        Arrays.fill(typedBuckets, 0);
+        Arrays.fill(correctBuckets, 0);
+        Arrays.fill(netBuckets, 0);
+        currentSecond = 0;
+        typed = 0;
+        correct = 0;
+        net = 0;
+        startNanos = nanos;
+        started = true;
+        stopped = false;
+    }
+
+    /**
+     * Stops measuring, later keys are ignored and every reading is taken at this time.
+     * @param nanos current time
+     */
+    public void stop(long nanos) {
+        if (started && !stopped) {
+            stopNanos = Math.max(nanos, startNanos);
+            stopped = true;
+        }
+    }
+
+    public boolean isRunning() {
+        return started && !stopped;
+    }
+
+    /**
+     * @param correct false if the typed letters no longer start any word
+     * @param nanos time the key was pressed
+     */
+    public void letter(boolean correct, long nanos) {
+        if (!isRunning()) {
+            return;
+        }
+        int bucket = bucket(nanos);
+        typed++;
+        typedBuckets[bucket]++;
+        if (correct) {
+            this.correct++;
+            correctBuckets[bucket]++;
+        }
+    }
+
+    /**
+     * @param length number of letters of the word that was hit
+     * @param nanos time of the key that completed the word
+     */
+    public void hit(int length, long nanos) {
+        if (!isRunning()) {
+            return;
+        }
+        net += length + 1;
+        netBuckets[bucket(nanos)] += length + 1;
+    }
+
+    /**
+     * @param nanos current time
+     * @return time measured so far, up to the stop time
+     */
+    public long getElapsedNanos(long nanos) {
+        if (!started) {
+            return 0;
+        }
+        return Math.max(0, (stopped ? stopNanos : nanos) - startNanos);
+    }
+
+    /**
+     * @param nanos current time
+     * @param windowSeconds length of the window, 0 for the whole session
+     * @return words per minute counting every typed letter
+     */
+    public double getGrossWpm(long nanos, int windowSeconds) {
+        return wpm(nanos, windowSeconds, typed, typedBuckets);
+    }
+
+    /**
+     * @param nanos current time
+     * @param windowSeconds length of the window, 0 for the whole session
+     * @return words per minute counting the letters of hit words
+     */
+    public double getNetWpm(long nanos, int windowSeconds) {
+        return wpm(nanos, windowSeconds, net, netBuckets);
+    }
+
+    /**
+     * @return share of typed letters that were correct over the whole session, 1 without letters
+     */
+    public double getAccuracy() {
+        return typed == 0 ? 1 : (double) correct / typed;
+    }
+
+    /**
+     * @param nanos current time
+     * @param windowSeconds length of the window
+     * @return share of the letters typed in the window that were correct, 1 without letters
+     */
+    public double getAccuracy(long nanos, int windowSeconds) {
+        long windowTyped = windowSum(nanos, windowSeconds, typedBuckets);
+        return windowTyped == 0 ? 1 : (double) windowSum(nanos, windowSeconds, correctBuckets) / windowTyped;
+    }
+
+    /**
+     * @param nanos current time
+     * @return net speed of the session and of the last 10 and 60 seconds, gross speed and accuracy
+     */
+    public String summary(long nanos) {
+        return String.format("%.0f WPM (10s %.0f, 60s %.0f)  gross %.0f  accuracy %.0f%%",
+                getNetWpm(nanos, 0), getNetWpm(nanos, 10), getNetWpm(nanos, 60),
+                getGrossWpm(nanos, 0), getAccuracy() * 100);
+    }
+
+    private double wpm(long nanos, int windowSeconds, long total, long[] buckets) {
+        long elapsed = getElapsedNanos(nanos);
+        if (elapsed <= 0) {
+            return 0;
+        }
+        if (windowSeconds <= 0) {
+            return total / CHARACTERS_PER_WORD * 60.0 * SECOND / elapsed;
+        }
+        // The window holds the older seconds whole and the current one so far
+        long span = Math.min(elapsed, (windowSeconds - 1) * SECOND + elapsed % SECOND);
+        if (span <= 0) {
+            return 0;
+        }
+        return windowSum(nanos, windowSeconds, buckets) / CHARACTERS_PER_WORD * 60.0 * SECOND / span;
+    }
+
+    private long windowSum(long nanos, int windowSeconds, long[] buckets) {
+        if (!started) {
+            return 0;
+        }
+        long second = getElapsedNanos(nanos) / SECOND;
+        long sum = 0;
+        for (long s = Math.max(0, second - Math.min(windowSeconds, MAX_WINDOW_SECONDS) + 1); s <= second; s++) {
+            // Buckets of seconds without keys since the newest one have not been cleared yet
+            if (s <= currentSecond && currentSecond - s < BUCKETS) {
+                sum += buckets[(int) (s % BUCKETS)];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * @return bucket of the given time, clearing the buckets of the seconds skipped since the last key
+     */
+    private int bucket(long nanos) {
+        long second = Math.max(0, nanos - startNanos) / SECOND;
+        if (second > currentSecond) {
+            for (long s = Math.max(currentSecond + 1, second - BUCKETS + 1); s <= second; s++) {
+                int bucket = (int) (s % BUCKETS);
+                typedBuckets[bucket] = 0;
+                correctBuckets[bucket] = 0;
+                netBuckets[bucket] = 0;
+            }
+            currentSecond = second;
+        }
+        return (int) (Math.min(second, currentSecond) % BUCKETS);
+    }
+}
@@ -0,0 +1,42 @@
+package engine;
+
+/**
+ * Tells the simulation how much room a word takes on the screen.
+ */
+public interface TextMeasure {
+    /**
+     * Rough guess for the 28px font the words are shown in, used until
+     * the renderer supplies real measurements.
+     */
+    TextMeasure ESTIMATE = new TextMeasure() {
+        @Override
+        public double width(String word) {
+            return 19 * word.length();
+        }
+
+        @Override
+        public double height() {
+            return 36;
+        }
+    };
+
+    /**
+     * @param word upper case word
+     * @return width of the word in pixels
+     */
+    double width(String word);
+
+    /**
+     * @param words dictionary the word is spawned from
+     * @param index index of the word in the dictionary
+     * @return width of the word in pixels
+     */
+    default double width(WordDictionary words, int index) {
+        return width(words.word(index));
+    }
+
+    /**
+     * @return height of a word in pixels
+     */
+    double height();
+}
@@ -0,0 +1,245 @@
+package engine;
+
+import java.util.Arrays;
+
+/**
+ * Per-key and per-bigram typing statistics, updated on every key press.
+ * Everything is counted in primitive arrays indexed by letter - 'A', so
+ * recording a key is a handful of array writes and never allocates.
+ * <p>
+ * A letter counts as an error if the typed letters no longer start any
+ * word once it is added. The time of a key is the time since the key
+ * before it. Pauses longer than MAX_GAP_NANOS are not counted as typing
+ * time, and a backspace breaks the bigram chain.
+ */
+public final class TypingStats {
+    private static final int LETTERS = 26;
+    // Longer pauses between two keys are not counted as typing time
+    public static final long MAX_GAP_NANOS = 2 * GameSimulation.NANOS_PER_SECOND;
+    // Presses a key needs before its heat is worked out
+    private static final int MIN_PRESSES = 5;
+    // Error rate at which a key is as hot as it gets
+    private static final double FULL_HEAT_ERROR_RATE = 0.25;
+
+    private final long[] presses = new long[LETTERS];
+    private final long[] errors = new long[LETTERS];
+    // Times a letter was erased with backspace
+    private final long[] corrections = new long[LETTERS];
+    // Timed presses of each letter and the sum of their times
+    private final long[] timedPresses = new long[LETTERS];
+    private final long[] timeSum = new long[LETTERS];
+    // Indexed by first * LETTERS + second
+    private final long[] bigramCount = new long[LETTERS * LETTERS];
+    private final long[] bigramTimeSum = new long[LETTERS * LETTERS];
+    private final long[] rowPresses = new long[KeyLayout.ROWS.length];
+    private final long[] rowErrors = new long[KeyLayout.ROWS.length];
+    private long backspaces;
+
+    // Time of the previous key, 0 before the first one
+    private long lastNanos;
+    // Previous letter - 'A', -1 if the previous key was not a letter
+    private int lastLetter = -1;
+
+    /**
+     * Records a typed letter.
+     *
+     * @param letter upper case letter
+     * @param correct false if the typed letters no longer start any word
+     * @param nanos time the key was pressed, from System.nanoTime
+     */
+    public void letter(char letter, boolean correct, long nanos) {
+        if (letter < 'A' || letter > 'Z') {
+            return;
+        }
+        int index = letter - 'A';
+        int row = KeyLayout.row(letter);
+        presses[index]++;
+        rowPresses[row]++;
+        if (!correct) {
+            errors[index]++;
+            rowErrors[row]++;
+        }
+
+        long gap = nanos - lastNanos;
+        if (lastNanos != 0 && gap >= 0 && gap <= MAX_GAP_NANOS) {
+            timedPresses[index]++;
+            timeSum[index] += gap;
+            if (lastLetter >= 0) {
+                bigramCount[lastLetter * LETTERS + index]++;
+                bigramTimeSum[lastLetter * LETTERS + index] += gap;
+            }
+        }
+        lastNanos = nanos;
+        lastLetter = index;
+    }
+
+    /**
+     * Records a backspace.
+     *
+     * @param erased letter the backspace removes, or 0 if nothing was typed
+     * @param nanos time the key was pressed, from System.nanoTime
+     */
+    public void backspace(char erased, long nanos) {
+        backspaces++;
+        if (erased >= 'A' && erased <= 'Z') {
+            corrections[erased - 'A']++;
+        }
+        lastNanos = nanos;
+        lastLetter = -1;
+    }
+
+    /**
+     * Forgets everything recorded so far.
+     */
+    public void reset() {
+        Arrays.fill(presses, 0);
+        Arrays.fill(errors, 0);
+        Arrays.fill(corrections, 0);
+        Arrays.fill(timedPresses, 0);
+        Arrays.fill(timeSum, 0);
+        Arrays.fill(bigramCount, 0);
+        Arrays.fill(bigramTimeSum, 0);
+        Arrays.fill(rowPresses, 0);
+        Arrays.fill(rowErrors, 0);
+        backspaces = 0;
+        lastNanos = 0;
+        lastLetter = -1;
+    }
+
+    public long getPresses(char letter) {
+        return presses[letter - 'A'];
+    }
+
+    public long getErrors(char letter) {
+        return errors[letter - 'A'];
+    }
+
+    public long getCorrections(char letter) {
+        return corrections[letter - 'A'];
+    }
+
+    public long getBackspaces() {
+        return backspaces;
+    }
+
+    /**
+     * @return share of the presses of the letter that were errors, 0 without presses
+     */
+    public double getErrorRate(char letter) {
+        int index = letter - 'A';
+        return presses[index] == 0 ? 0 : (double) errors[index] / presses[index];
+    }
+
+    /**
+     * @return average time from the key before to this letter, 0 if never timed
+     */
+    public double getMeanNanos(char letter) {
+        int index = letter - 'A';
+        return timedPresses[index] == 0 ? 0 : (double) timeSum[index] / timedPresses[index];
+    }
+
+    public long getBigramCount(char first, char second) {
+        return bigramCount[(first - 'A') * LETTERS + second - 'A'];
+    }
+
+    /**
+     * @return average time from the first letter to the second, 0 if never typed in a row
+     */
+    public double getBigramMeanNanos(char first, char second) {
+        int index = (first - 'A') * LETTERS + second - 'A';
+        return bigramCount[index] == 0 ? 0 : (double) bigramTimeSum[index] / bigramCount[index];
+    }
+
+    /**
+     * @param row row of KeyLayout.ROWS, 0 is the top row
+     * @return share of the letters of the row that were typed correctly, 1 without presses
+     */
+    public double getRowAccuracy(int row) {
+        return rowPresses[row] == 0 ? 1 : 1 - (double) rowErrors[row] / rowPresses[row];
+    }
+
+    /**
+     * @return share of all letters that were typed correctly, 1 without presses
+     */
+    public double getAccuracy() {
+        long total = 0;
+        long wrong = 0;
+        for (int row = 0; row < rowPresses.length; row++) {
+            total += rowPresses[row];
+            wrong += rowErrors[row];
+        }
+        return total == 0 ? 1 : 1 - (double) wrong / total;
+    }
+
+    /**
+     * How much trouble a key gives, for a heatmap. Half comes from its
+     * error rate, half from how much slower it is than the average key.
+     *
+     * @return heat between 0 (no trouble or too few presses) and 1
+     */
+    public double getHeat(char letter) {
+        int index = letter - 'A';
+        if (presses[index] < MIN_PRESSES) {
+            return 0;
+        }
+        double errorHeat = Math.min(1, getErrorRate(letter) / FULL_HEAT_ERROR_RATE);
+        long timed = 0;
+        long sum = 0;
+        for (int i = 0; i < LETTERS; i++) {
+            timed += timedPresses[i];
+            sum += timeSum[i];
+        }
+        double mean = timed == 0 ? 0 : (double) sum / timed;
+        double slowHeat = mean == 0 ? 0 : Math.min(1, Math.max(0, getMeanNanos(letter) / mean - 1));
+        return (errorHeat + slowHeat) / 2;
+    }
+
+    /**
+     * @return accuracy per row, the slowest keys and the slowest bigrams, as text
+     */
+    public String summary() {
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format("accuracy %.1f%%  backspaces %d%n", getAccuracy() * 100, backspaces));
+        for (int row = 0; row < KeyLayout.ROWS.length; row++) {
+            summary.append(String.format("row %s  %d keys  %.1f%% accuracy%n",
+                    KeyLayout.ROWS[row], rowPresses[row], getRowAccuracy(row) * 100));
+        }
+        summary.append("slowest keys:");
+        for (int index : slowest(timedPresses, timeSum, MIN_PRESSES, 5)) {
+            summary.append(String.format("  %c %.0f ms (%.0f%% errors)", (char) ('A' + index),
+                    timeSum[index] / 1e6 / timedPresses[index], errors[index] * 100.0 / presses[index]));
+        }
+        summary.append(String.format("%nslowest bigrams:"));
+        for (int index : slowest(bigramCount, bigramTimeSum, 3, 5)) {
+            summary.append(String.format("  %c%c %.0f ms", (char) ('A' + index / LETTERS),
+                    (char) ('A' + index % LETTERS), bigramTimeSum[index] / 1e6 / bigramCount[index]));
+        }
+        return summary.toString();
+    }
+
+    /**
+     * @return indices of up to limit entries with at least minCount
+     * samples, highest average first
+     */
+    private static int[] slowest(long[] counts, long[] sums, int minCount, int limit) {
+        int[] best = new int[limit];
+        int found = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] < minCount) {
+                continue;
+            }
+            double mean = (double) sums[i] / counts[i];
+            int at = found < limit ? found++ : limit;
+            while (at > 0 && (double) sums[best[at - 1]] / counts[best[at - 1]] < mean) {
+                if (at < limit) {
+                    best[at] = best[at - 1];
+                }
+                at--;
+            }
+            if (at < limit) {
+                best[at] = i;
+            }
+        }
+        return Arrays.copyOf(best, found);
+    }
+}
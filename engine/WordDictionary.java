@@ -0,0 +1,390 @@
+package engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.zip.CRC32C;
+
+/**
+ * Immutable list of words packed into one byte array. Word i is made of
+ * the bytes from offsets[i] up to offsets[i + 1]. Every word is upper
+ * case, only made of the letters A-Z and appears once.
+ */
+public final class WordDictionary {
+    public static final WordDictionary EMPTY = new WordDictionary(new byte[0], new int[1], 0, 0);
+
+    // Appended to the source file name to get the cache file name
+    public static final String CACHE_SUFFIX = ".kscache";
+    private static final int CACHE_MAGIC = 0x4B534431; // "KSD1"
+    private static final int CACHE_HEADER_BYTES = 4 + 8 + 8 + 4 + 4;
+
+    private final byte[] data;
+    private final int[] offsets;
+    private final int count;
+    // CRC32C of the file the words were read from, 0 if they were not read from a file
+    private final long sourceHash;
+
+    WordDictionary(byte[] data, int[] offsets, int count, long sourceHash) {
+        this.data = data;
+        this.offsets = offsets;
+        this.count = count;
+        this.sourceHash = sourceHash;
+    }
+
+    /**
+     * Reads a word list with one word per line. Lines are trimmed and
+     * upper cased, empty lines, duplicates and lines with anything other
+     * than letters are dropped. A binary cache is kept next to the file,
+     * keyed by the hash of its contents, so loading the same file again
+     * skips parsing. If the cache cannot be written the words are still
+     * returned.
+     *
+     * @param source path of the word list
+     * @return the packed words
+     * @throws IOException if the word list cannot be read
+     */
+    public static WordDictionary load(Path source) throws IOException {
+        return DictionaryLoader.load(source, (words, complete) -> { }, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Reads a whole file with bulk channel reads.
+     *
+     * @param path file to read
+     * @return the contents of the file
+     * @throws IOException if the file cannot be read
+     */
+    static byte[] readAll(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new IOException("Word list too large: " + path);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // keep reading until the buffer is full or the file ends
+            }
+            return buffer.array();
+        }
+    }
+
+    /**
+     * @param words words to pack, normalized the same way load does
+     * @return the packed words
+     */
+    public static WordDictionary of(List<String> words) {
+        Builder builder = new Builder(words.size());
+        for (String word : words) {
+            builder.add(word);
+        }
+        return builder.build(0);
+    }
+
+    public static Path cachePath(Path source) {
+        return source.resolveSibling(source.getFileName() + CACHE_SUFFIX);
+    }
+
+    static long hash(ByteBuffer bytes) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes.duplicate());
+        return crc.getValue();
+    }
+
+    /**
+     * Reads a cache file written by writeCache.
+     *
+     * @param cache path of the cache file
+     * @param sourceHash hash the cache has to have been written for
+     * @return the cached words, or null if the cache is missing, stale or broken
+     */
+    static WordDictionary readCache(Path cache, long sourceHash) {
+        if (!Files.isRegularFile(cache)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < CACHE_HEADER_BYTES) {
+                return null;
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt() != CACHE_MAGIC || buffer.getLong() != sourceHash) {
+                return null;
+            }
+            long bodyHash = buffer.getLong();
+            int count = buffer.getInt();
+            int dataLength = buffer.getInt();
+            if (count < 0 || dataLength < 0 || size != CACHE_HEADER_BYTES + 4L * (count + 1) + dataLength
+                    || hash(buffer.slice()) != bodyHash) {
+                return null;
+            }
+            int[] offsets = new int[count + 1];
+            buffer.asIntBuffer().get(offsets);
+            buffer.position(buffer.position() + 4 * (count + 1));
+            byte[] data = new byte[dataLength];
+            buffer.get(data);
+            return new WordDictionary(data, offsets, count, sourceHash);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the packed words to a cache file. The file is written next
+     * to its final name first and then moved, so a crash never leaves a
+     * half written cache behind.
+     *
+     * @param cache path of the cache file
+     * @throws IOException if the file cannot be written
+     */
+    void writeCache(Path cache) throws IOException {
+        int dataLength = offsets[count];
+        ByteBuffer body = ByteBuffer.allocate(4 * (count + 1) + dataLength).order(ByteOrder.LITTLE_ENDIAN);
+        body.asIntBuffer().put(offsets, 0, count + 1);
+        body.position(4 * (count + 1));
+        body.put(data, 0, dataLength);
+        body.flip();
+
+        ByteBuffer header = ByteBuffer.allocate(CACHE_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(CACHE_MAGIC).putLong(sourceHash).putLong(hash(body)).putInt(count).putInt(dataLength);
+        header.flip();
+
+        Path temp = cache.resolveSibling(cache.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (header.hasRemaining() || body.hasRemaining()) {
+                channel.write(new ByteBuffer[]{header, body});
+            }
+        }
+        Files.move(temp, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * @param index index of the word
+     * @return the word as a String, which is allocated on every call
+     */
+    public String word(int index) {
+        int from = offsets(index);
+        return new String(data, from, offsets[index + 1] - from, StandardCharsets.US_ASCII);
+    }
+
+    public int length(int index) {
+        return offsets[index + 1] - offsets(index);
+    }
+
+    /**
+     * @param index index of the word
+     * @param position position of the letter in the word
+     * @return the letter, between 'A' and 'Z'
+     */
+    public char charAt(int index, int position) {
+        return (char) data[offsets(index) + position];
+    }
+
+    public long getSourceHash() {
+        return sourceHash;
+    }
+
+    /**
+     * @return the words as a read-only list of Strings, each one allocated when it is read
+     */
+    public List<String> asList() {
+        return new WordList();
+    }
+
+    private int offsets(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+        }
+        return offsets[index];
+    }
+
+    private final class WordList extends AbstractList<String> implements RandomAccess {
+        @Override
+        public String get(int index) {
+            return word(index);
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+    }
+
+    /**
+     * Collects normalized, unique words into the packed form.
+     */
+    static final class Builder {
+        private byte[] data;
+        private int dataLength;
+        private int[] offsets;
+        private int count;
+        // Open addressing table of word index + 1, 0 marks an empty bucket
+        private int[] table;
+        // Hash of the word in each bucket, compared before the words themselves
+        private int[] tableHashes;
+        // Scratch space for the word that is being added
+        private byte[] word = new byte[32];
+
+        Builder(int expectedWords) {
+            data = new byte[Math.max(64, expectedWords * 8)];
+            offsets = new int[Math.max(16, expectedWords + 1)];
+            table = new int[Integer.highestOneBit(Math.max(16, expectedWords * 2)) << 1];
+            tableHashes = new int[table.length];
+        }
+
+        int size() {
+            return count;
+        }
+
+        /**
+         * Adds every line of the bytes from start up to end.
+         */
+        void addLines(byte[] bytes, int start, int end) {
+            int lineStart = start;
+            for (int i = start; i < end; i++) {
+                byte b = bytes[i];
+                if (b == '\n' || b == '\r') {
+                    addLine(bytes, lineStart, i);
+                    lineStart = i + 1;
+                }
+            }
+            addLine(bytes, lineStart, end);
+        }
+
+        void add(String line) {
+            byte[] bytes = line.getBytes(StandardCharsets.US_ASCII);
+            addLine(bytes, 0, bytes.length);
+        }
+
+        /**
+         * Trims, upper cases and validates the bytes from start up to end.
+         * @return true if the line was a new word
+         */
+        boolean addLine(byte[] bytes, int start, int end) {
+            while (start < end && isBlank(bytes[start])) {
+                start++;
+            }
+            while (end > start && isBlank(bytes[end - 1])) {
+                end--;
+            }
+            int length = end - start;
+            if (length == 0) {
+                return false;
+            }
+            if (word.length < length) {
+                word = new byte[Math.max(length, word.length * 2)];
+            }
+            int hash = 1;
+            for (int i = 0; i < length; i++) {
+                byte b = bytes[start + i];
+                if (b >= 'a' && b <= 'z') {
+                    b -= 'a' - 'A';
+                } else if (b < 'A' || b > 'Z') {
+                    return false;
+                }
+                word[i] = b;
+                hash = 31 * hash + b;
+            }
+            return addWord(word, length, hash);
+        }
+
+        private boolean addWord(byte[] word, int length, int hash) {
+            hash = mix(hash);
+            int mask = table.length - 1;
+            int bucket = hash & mask;
+            while (table[bucket] != 0) {
+                if (tableHashes[bucket] == hash && equals(table[bucket] - 1, word, length)) {
+                    return false;
+                }
+                bucket = (bucket + 1) & mask;
+            }
+
+            if (dataLength + length > data.length) {
+                data = Arrays.copyOf(data, Math.max(dataLength + length, data.length * 2));
+            }
+            if (count + 2 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            System.arraycopy(word, 0, data, dataLength, length);
+            offsets[count] = dataLength;
+            dataLength += length;
+            offsets[count + 1] = dataLength;
+            table[bucket] = ++count;
+            tableHashes[bucket] = hash;
+
+            if (count * 2 > table.length) {
+                rehash();
+            }
+            return true;
+        }
+
+        private boolean equals(int index, byte[] word, int length) {
+            int from = offsets[index];
+            if (offsets[index + 1] - from != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (data[from + i] != word[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void rehash() {
+            int[] oldTable = table;
+            int[] oldHashes = tableHashes;
+            table = new int[oldTable.length * 2];
+            tableHashes = new int[table.length];
+            int mask = table.length - 1;
+            for (int i = 0; i < oldTable.length; i++) {
+                if (oldTable[i] != 0) {
+                    int bucket = oldHashes[i] & mask;
+                    while (table[bucket] != 0) {
+                        bucket = (bucket + 1) & mask;
+                    }
+                    table[bucket] = oldTable[i];
+                    tableHashes[bucket] = oldHashes[i];
+                }
+            }
+        }
+
+        private static int mix(int hash) {
+            hash ^= hash >>> 16;
+            hash *= 0x85EBCA6B;
+            hash ^= hash >>> 13;
+            hash *= 0xC2B2AE35;
+            return hash ^ (hash >>> 16);
+        }
+
+        private static boolean isBlank(byte b) {
+            return b == ' ' || b == '\t';
+        }
+
+        /**
+         * @param sourceHash hash of the file the words came from
+         * @return the words added so far, later adds do not change it
+         */
+        WordDictionary build(long sourceHash) {
+            return new WordDictionary(Arrays.copyOf(data, dataLength), Arrays.copyOf(offsets, count + 1), count, sourceHash);
+        }
+    }
+}
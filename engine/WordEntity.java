@@ -0,0 +1,158 @@
+package engine;
+
+/**
+ * A floating word in the simulation. It travels in a straight line from
+ * its start point to its end point over its lifetime. Positions are
+ * computed from the simulation time, plus an offset that grows when the
+ * word is pushed away from words it overlaps.
+ */
+public final class WordEntity {
+    public enum State {
+        // Floating and can still be typed
+        ACTIVE,
+        // Typed correctly, lingers on the screen for a moment
+        HIT,
+        // No longer part of the simulation
+        REMOVED
+    }
+
+    private final String word;
+    private final double startX;
+    private final double startY;
+    private final double endX;
+    private final double endY;
+    private final long spawnNanos;
+    private final long lifetimeNanos;
+    // Size of the word on the screen
+    private final double width;
+    private final double height;
+    // How far the word has been pushed away from its straight line
+    private double offsetX;
+    private double offsetY;
+    private State state = State.ACTIVE;
+    private long hitNanos;
+    // Handle of this word in the WordMatcher
+    private int handle = -1;
+    // Handle of this word in the ActiveWordStore
+    private int id = -1;
+    // Whatever the renderer uses to show this word
+    private Object view;
+
+    WordEntity(String word, double startX, double startY, double endX, double endY,
+               long spawnNanos, long lifetimeNanos, double width, double height) {
+        this.word = word;
+        this.startX = startX;
+        this.startY = startY;
+        this.endX = endX;
+        this.endY = endY;
+        this.spawnNanos = spawnNanos;
+        this.lifetimeNanos = lifetimeNanos;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * @param nowNanos simulation time
+     * @return fraction of the lifetime that has passed, between 0 and 1
+     */
+    public double progress(long nowNanos) {
+        if (lifetimeNanos <= 0) {
+            return 1;
+        }
+        double t = (double) (nowNanos - spawnNanos) / lifetimeNanos;
+        return t < 0 ? 0 : Math.min(t, 1);
+    }
+
+    public double x(long nowNanos) {
+        return startX + (endX - startX) * progress(nowNanos) + offsetX;
+    }
+
+    public double y(long nowNanos) {
+        return startY + (endY - startY) * progress(nowNanos) + offsetY;
+    }
+
+    public double getWidth() {
+        return width;
+    }
+
+    public double getHeight() {
+        return height;
+    }
+
+    void push(double dx, double dy) {
+        offsetX += dx;
+        offsetY += dy;
+    }
+
+    public String getWord() {
+        return word;
+    }
+
+    public double getStartX() {
+        return startX;
+    }
+
+    public double getStartY() {
+        return startY;
+    }
+
+    public double getEndX() {
+        return endX;
+    }
+
+    public double getEndY() {
+        return endY;
+    }
+
+    public long getSpawnNanos() {
+        return spawnNanos;
+    }
+
+    public long getLifetimeNanos() {
+        return lifetimeNanos;
+    }
+
+    public long getExpiryNanos() {
+        return spawnNanos + lifetimeNanos;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    void setState(State state) {
+        this.state = state;
+    }
+
+    public long getHitNanos() {
+        return hitNanos;
+    }
+
+    void setHitNanos(long hitNanos) {
+        this.hitNanos = hitNanos;
+    }
+
+    int getHandle() {
+        return handle;
+    }
+
+    void setHandle(int handle) {
+        this.handle = handle;
+    }
+
+    int getId() {
+        return id;
+    }
+
+    void setId(int id) {
+        this.id = id;
+    }
+
+    public Object getView() {
+        return view;
+    }
+
+    public void setView(Object view) {
+        this.view = view;
+    }
+}
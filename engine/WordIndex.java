@@ -0,0 +1,198 @@
+package engine;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Index over a WordDictionary that groups the words into buckets by
+ * length and difficulty, so words of a chosen difficulty can be picked
+ * in constant time. A word is harder the rarer its letters are in the
+ * dictionary and the further the fingers travel between its letters on
+ * the keyboard of KeyLayout. Buckets are picked with an AliasTable whose
+ * weights follow a target difficulty level between 0 and 1.
+ */
+public final class WordIndex {
+    // Words of this length or longer share the last length bucket
+    public static final int MAX_LENGTH = 12;
+    // Number of difficulty tiers within each length
+    public static final int TIERS = 4;
+    // Smallest change of the target level that rebuilds the alias table
+    private static final double LEVEL_EPSILON = 0.01;
+
+    private final WordDictionary words;
+    // Indexes of the words in each bucket, bucket = (length - 1) * TIERS + tier
+    private final int[][] buckets;
+    // Difficulty level of each bucket, between 0 and 1
+    private final double[] levels;
+    // Scratch space for the bucket weights
+    private final double[] weights;
+    private final AliasTable table;
+    // Level the table was built for, NaN while words are picked uniformly
+    private double targetLevel = Double.NaN;
+    private double targetSpread;
+
+    private WordIndex(WordDictionary words, int[][] buckets) {
+        this.words = words;
+        this.buckets = buckets;
+        this.levels = new double[buckets.length];
+        for (int bucket = 0; bucket < buckets.length; bucket++) {
+            double length = (double) (bucket / TIERS) / (MAX_LENGTH - 1);
+            double tier = (double) (bucket % TIERS) / (TIERS - 1);
+            levels[bucket] = (length + tier) / 2;
+        }
+        this.weights = new double[buckets.length];
+        this.table = new AliasTable(weights);
+    }
+
+    /**
+     * Scores every word and sorts it into its bucket. The tiers are the
+     * quartiles of the scores of the whole dictionary.
+     *
+     * @param words words to index
+     * @return the index
+     */
+    public static WordIndex build(WordDictionary words) {
+        int n = words.size();
+        double[] letterCost = letterCosts(words);
+        float[] scores = new float[n];
+        for (int i = 0; i < n; i++) {
+            scores[i] = (float) score(words, i, letterCost);
+        }
+
+        float[] sorted = scores.clone();
+        Arrays.sort(sorted);
+        float[] thresholds = new float[TIERS - 1];
+        for (int tier = 1; tier < TIERS; tier++) {
+            thresholds[tier - 1] = n == 0 ? 0 : sorted[(int) ((long) n * tier / TIERS)];
+        }
+
+        int[] tierOf = new int[n];
+        int[] sizes = new int[MAX_LENGTH * TIERS];
+        for (int i = 0; i < n; i++) {
+            int tier = 0;
+            while (tier < TIERS - 1 && scores[i] >= thresholds[tier]) {
+                tier++;
+            }
+            tierOf[i] = tier;
+            sizes[bucketOf(words.length(i), tier)]++;
+        }
+
+        int[][] buckets = new int[MAX_LENGTH * TIERS][];
+        for (int bucket = 0; bucket < buckets.length; bucket++) {
+            buckets[bucket] = new int[sizes[bucket]];
+        }
+        int[] filled = new int[buckets.length];
+        for (int i = 0; i < n; i++) {
+            int bucket = bucketOf(words.length(i), tierOf[i]);
+            buckets[bucket][filled[bucket]++] = i;
+        }
+        return new WordIndex(words, buckets);
+    }
+
+    /**
+     * @return cost of each letter, the negative log of how often it appears in the words
+     */
+    private static double[] letterCosts(WordDictionary words) {
+        long[] counts = new long[26];
+        long total = 0;
+        for (int i = 0; i < words.size(); i++) {
+            for (int j = 0; j < words.length(i); j++) {
+                counts[words.charAt(i, j) - 'A']++;
+                total++;
+            }
+        }
+        double[] cost = new double[26];
+        for (int letter = 0; letter < 26; letter++) {
+            cost[letter] = -Math.log((counts[letter] + 1.0) / (total + 26.0));
+        }
+        return cost;
+    }
+
+    /**
+     * @return difficulty of one word, the average letter cost plus half the average key travel
+     */
+    static double score(WordDictionary words, int index, double[] letterCost) {
+        int length = words.length(index);
+        double rarity = 0;
+        double travel = 0;
+        for (int j = 0; j < length; j++) {
+            char letter = words.charAt(index, j);
+            rarity += letterCost[letter - 'A'];
+            if (j > 0) {
+                travel += KeyLayout.distance(words.charAt(index, j - 1), letter);
+            }
+        }
+        return rarity / length + (length > 1 ? 0.5 * travel / (length - 1) : 0);
+    }
+
+    private static int bucketOf(int length, int tier) {
+        return (Math.min(length, MAX_LENGTH) - 1) * TIERS + tier;
+    }
+
+    /**
+     * Makes sample prefer words around the given difficulty. Each word
+     * is weighted by a bell curve around the level, so the chance of a
+     * bucket is its size times the weight of its level.
+     *
+     * @param level target difficulty between 0 and 1
+     * @param spread width of the bell curve, larger picks more varied words
+     */
+    public void setTargetLevel(double level, double spread) {
+        if (Math.abs(level - targetLevel) < LEVEL_EPSILON && spread == targetSpread) {
+            return;
+        }
+        boolean any = false;
+        for (int bucket = 0; bucket < buckets.length; bucket++) {
+            double distance = levels[bucket] - level;
+            weights[bucket] = buckets[bucket].length * Math.exp(-distance * distance / (2 * spread * spread));
+            any |= weights[bucket] > 0;
+        }
+        if (!any) {
+            // Nothing close enough to the level, fall back to the sizes alone
+            for (int bucket = 0; bucket < buckets.length; bucket++) {
+                weights[bucket] = buckets[bucket].length;
+            }
+        }
+        table.setWeights(weights);
+        targetLevel = level;
+        targetSpread = spread;
+    }
+
+    /**
+     * Goes back to picking every word with the same chance.
+     */
+    public void clearTargetLevel() {
+        targetLevel = Double.NaN;
+    }
+
+    /**
+     * @param random source of randomness
+     * @return index of a word in the dictionary, or -1 if it is empty
+     */
+    public int sample(Random random) {
+        if (words.isEmpty()) {
+            return -1;
+        }
+        if (Double.isNaN(targetLevel)) {
+            return random.nextInt(words.size());
+        }
+        int[] bucket = buckets[table.sample(random)];
+        return bucket[random.nextInt(bucket.length)];
+    }
+
+    public WordDictionary getWords() {
+        return words;
+    }
+
+    public int getBucketCount() {
+        return buckets.length;
+    }
+
+    public int getBucketSize(int bucket) {
+        return buckets[bucket].length;
+    }
+
+    public double getBucketLevel(int bucket) {
+        return levels[bucket];
+    }
+}
@@ -0,0 +1,448 @@
+package engine;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Incremental prefix matcher over the words currently on the screen.
+ * The active words are kept in a trie whose nodes live in flat int arrays.
+ * Every typed letter advances at most one node, every backspace steps back
+ * one node, so reporting a completed word costs O(1) per key and does not
+ * allocate. Words are referenced by handles which carry a generation so a
+ * stale handle does not remove a word that later reused the same slot.
+ * The generation wraps around after 2048 reuses of a slot, callers that
+ * may hold a handle that long remove with the payload as well.
+ *
+ * @param <T> payload attached to each word (for example its WordBox)
+ */
+public final class WordMatcher<T> {
+    // Only the letters A-Z can be typed, so every node has 26 children
+    private static final int ALPHABET = 26;
+    // Low bits of a handle hold the slot, the high bits hold the generation
+    private static final int SLOT_BITS = 20;
+    private static final int SLOT_MASK = (1 << SLOT_BITS) - 1;
+    private static final int GENERATION_MASK = (1 << (31 - SLOT_BITS)) - 1;
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+
+    // Child node of every node, indexed by node * ALPHABET + letter, 0 means no child
+    private int[] children;
+    // Number of words whose path passes through (or ends at) each node
+    private int[] passCount;
+    // First word slot that ends at each node
+    private int[] terminalHead;
+    // Nodes that were released and can be reused
+    private int[] freeNodes;
+    private int freeNodeCount;
+    private int nodeCount;
+
+    // Per word slot data
+    private String[] slotWords;
+    private Object[] slotPayloads;
+    private int[] slotGenerations;
+    private int[] slotNext;
+    private int[] slotPrev;
+    private int[] slotNodes;
+    private int[] freeSlots;
+    private int freeSlotCount;
+    private int slotCount;
+    private int size;
+
+    // Letters typed since the last correct word
+    private char[] typed;
+    private int typedLength;
+    // Node reached after each typed letter, path[0] is the root
+    private int[] path;
+    // Number of leading typed letters that still form a path in the trie
+    private int matchedDepth;
+    // Scratch stack reused when walking the candidates below the current node
+    private int[] walkStack;
+
+    public WordMatcher() {
+        this(64);
+    }
+
+    public WordMatcher(int initialWords) {
+        int nodes = Math.max(16, initialWords * 4);
+        children = new int[nodes * ALPHABET];
+        passCount = new int[nodes];
+        terminalHead = new int[nodes];
+        Arrays.fill(terminalHead, NONE);
+        freeNodes = new int[nodes];
+        nodeCount = 1;
+
+        int slots = Math.max(4, initialWords);
+        slotWords = new String[slots];
+        slotPayloads = new Object[slots];
+        slotGenerations = new int[slots];
+        slotNext = new int[slots];
+        slotPrev = new int[slots];
+        slotNodes = new int[slots];
+        freeSlots = new int[slots];
+
+        typed = new char[32];
+        path = new int[33];
+        walkStack = new int[nodes];
+    }
+
+    /**
+     * Adds a word to the matcher. Words containing anything other than
+     * the letters A-Z are accepted but can never be matched.
+     *
+     * @param word    upper case word to add
+     * @param payload object returned when the word is typed
+     * @return handle used to remove the word again
+     */
+    public int add(String word, T payload) {
+        int slot = allocateSlot();
+        slotWords[slot] = word;
+        slotPayloads[slot] = payload;
+        slotNodes[slot] = NONE;
+        slotNext[slot] = NONE;
+        slotPrev[slot] = NONE;
+        size++;
+
+        if (isTypeable(word)) {
+            int node = ROOT;
+            passCount[ROOT]++;
+            for (int i = 0; i < word.length(); i++) {
+                int index = node * ALPHABET + (word.charAt(i) - 'A');
+                int child = children[index];
+                if (child == 0) {
+                    child = allocateNode();
+                    // allocateNode may have grown the arrays
+                    children[node * ALPHABET + (word.charAt(i) - 'A')] = child;
+                }
+                passCount[child]++;
+                node = child;
+            }
+            slotNodes[slot] = node;
+            int head = terminalHead[node];
+            slotNext[slot] = head;
+            if (head != NONE) {
+                slotPrev[head] = slot;
+            }
+            terminalHead[node] = slot;
+            resync();
+        }
+
+        return (slotGenerations[slot] << SLOT_BITS) | slot;
+    }
+
+    /**
+     * Removes the word with the given handle. Removing a word twice,
+     * or with a handle whose slot has been reused since, does nothing.
+     *
+     * @param handle handle returned by add
+     * @return true if the word was removed by this call
+     */
+    public boolean remove(int handle) {
+        int slot = handle & SLOT_MASK;
+        if (!contains(handle)) {
+            return false;
+        }
+
+        int terminal = slotNodes[slot];
+        if (terminal != NONE) {
+            int prev = slotPrev[slot];
+            int next = slotNext[slot];
+            if (prev != NONE) {
+                slotNext[prev] = next;
+            } else {
+                terminalHead[terminal] = next;
+            }
+            if (next != NONE) {
+                slotPrev[next] = prev;
+            }
+            unlinkPath(slotWords[slot]);
+            resync();
+        }
+
+        slotWords[slot] = null;
+        slotPayloads[slot] = null;
+        slotGenerations[slot] = (slotGenerations[slot] + 1) & GENERATION_MASK;
+        freeSlots[freeSlotCount++] = slot;
+        size--;
+        return true;
+    }
+
+    /**
+     * Removes the word with the given handle if it still carries the given
+     * payload, so even a handle whose generation wrapped around never
+     * removes a word that reused its slot.
+     *
+     * @param handle handle returned by add
+     * @param payload payload the word was added with
+     * @return true if the word was removed by this call
+     */
+    public boolean remove(int handle, T payload) {
+        return contains(handle) && slotPayloads[handle & SLOT_MASK] == payload && remove(handle);
+    }
+
+    /**
+     * @param handle handle returned by add
+     * @return true if the handle still refers to a word in the matcher
+     */
+    public boolean contains(int handle) {
+        int slot = handle & SLOT_MASK;
+        return handle >= 0 && slot < slotCount && slotWords[slot] != null
+                && slotGenerations[slot] == handle >>> SLOT_BITS;
+    }
+
+    /**
+     * @param handle handle returned by add
+     * @return payload of the word, or null if the word has been removed
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int handle) {
+        return contains(handle) ? (T) slotPayloads[handle & SLOT_MASK] : null;
+    }
+
+    /**
+     * Looks up a word by its text.
+     *
+     * @param word upper case word
+     * @return handle of one active word equal to the given word, or -1
+     */
+    public int find(String word) {
+        if (!isTypeable(word)) {
+            return NONE;
+        }
+        int node = ROOT;
+        for (int i = 0; i < word.length(); i++) {
+            node = liveChild(node, word.charAt(i) - 'A');
+            if (node == 0) {
+                return NONE;
+            }
+        }
+        int slot = terminalHead[node];
+        return slot == NONE ? NONE : (slotGenerations[slot] << SLOT_BITS) | slot;
+    }
+
+    /**
+     * Adds a typed letter and advances one node in the trie.
+     *
+     * @param letter letter between 'A' and 'Z'
+     * @return payload of an active word that is now typed completely, or null
+     */
+    @SuppressWarnings("unchecked")
+    public T type(char letter) {
+        if (letter < 'A' || letter > 'Z') {
+            return null;
+        }
+        if (typedLength == typed.length) {
+            typed = Arrays.copyOf(typed, typed.length * 2);
+            path = Arrays.copyOf(path, typed.length + 1);
+        }
+        typed[typedLength++] = letter;
+
+        if (matchedDepth == typedLength - 1) {
+            int child = liveChild(path[matchedDepth], letter - 'A');
+            if (child != 0) {
+                path[++matchedDepth] = child;
+            }
+        }
+        return (T) completed();
+    }
+
+    /**
+     * Removes the last typed letter and steps back one node.
+     */
+    public void backspace() {
+        if (typedLength > 0) {
+            typedLength--;
+            if (matchedDepth > typedLength) {
+                matchedDepth = typedLength;
+            }
+        }
+    }
+
+    /**
+     * Forgets everything that was typed.
+     */
+    public void clearTyped() {
+        typedLength = 0;
+        matchedDepth = 0;
+    }
+
+    /**
+     * @return payload of an active word equal to the typed letters, or null
+     */
+    public Object completed() {
+        if (typedLength == 0 || matchedDepth != typedLength) {
+            return null;
+        }
+        int slot = terminalHead[path[matchedDepth]];
+        return slot == NONE ? null : slotPayloads[slot];
+    }
+
+    /**
+     * @return number of active words that start with the typed letters
+     */
+    public int candidateCount() {
+        return matchedDepth == typedLength ? passCount[path[matchedDepth]] : 0;
+    }
+
+    /**
+     * Calls the consumer for every active word that starts with the typed letters.
+     *
+     * @param consumer receives the payload of each matching word
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachCandidate(Consumer<? super T> consumer) {
+        if (matchedDepth != typedLength || passCount[path[matchedDepth]] == 0) {
+            return;
+        }
+        int top = 0;
+        walkStack[top++] = path[matchedDepth];
+        while (top > 0) {
+            int node = walkStack[--top];
+            for (int slot = terminalHead[node]; slot != NONE; slot = slotNext[slot]) {
+                consumer.accept((T) slotPayloads[slot]);
+            }
+            for (int c = 0; c < ALPHABET; c++) {
+                int child = children[node * ALPHABET + c];
+                if (child != 0 && passCount[child] > 0) {
+                    walkStack[top++] = child;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the typed letters are a prefix of at least one active word
+     */
+    public boolean isOnTrack() {
+        return candidateCount() > 0;
+    }
+
+    public int typedLength() {
+        return typedLength;
+    }
+
+    public char typedCharAt(int index) {
+        return typed[index];
+    }
+
+    public String typedString() {
+        return new String(typed, 0, typedLength);
+    }
+
+    /**
+     * @return number of active words
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Walks the typed letters from the root again. Called whenever words
+     * are added or removed since that can lengthen or shorten the match.
+     */
+    private void resync() {
+        int node = ROOT;
+        int depth = 0;
+        while (depth < typedLength) {
+            int child = liveChild(node, typed[depth] - 'A');
+            if (child == 0) {
+                break;
+            }
+            node = child;
+            path[++depth] = node;
+        }
+        path[0] = ROOT;
+        matchedDepth = depth;
+    }
+
+    private int liveChild(int node, int letter) {
+        int child = children[node * ALPHABET + letter];
+        return child != 0 && passCount[child] > 0 ? child : 0;
+    }
+
+    /**
+     * Decrements the counts along the path of the word and releases the
+     * nodes that no longer lead to any word.
+     */
+    private void unlinkPath(String word) {
+        int node = ROOT;
+        passCount[ROOT]--;
+        for (int i = 0; i < word.length(); i++) {
+            int index = node * ALPHABET + (word.charAt(i) - 'A');
+            int child = children[index];
+            if (--passCount[child] == 0) {
+                children[index] = 0;
+                releaseChain(child, word, i + 1);
+                return;
+            }
+            node = child;
+        }
+    }
+
+    private void releaseChain(int node, String word, int depth) {
+        while (true) {
+            freeNodes[freeNodeCount++] = node;
+            if (depth == word.length()) {
+                return;
+            }
+            int index = node * ALPHABET + (word.charAt(depth) - 'A');
+            int child = children[index];
+            children[index] = 0;
+            passCount[child] = 0;
+            node = child;
+            depth++;
+        }
+    }
+
+    private int allocateNode() {
+        int node;
+        if (freeNodeCount > 0) {
+            node = freeNodes[--freeNodeCount];
+        } else {
+            if (nodeCount == passCount.length) {
+                int capacity = passCount.length * 2;
+                children = Arrays.copyOf(children, capacity * ALPHABET);
+                passCount = Arrays.copyOf(passCount, capacity);
+                int oldLength = terminalHead.length;
+                terminalHead = Arrays.copyOf(terminalHead, capacity);
+                Arrays.fill(terminalHead, oldLength, capacity, NONE);
+                freeNodes = Arrays.copyOf(freeNodes, capacity);
+                walkStack = Arrays.copyOf(walkStack, capacity);
+            }
+            node = nodeCount++;
+        }
+        Arrays.fill(children, node * ALPHABET, node * ALPHABET + ALPHABET, 0);
+        passCount[node] = 0;
+        terminalHead[node] = NONE;
+        return node;
+    }
+
+    private int allocateSlot() {
+        if (freeSlotCount > 0) {
+            return freeSlots[--freeSlotCount];
+        }
+        if (slotCount == slotWords.length) {
+            int capacity = slotWords.length * 2;
+            slotWords = Arrays.copyOf(slotWords, capacity);
+            slotPayloads = Arrays.copyOf(slotPayloads, capacity);
+            slotGenerations = Arrays.copyOf(slotGenerations, capacity);
+            slotNext = Arrays.copyOf(slotNext, capacity);
+            slotPrev = Arrays.copyOf(slotPrev, capacity);
+            slotNodes = Arrays.copyOf(slotNodes, capacity);
+            freeSlots = Arrays.copyOf(freeSlots, capacity);
+        }
+        return slotCount++;
+    }
+
+    private static boolean isTypeable(String word) {
+        if (word.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                return false;
+            }
+        }
+        return true;
+    }
+}